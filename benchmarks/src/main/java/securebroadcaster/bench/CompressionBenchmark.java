@@ -0,0 +1,96 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.BroadcastPayload;
+import securebroadcaster.DeflateCodec;
+import securebroadcaster.WireFormat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * CompressionBenchmark.java
+ * Chi phí nén một tin broadcast:
+ *   pooled    DeflateCodec (Deflater lấy từ nhóm, dùng lại)
+ *   fresh     tạo Deflater mới rồi end() cho mỗi tin (cấp phát bộ nhớ native mỗi lần)
+ *   perClient nén riêng cho từng kết nối thay vì một lần dùng chung (nhân với 'subscribers')
+ *   shared    BroadcastPayload: mã hóa khung + nén một lần cho mọi kết nối
+ * dictionary=true dùng từ điển dựng sẵn: tin ngắn lặp lại nén được nhiều hơn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"256", "4096"})
+    public int messageSize;
+
+    @Param({"false", "true"})
+    public boolean dictionary;
+
+    @Param({"100"})
+    public int subscribers;
+
+    private DeflateCodec codec;
+    private byte[] dictionaryBytes;
+    private String message;
+    private byte[] body;
+    private long seq;
+
+    @Setup
+    public void setup() {
+        String sample = "{\"topic\":\"market.quote\",\"symbol\":\"VNM\",\"bid\":71.2,\"ask\":71.3,\"volume\":";
+        dictionaryBytes = dictionary ? sample.repeat(4).getBytes(StandardCharsets.UTF_8) : null;
+        codec = new DeflateCodec(6, dictionaryBytes, 0);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < messageSize; i++) {
+            text.append(sample).append(i * 7919 % 100_000).append("}\n");
+        }
+        message = text.substring(0, messageSize);
+        body = message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int pooled() {
+        return codec.deflate(body, 0, body.length).length;
+    }
+
+    @Benchmark
+    public int fresh() {
+        Deflater deflater = new Deflater(6);
+        try {
+            if (dictionaryBytes != null) deflater.setDictionary(dictionaryBytes);
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] out = new byte[body.length];
+            int n = 0;
+            while (!deflater.finished() && n < out.length) {
+                n += deflater.deflate(out, n, out.length - n);
+            }
+            return n;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Benchmark
+    public int perClient() {
+        int total = 0;
+        for (int i = 0; i < subscribers; i++) {
+            total += codec.deflate(body, 0, body.length).length;
+        }
+        return total;
+    }
+
+    /**
+     * Đường đi thật của một broadcast: mã hóa khung rồi nén một lần, mọi kết nối nén dùng chung
+     */
+    @Benchmark
+    public int shared() {
+        return BroadcastPayload.message("", message, ++seq, false, codec).length(WireFormat.DEFLATE);
+    }
+}
@@ -0,0 +1,54 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.BroadcastPayload;
+import securebroadcaster.OutboundQueue;
+import securebroadcaster.OverflowPolicy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConflationBenchmark.java
+ * Hàng đợi gửi của một client chậm nhận dồn dập tin có khóa: gộp theo khóa (tin mới thay tin chưa gửi
+ * cùng khóa) so với không gộp (DROP_OLDEST loại tin cũ bất kể khóa). Client lấy một tin sau mỗi 'drainEvery'
+ * tin xếp vào. Gộp phải không cấp phát (kiểm tra bằng -prof gc).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConflationBenchmark {
+
+    @Param({"true", "false"})
+    public boolean conflate;
+
+    @Param({"64", "4096"})
+    public int keys;
+
+    @Param({"8"})
+    public int drainEvery;
+
+    private BroadcastPayload[] updates;
+    private OutboundQueue<BroadcastPayload> queue;
+    private int next;
+
+    @Setup
+    public void setup() {
+        updates = new BroadcastPayload[keys];
+        for (int i = 0; i < keys; i++) {
+            updates[i] = BroadcastPayload.message("gia.vn", "MA" + i, "12345.6", i + 1, false, null);
+        }
+        queue = conflate
+                ? new OutboundQueue<>(1024, OverflowPolicy.DROP_OLDEST, BroadcastPayload::conflationKey)
+                : new OutboundQueue<>(1024, OverflowPolicy.DROP_OLDEST);
+    }
+
+    @Benchmark
+    public OutboundQueue.Result offer() {
+        OutboundQueue.Result result = queue.offer(updates[next % keys]);
+        if (++next % drainEvery == 0) queue.poll();
+        return result;
+    }
+}
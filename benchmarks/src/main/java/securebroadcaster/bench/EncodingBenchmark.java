@@ -0,0 +1,55 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.BroadcastPayload;
+import securebroadcaster.WireFormat;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EncodingBenchmark.java
+ * Mã hóa một tin theo từng định dạng, và chép payload dùng chung vào bộ đệm tạm
+ * (việc mỗi kết nối NIO làm trước khi wrap TLS).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"64", "1024"})
+    public int messageSize;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private String message;
+    private BroadcastPayload encoded;
+    private final ByteBuffer staging = ByteBuffer.allocate(17 * 1024);
+
+    @Setup
+    public void setup() {
+        message = "x".repeat(messageSize);
+        encoded = BroadcastPayload.message(message, 1, direct);
+        encoded.length(WireFormat.BINARY);
+    }
+
+    @Benchmark
+    public int encodeLine() {
+        return BroadcastPayload.message(message, 1, direct).length(WireFormat.LINE);
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        return BroadcastPayload.message(message, 1, direct).length(WireFormat.BINARY);
+    }
+
+    @Benchmark
+    public int copySharedPayload() {
+        staging.clear();
+        return encoded.copyTo(WireFormat.BINARY, staging, 0);
+    }
+}
@@ -0,0 +1,53 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.BroadcastPayload;
+import securebroadcaster.OutboundQueue;
+import securebroadcaster.OverflowPolicy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FanOutBenchmark.java
+ * Chi phí một lần broadcast: mã hóa payload một lần rồi xếp vào hàng đợi của N client.
+ * Chạy với -prof gc để thấy số byte cấp phát mỗi lần broadcast không phụ thuộc N.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int subscribers;
+
+    @Param({"64"})
+    public int messageSize;
+
+    private OutboundQueue<BroadcastPayload>[] queues;
+    private String message;
+    private long seq;
+
+    @Setup
+    public void setup() {
+        @SuppressWarnings("unchecked")
+        OutboundQueue<BroadcastPayload>[] created = (OutboundQueue<BroadcastPayload>[]) new OutboundQueue<?>[subscribers];
+        queues = created;
+        for (int i = 0; i < subscribers; i++) {
+            // DROP_OLDEST giữ hàng đợi ở trạng thái ổn định (luôn đầy) mà không cần luồng ghi
+            queues[i] = new OutboundQueue<>(64, OverflowPolicy.DROP_OLDEST);
+        }
+        message = "x".repeat(messageSize);
+    }
+
+    @Benchmark
+    public BroadcastPayload broadcast() {
+        BroadcastPayload payload = BroadcastPayload.message(message, ++seq, false);
+        for (OutboundQueue<BroadcastPayload> queue : queues) {
+            queue.offer(payload);
+        }
+        return payload;
+    }
+}
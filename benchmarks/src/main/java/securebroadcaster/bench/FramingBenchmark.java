@@ -0,0 +1,72 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.FrameCodec;
+import securebroadcaster.FrameReader;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FramingBenchmark.java
+ * Tạo và đọc khung nhị phân. Đọc khung phải không cấp phát (kiểm tra bằng -prof gc).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+
+    @Param({"64", "1024"})
+    public int messageSize;
+
+    private byte[] payload;
+    private FrameReader reader;
+
+    @Setup
+    public void setup() {
+        payload = "x".repeat(messageSize).getBytes(StandardCharsets.UTF_8);
+        reader = new FrameReader(new RepeatingStream(FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 1, 0, payload)));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 1, 0, payload);
+    }
+
+    @Benchmark
+    public int decode() throws Exception {
+        reader.readFrame();
+        return reader.payloadLength();
+    }
+
+    /**
+     * Luồng vô hạn lặp lại cùng một khung, không cấp phát khi đọc
+     */
+    static final class RepeatingStream extends InputStream {
+        private final byte[] frame;
+        private int pos;
+
+        RepeatingStream(byte[] frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public int read() {
+            int b = frame[pos] & 0xff;
+            pos = (pos + 1) % frame.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, frame.length - pos);
+            System.arraycopy(frame, pos, b, off, n);
+            pos = (pos + n) % frame.length;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.BroadcastJournal;
+import securebroadcaster.BroadcastPayload;
+import securebroadcaster.FsyncPolicy;
+import securebroadcaster.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * JournalBenchmark.java
+ * Ghi thêm một tin vào journal ánh xạ bộ nhớ (theo từng chính sách fsync),
+ * và đọc lại tuần tự để phát lại (lát của segment chép thẳng vào bộ đệm tạm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"NONE", "INTERVAL", "SYNC"})
+    public FsyncPolicy fsync;
+
+    private Path dir;
+    private BroadcastJournal journal;
+    private BroadcastPayload payload;
+    private BroadcastJournal.Reader reader;
+    private long seq;
+    private final ByteBuffer staging = ByteBuffer.allocate(17 * 1024);
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("journal-bench");
+        journal = BroadcastJournal.open(dir, 64 * 1024 * 1024, 4, fsync, 200);
+        payload = BroadcastPayload.message("x".repeat(64), 0, false);
+        for (int i = 0; i < 100_000; i++) {
+            journal.append(BroadcastPayload.message("x".repeat(64), ++seq, false));
+        }
+        reader = journal.reader(1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        BroadcastPayload next = BroadcastPayload.message(payload.message(), ++seq, false);
+        journal.append(next);
+        journal.awaitDurable();
+        return seq;
+    }
+
+    @Benchmark
+    public int replay() {
+        BroadcastPayload next = reader.next();
+        if (next == null) {
+            reader = journal.reader(journal.firstSeq());
+            next = reader.next();
+        }
+        staging.clear();
+        return next.copyTo(WireFormat.BINARY, staging, 0);
+    }
+}
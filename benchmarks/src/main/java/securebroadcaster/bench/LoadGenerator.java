@@ -0,0 +1,278 @@
+package securebroadcaster.bench;
+
+import securebroadcaster.BroadcastConfig;
+import securebroadcaster.BroadcastEngine;
+import securebroadcaster.DeflateCodec;
+import securebroadcaster.FrameCodec;
+import securebroadcaster.FrameReader;
+import securebroadcaster.LatencyHistogram;
+import securebroadcaster.PasswordSource;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+/**
+ * LoadGenerator.java
+ * Phiên bản headless của SecureClient: mở N kết nối TLS (giao thức khung nhị phân) từ một JVM,
+ * báo cáo số tin nhận được mỗi giây và độ trễ đầu-cuối p50/p99/p999.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar securebroadcaster.bench.LoadGenerator \
+ *        clients=1000 rate=2000 duration=30 size=64 embedded=true
+ *
+ * embedded=true: tự khởi động BroadcastEngine trong cùng JVM và tự publish với tốc độ 'rate';
+ *                in thêm số lần ghi socket mỗi tin (so sánh -Dserver.batch=true/false);
+ *                độ trễ đo bằng System.nanoTime() ghi trong payload (chính xác tới nano giây).
+ * embedded=false: chỉ kết nối tới server có sẵn (host/port); độ trễ tính từ timestamp
+ *                 của khung (độ phân giải mili giây).
+ * compress=true: xin server nén khung (server cần -Dserver.compress=true), in thêm số byte tiết kiệm
+ *               và thời gian CPU nén/giải nén; dictionary=<file> là từ điển dùng chung với server.
+ * storm=N: thay cho đo thông lượng, mô phỏng N vòng "bão kết nối lại" (mọi client cùng bắt tay rồi đóng)
+ *          và in số bắt tay mỗi giây; resume=false để mỗi kết nối tự tạo SSLContext như client cũ.
+ */
+public class LoadGenerator {
+
+    private final LongAdder delivered = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicInteger connected = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadGenerator().run(opts);
+    }
+
+    private void run(Map<String, String> opts) throws Exception {
+        String host = opts.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(opts.getOrDefault("port", "12345"));
+        int clients = Integer.parseInt(opts.getOrDefault("clients", "100"));
+        int rate = Integer.parseInt(opts.getOrDefault("rate", "1000"));
+        int size = Integer.parseInt(opts.getOrDefault("size", "64"));
+        int duration = Integer.parseInt(opts.getOrDefault("duration", "30"));
+        boolean embedded = Boolean.parseBoolean(opts.getOrDefault("embedded", "true"));
+        int storm = Integer.parseInt(opts.getOrDefault("storm", "0"));
+        boolean resume = Boolean.parseBoolean(opts.getOrDefault("resume", "true"));
+        Path keystore = Path.of(opts.getOrDefault("keystore", "server.jks"));
+        PasswordSource password = PasswordSource.parse(opts.getOrDefault("password", "env:SERVER_KEYSTORE_PASSWORD"));
+        // Mọi kết nối dùng chung một bộ giải nén: Inflater được lấy từ nhóm thay vì tạo mỗi kết nối
+        DeflateCodec codec = null;
+        if (Boolean.parseBoolean(opts.getOrDefault("compress", "false"))) {
+            String dictionary = opts.get("dictionary");
+            codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION,
+                    dictionary != null ? Files.readAllBytes(Path.of(dictionary)) : null, 0);
+        }
+
+        BroadcastEngine engine = null;
+        if (embedded) {
+            BroadcastConfig config = BroadcastConfig.fromSystemProperties()
+                    .port(port).keystorePath(keystore).passwordSource(password);
+            engine = new BroadcastEngine(config, message -> { });
+            engine.start();
+        }
+
+        if (storm > 0) {
+            reconnectStorm(keystore, password, host, port, clients, storm, resume);
+            if (engine != null) {
+                System.out.println(engine.handshakeStats().summary());
+                engine.stop();
+            }
+            System.exit(0);
+        }
+
+        SSLContext sslContext = clientContext(keystore, password);
+        DeflateCodec decompressor = codec;
+        for (int i = 0; i < clients; i++) {
+            // Mỗi kết nối một luồng ảo: hàng nghìn kết nối không tốn hàng nghìn luồng hệ điều hành
+            Thread.ofVirtual().name("load-sub-" + i).start(
+                    () -> subscribe(sslContext, host, port, embedded, decompressor));
+        }
+        while (connected.get() < clients) {
+            Thread.sleep(50);
+        }
+        System.out.println("Đã kết nối " + clients + " client.");
+
+        Thread publisher = null;
+        if (engine != null) {
+            BroadcastEngine e = engine;
+            publisher = new Thread(() -> publish(e, rate, size), "load-publisher");
+            publisher.start();
+        }
+
+        long previous = 0;
+        for (int s = 1; s <= duration; s++) {
+            Thread.sleep(1000);
+            long total = delivered.sum();
+            System.out.printf("[%3ds] %,d tin/giây, p50=%dµs p99=%dµs%n", s, total - previous,
+                    latency.percentile(50) / 1000, latency.percentile(99) / 1000);
+            previous = total;
+        }
+
+        running = false;
+        if (publisher != null) publisher.join();
+        System.out.printf("Tổng: %,d tin trong %ds (%,d tin/giây)%n", delivered.sum(), duration,
+                delivered.sum() / duration);
+        System.out.printf("Độ trễ đầu-cuối: p50=%dµs p99=%dµs p999=%dµs max=%dµs%n",
+                latency.percentile(50) / 1000, latency.percentile(99) / 1000,
+                latency.percentile(99.9) / 1000, latency.max() / 1000);
+        if (engine != null) {
+            // So sánh -Dserver.batch=true/false: số lần ghi socket mỗi tin và độ trễ ở trên
+            System.out.println("Ghi socket: " + engine.writeStats().summary());
+            System.out.println(engine.metrics().summary());
+            if (engine.compression() != null) System.out.println(engine.compression().summary());
+        }
+        if (codec != null) {
+            System.out.printf("Giải nén: %,d khung, CPU %dms%n", codec.inflatedCount(), codec.inflateNanos() / 1_000_000);
+        }
+
+        if (engine != null) engine.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Publish với tốc độ cố định; payload bắt đầu bằng System.nanoTime() lúc phát
+     */
+    private void publish(BroadcastEngine engine, int rate, int size) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        char[] padding = new char[Math.max(0, size - 20)];
+        Arrays.fill(padding, 'x');
+        String suffix = "|" + new String(padding);
+        long next = System.nanoTime();
+        while (running) {
+            engine.publish(System.nanoTime() + suffix);
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Mỗi vòng: 'clients' kết nối cùng lúc, bắt tay TLS rồi đóng. Vòng đầu là bắt tay đầy đủ;
+     * các vòng sau được nối lại phiên nếu mỗi client giữ SSLContext của mình (resume=true).
+     * Mỗi client giả lập có SSLContext riêng như một tiến trình SecureClient thật:
+     * bộ đệm phiên của JSSE chỉ giữ một phiên TLS 1.3 cho mỗi host:port.
+     */
+    private void reconnectStorm(Path keystore, PasswordSource password, String host, int port,
+                                int clients, int rounds, boolean resume) throws Exception {
+        SSLContext[] contexts = new SSLContext[clients];
+        for (int round = 1; round <= rounds; round++) {
+            LongAdder resumed = new LongAdder();
+            LongAdder failures = new LongAdder();
+            CountDownLatch done = new CountDownLatch(clients);
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                Thread.ofVirtual().name("storm-" + i).start(() -> {
+                    try {
+                        // resume=false: mỗi kết nối tự đọc truststore và tạo SSLContext mới như client cũ
+                        SSLContext sslContext = resume ? contexts[client] : null;
+                        if (sslContext == null) {
+                            sslContext = clientContext(keystore, password);
+                            contexts[client] = sslContext;
+                        }
+                        long handshakeStart = System.currentTimeMillis();
+                        try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(host, port)) {
+                            socket.startHandshake();
+                            if (socket.getSession().getCreationTime() < handshakeStart) resumed.increment();
+                            // Chờ ACK như client thật: TLS 1.3 gửi session ticket sau bắt tay, phải đọc mới nhận được
+                            OutputStream out = socket.getOutputStream();
+                            out.write((FrameCodec.HELLO_BINARY + "\n").getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                            FrameReader reader = new FrameReader(socket.getInputStream());
+                            String line;
+                            while ((line = reader.readLine()) != null && !FrameCodec.ACK_BINARY.equals(line)) {
+                                // Bỏ qua
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.increment();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            System.out.printf("[vòng %d] %,d bắt tay trong %,dms (%,d bắt tay/giây), %,d nối lại phiên, %,d lỗi%n",
+                    round, clients, elapsedMillis, clients * 1000L / elapsedMillis, resumed.sum(), failures.sum());
+        }
+    }
+
+    private void subscribe(SSLContext sslContext, String host, int port, boolean embedded, DeflateCodec codec) {
+        try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(host, port)) {
+            socket.startHandshake();
+            OutputStream out = socket.getOutputStream();
+            String hello = FrameCodec.HELLO_BINARY + "\n";
+            if (codec != null) hello += FrameCodec.compressLine(codec.dictionaryId()) + "\n";
+            out.write(hello.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            FrameReader reader = new FrameReader(socket.getInputStream(), codec);
+            String line;
+            while ((line = reader.readLine()) != null && !FrameCodec.ACK_BINARY.equals(line)) {
+                // Bỏ qua các dòng tới trước khi server xác nhận
+            }
+            connected.incrementAndGet();
+
+            while (running && reader.readFrame()) {
+                if (reader.type() != FrameCodec.TYPE_MESSAGE) continue;
+                long now = System.nanoTime();
+                long sent = embedded
+                        ? parseLeadingLong(reader.buffer(), reader.payloadOffset(), reader.payloadLength())
+                        : now - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - reader.timestamp());
+                latency.record(now - sent);
+                delivered.increment();
+            }
+        } catch (Exception e) {
+            if (running) System.err.println("Lỗi kết nối: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đọc số ở đầu payload (dạng thập phân, có thể âm) mà không cấp phát
+     */
+    private static long parseLeadingLong(byte[] buf, int offset, int length) {
+        long value = 0;
+        int i = offset;
+        int end = offset + length;
+        boolean negative = i < end && buf[i] == '-';
+        if (negative) i++;
+        for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++) {
+            value = value * 10 + (buf[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static SSLContext clientContext(Path truststore, PasswordSource passwordSource) throws Exception {
+        char[] password = passwordSource.password();
+        try (InputStream in = Files.newInputStream(truststore)) {
+            KeyStore ts = KeyStore.getInstance("JKS");
+            ts.load(in, password);
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(ts);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, tmf.getTrustManagers(), null);
+            return sslContext;
+        } finally {
+            Arrays.fill(password, ' ');
+        }
+    }
+}
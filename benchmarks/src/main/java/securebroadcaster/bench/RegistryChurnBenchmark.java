@@ -0,0 +1,93 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import securebroadcaster.SlotRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RegistryChurnBenchmark.java
+ * Thông lượng vào/ra (join + leave) của danh sách kết nối trong lúc vẫn có broadcast chạy song song:
+ * 3 luồng liên tục thêm rồi gỡ một kết nối, 1 luồng liên tục duyệt toàn bộ danh sách (như fan-out).
+ *   slot  SlotRegistry (O(1), không khóa)
+ *   list  Collections.synchronizedList như bản cũ (gỡ = quét O(n) dưới khóa mà broadcast cũng giữ)
+ *   set   ConcurrentHashMap.newKeySet()
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryChurnBenchmark {
+
+    @Param({"slot", "list", "set"})
+    public String impl;
+
+    @Param({"1000", "10000"})
+    public int connections;
+
+    private SlotRegistry<Object> slots;
+    private List<Object> list;
+    private Set<Object> set;
+
+    @Setup
+    public void setup() {
+        slots = new SlotRegistry<>();
+        list = Collections.synchronizedList(new ArrayList<>());
+        set = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < connections; i++) {
+            Object connection = new Object();
+            switch (impl) {
+                case "slot" -> slots.add(connection);
+                case "list" -> list.add(connection);
+                default -> set.add(connection);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public void joinLeave() {
+        Object connection = new Object();
+        switch (impl) {
+            case "slot" -> slots.remove(slots.add(connection));
+            case "list" -> {
+                list.add(connection);
+                list.remove(connection);
+            }
+            default -> {
+                set.add(connection);
+                set.remove(connection);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public int broadcast(Blackhole bh) {
+        switch (impl) {
+            case "slot" -> {
+                return slots.forEach(bh::consume);
+            }
+            case "list" -> {
+                synchronized (list) {
+                    for (Object connection : list) bh.consume(connection);
+                    return list.size();
+                }
+            }
+            default -> {
+                for (Object connection : set) bh.consume(connection);
+                return set.size();
+            }
+        }
+    }
+}
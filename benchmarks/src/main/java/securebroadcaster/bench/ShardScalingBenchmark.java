@@ -0,0 +1,128 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import securebroadcaster.BroadcastPayload;
+import securebroadcaster.FanOutShards;
+import securebroadcaster.OutboundQueue;
+import securebroadcaster.OverflowPolicy;
+import securebroadcaster.TopicRegistry;
+import securebroadcaster.WireFormat;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardScalingBenchmark.java
+ * Thông lượng broadcast khi chia tập subscriber thành 1..N shard (mỗi shard một luồng), qua FanOutShards.
+ * Mỗi subscriber xếp tin vào hàng đợi rồi "mã hóa TLS" nó: một bản ghi AES-GCM với khóa riêng của
+ * subscriber (đúng phần việc của SSLEngine.wrap với bộ mã TLS_AES_*_GCM, không cần keystore).
+ * Một thao tác = một broadcast tới mọi subscriber, kết thúc khi mọi shard đã xử lý xong.
+ * Chạy trên máy nhiều nhân để thấy thông lượng tăng theo số shard:
+ *   java -jar benchmarks.jar ShardScalingBenchmark -p shards=1,2,4,8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardScalingBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"20000"})
+    public int subscribers;
+
+    @Param({"64"})
+    public int messageSize;
+
+    private ExecutorService[] threads;
+    private FanOutShards<Subscriber> fanOut;
+    private String message;
+    private long seq;
+
+    @Setup
+    public void setup() throws Exception {
+        threads = new ExecutorService[shards];
+        for (int i = 0; i < shards; i++) {
+            threads[i] = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("bench-shard-" + i).factory());
+        }
+        fanOut = new FanOutShards<>(threads);
+        for (int i = 0; i < subscribers; i++) {
+            FanOutShards.Shard<Subscriber> shard = fanOut.assign();
+            shard.subscribers().subscribe(TopicRegistry.MATCH_REST, new Subscriber());
+        }
+        message = "x".repeat(messageSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (ExecutorService thread : threads) {
+            thread.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public long broadcast() throws InterruptedException {
+        BroadcastPayload payload = BroadcastPayload.message(message, ++seq, false);
+        fanOut.broadcast("", subscriber -> subscriber.deliver(payload));
+        // Mỗi shard xử lý theo thứ tự giao: tác vụ chốt chạy sau khi shard đã xong broadcast này
+        CountDownLatch done = new CountDownLatch(fanOut.count());
+        for (int i = 0; i < fanOut.count(); i++) {
+            fanOut.shard(i).execute(done::countDown);
+        }
+        done.await();
+        return payload.seq();
+    }
+
+    // Bộ đệm tạm của luồng shard (như bộ đệm staging dùng chung của một event-loop)
+    private static final ThreadLocal<ByteBuffer[]> SCRATCH = ThreadLocal.withInitial(
+            () -> new ByteBuffer[]{ByteBuffer.allocate(16 * 1024), ByteBuffer.allocate(16 * 1024 + 64)});
+
+    // --- Một subscriber: hàng đợi gửi + trạng thái mã hóa riêng (như một SSLEngine) ---
+    static final class Subscriber {
+        private final OutboundQueue<BroadcastPayload> outbound = new OutboundQueue<>(64, OverflowPolicy.DROP_OLDEST);
+        private final SecretKeySpec key;
+        private final Cipher cipher;
+        private final byte[] iv = new byte[12];
+        private long recordSeq;
+
+        Subscriber() throws Exception {
+            byte[] bytes = new byte[16];
+            ThreadLocalRandom.current().nextBytes(bytes);
+            key = new SecretKeySpec(bytes, "AES");
+            cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        }
+
+        void deliver(BroadcastPayload payload) {
+            outbound.offer(payload);
+            ByteBuffer[] scratch = SCRATCH.get();
+            ByteBuffer plain = scratch[0];
+            ByteBuffer record = scratch[1];
+            BroadcastPayload next;
+            while ((next = outbound.poll()) != null) {
+                plain.clear();
+                next.copyTo(WireFormat.BINARY, plain, 0);
+                plain.flip();
+                record.clear();
+                try {
+                    // Nonce mỗi bản ghi khác nhau, như số thứ tự bản ghi TLS
+                    long n = ++recordSeq;
+                    for (int i = 0; i < 8; i++) iv[4 + i] = (byte) (n >>> (56 - 8 * i));
+                    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+                    cipher.doFinal(plain, record);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
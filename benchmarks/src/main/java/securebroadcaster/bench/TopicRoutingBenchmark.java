@@ -0,0 +1,71 @@
+package securebroadcaster.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import securebroadcaster.TopicRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TopicRoutingBenchmark.java
+ * Chi phí tìm người nhận của một publish khi có nhiều topic: tra TopicRegistry (theo nhánh khớp của cây)
+ * so với duyệt mọi kết nối rồi so mẫu từng cái. Mỗi topic có 'perTopic' người đăng ký chính xác,
+ * cộng một ít người đăng ký wildcard ("feed.*", "feed.#").
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicRoutingBenchmark {
+
+    @Param({"10", "1000"})
+    public int topics;
+
+    @Param({"10"})
+    public int perTopic;
+
+    private final TopicRegistry<Integer> registry = new TopicRegistry<>();
+    private String[] patterns;  // Mẫu của từng kết nối (cho cách duyệt tuần tự)
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() {
+        int wildcards = 4;
+        patterns = new String[topics * perTopic + wildcards];
+        names = new String[topics];
+        int id = 0;
+        for (int t = 0; t < topics; t++) {
+            names[t] = "feed." + t;
+            for (int i = 0; i < perTopic; i++) {
+                patterns[id] = names[t];
+                registry.subscribe(names[t], id++);
+            }
+        }
+        for (int i = 0; i < wildcards; i++) {
+            patterns[id] = i % 2 == 0 ? "feed.*" : "feed.#";
+            registry.subscribe(patterns[id], id++);
+        }
+    }
+
+    @Benchmark
+    public int indexed(Blackhole bh) {
+        String topic = names[next++ % topics];
+        return registry.forEachMatch(topic, bh::consume);
+    }
+
+    @Benchmark
+    public int scanAll(Blackhole bh) {
+        String topic = names[next++ % topics];
+        int count = 0;
+        for (int id = 0; id < patterns.length; id++) {
+            if (TopicRegistry.matches(patterns[id], topic)) {
+                bh.consume(id);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,546 @@
+package securebroadcaster;
+
+import javax.net.ssl.*;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * BlockingBroadcastServer.java
+ * Lõi mạng kiểu cũ: socket chặn, mỗi client một tác vụ đọc và một tác vụ ghi.
+ * Cổng nghe là ServerSocket thường; TLS được phủ lên từng socket đã accept bằng SSLContext hiện hành,
+ * nên keystore nạp lại (BroadcastEngine.reload) áp dụng cho kết nối mới mà không phải mở lại cổng.
+ * Các tác vụ chạy trên executor theo ExecutionMode (mặc định luồng ảo, xem BroadcastConfig).
+ * Việc chia một broadcast vào hàng đợi của từng client chạy song song trên các shard (FanOutShards),
+ * mỗi shard một luồng hệ điều hành; mã hóa TLS và ghi do luồng ghi riêng của từng client đảm nhận.
+ * Khi bật gom nhóm (server.batch), luồng ghi dồn các tin đang chờ vào bộ đệm rồi flush một lần
+ * (một bản ghi TLS, một lần ghi socket) thay vì flush sau từng tin.
+ * Heartbeat của mọi client đã xin (FrameCodec.HEARTBEAT) do MỘT luồng với một bánh xe hẹn giờ (TimerWheel)
+ * quản lý; client im lặng quá hạn bị đóng socket, nên luồng đọc/ghi đang chặn của nó thoát ra và dọn dẹp.
+ */
+public class BlockingBroadcastServer implements BroadcastTransport {
+
+    private static final int MAX_RECORD_PLAINTEXT = 16 * 1024; // Bản rõ tối đa của một bản ghi TLS
+    private static final long HEARTBEAT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Supplier<SSLContext> sslContext;
+    private final BroadcastConfig config;
+    private final HandshakeStage handshakes;
+    private final BroadcastHistory history;
+    private final DeflateCodec compression; // null = không nén
+    private final BroadcastMetrics metrics;
+    private final Consumer<String> log;
+
+    private volatile boolean isRunning = false; // Dùng 'volatile' để đảm bảo an toàn luồng
+    private volatile ServerSocket serverSocket; // Đổi khi rebind
+    private ExecutorService executor;
+    private ExecutorService[] fanOutThreads;
+    private FanOutShards<ClientHandler> shards;
+    private final WriteStats writeStats = new WriteStats();
+
+    // Các client đang kết nối: vào/ra O(1) không khóa, nên hàng loạt client ngắt cùng lúc
+    // không phải quét danh sách dưới một khóa chung
+    private final SlotRegistry<ClientHandler> clients = new SlotRegistry<>();
+
+    // Heartbeat: bánh xe chỉ luồng heartbeat dùng; client mới xin heartbeat được chuyển sang qua hàng chờ.
+    // Luồng heartbeat chỉ chạy từ khi client đầu tiên xin heartbeat.
+    private TimerWheel<ClientHandler> wheel;
+    private final Queue<ClientHandler> heartbeatJoins = new ConcurrentLinkedQueue<>();
+    private volatile Thread heartbeatThread;
+
+    public BlockingBroadcastServer(Supplier<SSLContext> sslContext, BroadcastConfig config, HandshakeStage handshakes,
+                                   BroadcastHistory history, DeflateCodec compression, BroadcastMetrics metrics,
+                                   Consumer<String> log) {
+        this.history = history;
+        this.compression = compression;
+        this.metrics = metrics;
+        this.sslContext = sslContext;
+        this.config = config;
+        this.handshakes = handshakes;
+        this.log = log;
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(config.port());
+        executor = config.threadMode().newExecutor("blocking-client", config.maxThreads());
+        // Mỗi shard một luồng cố định: giữ thứ tự broadcast cho các client của nó
+        fanOutThreads = new ExecutorService[Math.max(1, config.shards())];
+        for (int i = 0; i < fanOutThreads.length; i++) {
+            fanOutThreads[i] = Executors.newSingleThreadExecutor(
+                    Thread.ofPlatform().name("fanout-" + i).daemon().factory());
+        }
+        shards = new FanOutShards<>(fanOutThreads, metrics.fanOutLatency());
+        wheel = new TimerWheel<>(HEARTBEAT_TICK_NANOS, TimeUnit.MILLISECONDS.toNanos(
+                Math.max(config.heartbeatIntervalMillis(), config.heartbeatTimeoutMillis())), System.nanoTime());
+        isRunning = true;
+        config.threadMode().startThread("blocking-accept", this::acceptLoop);
+    }
+
+    /**
+     * Chuyển một client sang luồng heartbeat (khởi động luồng ở lần đầu)
+     */
+    private synchronized void joinHeartbeat(ClientHandler client) {
+        heartbeatJoins.add(client);
+        if (heartbeatThread == null && isRunning) {
+            heartbeatThread = Thread.ofPlatform().name("heartbeat").daemon().start(this::heartbeatLoop);
+        }
+    }
+
+    /**
+     * Luồng heartbeat: mỗi tick nhận các client vừa xin heartbeat rồi xử lý các hạn chót đã tới
+     * (O(1) mỗi client), thay vì một bộ hẹn giờ cho mỗi kết nối
+     */
+    private void heartbeatLoop() {
+        while (isRunning) {
+            long now = System.nanoTime();
+            ClientHandler joined;
+            while ((joined = heartbeatJoins.poll()) != null) {
+                joined.startHeartbeat(now);
+            }
+            wheel.advance(now, client -> client.onHeartbeat(now));
+            try {
+                TimeUnit.NANOSECONDS.sleep(HEARTBEAT_TICK_NANOS);
+            } catch (InterruptedException e) {
+                return; // Đang dừng
+            }
+        }
+    }
+
+    /**
+     * Vòng lặp chính: Chấp nhận kết nối.
+     * Chỉ accept rồi giao cho HandshakeStage; một client bắt tay chậm không chặn client kế tiếp.
+     */
+    private void acceptLoop() {
+        while (isRunning) {
+            ServerSocket server = serverSocket;
+            try {
+                Socket clientSocket = server.accept();
+                metrics.accepted();
+                try {
+                    handshakes.execute(() -> handshake(clientSocket));
+                } catch (RejectedExecutionException e) {
+                    metrics.rejected();
+                    log.accept("Máy chủ đã đầy, từ chối client " + clientSocket.getInetAddress());
+                    closeQuietly(clientSocket);
+                }
+
+            } catch (IOException e) {
+                if (isRunning && server == serverSocket) { // Không phải cổng cũ vừa được thay sau rebind
+                    log.accept("Lỗi Socket: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Chạy trên worker của HandshakeStage: phủ TLS (SSLContext hiện hành) lên socket vừa accept,
+     * bắt tay có hạn chót, thành công mới tạo ClientHandler và đưa vào danh sách broadcast
+     */
+    private void handshake(Socket plain) {
+        SSLSocket clientSocket;
+        try {
+            clientSocket = (SSLSocket) sslContext.get().getSocketFactory().createSocket(
+                    plain, plain.getInetAddress().getHostAddress(), plain.getPort(), true);
+            clientSocket.setUseClientMode(false);
+        } catch (IOException e) {
+            log.accept("Không tạo được SSLSocket cho " + plain.getInetAddress() + ": " + e.getMessage());
+            closeQuietly(plain);
+            return;
+        }
+        HandshakeStage.Attempt attempt = handshakes.begin(() -> closeQuietly(clientSocket));
+        try {
+            clientSocket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, config.handshakeTimeoutMillis()));
+            clientSocket.startHandshake();
+            clientSocket.setSoTimeout(0);
+        } catch (IOException e) {
+            attempt.failed();
+            if (isRunning) {
+                log.accept("Bắt tay TLS với " + clientSocket.getInetAddress()
+                        + (attempt.isTimedOut() ? " quá thời gian." : " thất bại: " + e.getMessage()));
+            }
+            closeQuietly(clientSocket);
+            return;
+        }
+        if (!attempt.succeeded(clientSocket.getSession()) || !isRunning) {
+            closeQuietly(clientSocket);
+            return;
+        }
+        log.accept("Client đã kết nối: " + clientSocket.getInetAddress());
+
+        ClientHandler handler;
+        try {
+            // Bộ đệm bằng một bản ghi TLS đầy (16KB bản rõ): một lần flush là một bản ghi
+            OutputStream out = new CountingOutputStream(clientSocket.getOutputStream(), writeStats);
+            handler = new ClientHandler(plain, clientSocket, new BufferedOutputStream(out, MAX_RECORD_PLAINTEXT),
+                    shards.assign());
+        } catch (IOException e) {
+            log.accept("Lỗi khi tạo ClientHandler: " + e.getMessage());
+            closeQuietly(clientSocket);
+            return;
+        }
+        handler.slot = clients.add(handler);
+        handler.subscriptions.join();
+        try {
+            executor.execute(handler);
+            executor.execute(handler::drainOutbound); // Tác vụ ghi riêng của client
+        } catch (RejectedExecutionException e) {
+            // Chế độ POOLED đã dùng hết luồng: từ chối client này
+            metrics.rejected();
+            log.accept("Máy chủ đã đầy, từ chối client " + clientSocket.getInetAddress());
+            clients.remove(handler.slot);
+            handler.subscriptions.leave();
+            handler.disconnect();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Bỏ qua lỗi
+        }
+    }
+
+    @Override
+    public int broadcast(BroadcastPayload payload) {
+        // Tra chỉ mục topic của từng shard; các shard xếp tin vào hàng đợi client song song
+        return shards.broadcast(payload.topic(), client -> client.enqueue(payload));
+    }
+
+    @Override
+    public int clientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public WriteStats writeStats() {
+        return writeStats;
+    }
+
+    @Override
+    public void queueDepths(IntConsumer action) {
+        clients.forEach(client -> action.accept(client.outbound.size()));
+    }
+
+    @Override
+    public void rebind(int port) throws IOException {
+        ServerSocket fresh = new ServerSocket(port);
+        ServerSocket old = serverSocket;
+        serverSocket = fresh;
+        old.close(); // accept() đang chờ trên cổng cũ ném SocketException; vòng lặp chuyển sang cổng mới
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+
+        // Đóng tất cả kết nối của client; luồng đọc của từng client sẽ tự gỡ nó khỏi danh sách
+        clients.forEach(ClientHandler::disconnect);
+
+        // Đóng ServerSocket
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.accept("Lỗi khi đóng cổng: " + e.getMessage());
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (heartbeatThread != null) {
+            heartbeatThread.interrupt();
+        }
+        if (fanOutThreads != null) {
+            for (ExecutorService thread : fanOutThreads) {
+                thread.shutdown();
+            }
+        }
+    }
+
+    // --- Lớp nội bộ (Inner Class) để xử lý từng client ---
+    private class ClientHandler implements Runnable {
+        private final Socket plain; // Socket TCP bên dưới SSLSocket: dùng để ngắt ngay, không qua TLS
+        private final SSLSocket clientSocket;
+        private final OutputStream writer;
+        private final OutboundQueue<BroadcastPayload> outbound =
+                new OutboundQueue<>(config.queueCapacity(), config.overflowPolicy(), BroadcastPayload::conflationKey);
+        private final Subscriptions<ClientHandler> subscriptions;
+        private long slot; // Handle trong 'clients' (gán trước khi luồng đọc/ghi chạy)
+        // Trạng thái của luồng ghi
+        private final byte[] scratch = new byte[8192]; // Chỉ dùng khi payload nằm trong bộ nhớ direct
+        private WireFormat format = WireFormat.LINE;
+        // Luồng đọc: client đã xin khung nhị phân / đã được nhận nén
+        private boolean binaryRequested = false;
+        private boolean compressAccepted = false;
+        private volatile boolean tooSlow = false; // Bị ngắt vì hàng đợi đầy (ghi từ luồng shard, đọc khi dọn dẹp)
+        private volatile boolean closed = false; // Đã ngắt (đóng TLS hoặc hủy socket TCP)
+        // Heartbeat: luồng đọc ghi lastRead và đánh dấu đã xin; nút hẹn giờ và lastPing chỉ luồng heartbeat dùng
+        private volatile long lastRead = System.nanoTime();
+        private boolean heartbeatRequested = false;
+        private TimerWheel.Timeout<ClientHandler> heartbeat;
+        private long lastPing;
+        private BufferedReader reader;
+
+        public ClientHandler(Socket plain, SSLSocket socket, OutputStream writer,
+                             FanOutShards.Shard<ClientHandler> shard) {
+            this.plain = plain;
+            this.clientSocket = socket;
+            this.writer = writer;
+            this.subscriptions = new Subscriptions<>(shard.subscribers(), this);
+            try {
+                // Tạo một "tai nghe" để nhận dữ liệu từ client
+                this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            } catch (IOException e) {
+                log.accept("Lỗi khi tạo ClientHandler: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Gọi từ luồng của shard: chỉ xếp hàng, không bao giờ chặn
+         */
+        void enqueue(BroadcastPayload payload) {
+            OutboundQueue.Result result = outbound.offer(payload);
+            metrics.enqueued(result);
+            if (result == OutboundQueue.Result.OVERFLOW) {
+                log.accept("Client " + clientSocket.getInetAddress() + " quá chậm (hàng đợi đầy), ngắt kết nối.");
+                tooSlow = true;
+                abort();
+            }
+        }
+
+        /**
+         * Gọi từ luồng đọc (ACK, mốc phát lại) hoặc luồng heartbeat (PING): xếp vào làn điều khiển
+         * (không bị bỏ khi hàng đợi đầy), không bao giờ chặn
+         */
+        private void control(BroadcastPayload payload) {
+            if (outbound.offerControl(payload) == OutboundQueue.Result.OVERFLOW) {
+                log.accept("Client " + clientSocket.getInetAddress() + " gửi dồn quá nhiều yêu cầu, ngắt kết nối.");
+                abort();
+            }
+        }
+
+        /**
+         * Luồng heartbeat: đặt hạn đầu tiên cho client vừa xin heartbeat
+         */
+        void startHeartbeat(long now) {
+            if (closed) return;
+            heartbeat = TimerWheel.timeout(this);
+            lastPing = now;
+            wheel.schedule(heartbeat, now + TimeUnit.MILLISECONDS.toNanos(config.heartbeatIntervalMillis()));
+        }
+
+        /**
+         * Luồng heartbeat, tới hạn: ngắt nếu client im lặng quá lâu, xếp PING nếu đã tới lượt, rồi đặt hạn kế tiếp.
+         * Client đã ngắt thì không đặt lại: nút của nó rời bánh xe ở lần hết hạn này.
+         */
+        void onHeartbeat(long now) {
+            if (closed) return;
+            if (!config.heartbeat()) return; // Heartbeat vừa bị tắt: nút rời bánh xe
+            long interval = TimeUnit.MILLISECONDS.toNanos(config.heartbeatIntervalMillis());
+            long timeout = TimeUnit.MILLISECONDS.toNanos(config.heartbeatTimeoutMillis());
+            long read = lastRead;
+            if (now - read >= timeout) {
+                log.accept("Client " + clientSocket.getInetAddress() + " không phản hồi heartbeat quá "
+                        + config.heartbeatTimeoutMillis() + " ms, ngắt kết nối.");
+                metrics.idleDisconnected();
+                abort(); // Không đóng TLS trên luồng heartbeat dùng chung; luồng đọc sẽ dọn dẹp
+                return;
+            }
+            if (now - lastPing >= interval) {
+                lastPing = now;
+                metrics.pinged();
+                control(BroadcastPayload.PING); // Làn điều khiển: không bị bỏ khi hàng đợi dữ liệu đầy
+                if (closed) return;
+            }
+            wheel.schedule(heartbeat, Math.min(lastPing + interval, read + timeout));
+        }
+
+        /**
+         * Luồng ghi: lấy tin khỏi hàng đợi và ghi ra socket (có thể chặn, nhưng chỉ ảnh hưởng client này)
+         */
+        void drainOutbound() {
+            ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+            try {
+                while (true) {
+                    // Tin phát lại (nếu client vừa RESUME) trước, rồi tới hàng đợi live
+                    BroadcastPayload payload = cursor.next(outbound);
+                    if (payload == null) {
+                        payload = outbound.take(); // Chờ tới khi có tin
+                        if (payload == null) break; // Hàng đợi đã đóng
+                        payload = cursor.admit(payload);
+                        if (payload == null) continue;
+                    }
+                    write(payload);
+
+                    // Gom nhóm: ghi tiếp các tin đang chờ (đợi thêm tối đa 'linger') vào cùng bộ đệm.
+                    // Dừng sau tin nâng cấp: ACK phải tới client trước các khung nhị phân.
+                    // Đọc lại cấu hình gom nhóm mỗi nhóm: đổi được khi đang chạy
+                    int batchMax = config.batch() ? Math.max(1, config.batchMax()) : 1;
+                    long lingerNanos = config.batch() ? TimeUnit.MILLISECONDS.toNanos(config.batchLingerMillis()) : 0;
+                    int batched = 1;
+                    long deadline = System.nanoTime() + lingerNanos;
+                    while (batched < batchMax && payload.upgradeTo() == null) {
+                        BroadcastPayload more = cursor.next(outbound);
+                        if (more == null) {
+                            more = outbound.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                            if (more == null) break; // Hết thời gian chờ (hoặc hàng đợi đã đóng)
+                            more = cursor.admit(more);
+                            if (more == null) continue;
+                        }
+                        payload = more;
+                        write(payload);
+                        batched++;
+                    }
+                    writer.flush(); // Đẩy tin (hoặc cả nhóm) đi ngay
+                }
+            } catch (IOException e) {
+                disconnect(); // Socket đã hỏng; luồng đọc sẽ dọn dẹp
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(BroadcastPayload payload) throws IOException {
+            payload.writeTo(format, writer, scratch);
+            writeStats.message(payload.length(format), payload.savedBytes(format));
+            if (payload.upgradeTo() != null) {
+                format = payload.upgradeTo(); // Đã gửi ACK: từ giờ dùng khung nhị phân
+            }
+        }
+
+        /**
+         * Đóng socket; luồng đọc (run) sẽ thoát và dọn dẹp
+         */
+        void disconnect() {
+            closed = true;
+            outbound.close();
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                // Bỏ qua lỗi
+            }
+        }
+
+        /**
+         * Ngắt ngay, an toàn trên luồng không được phép chặn (shard, heartbeat): không đóng TLS vì close_notify
+         * phải chờ khóa ghi của SSLSocket, mà luồng ghi có thể đang kẹt giữ khóa đó với một client không đọc.
+         * Hủy socket TCP bên dưới (SO_LINGER 0: gửi RST, không chờ): luồng ghi và luồng đọc đang chặn đều
+         * nhận lỗi, luồng đọc (run) sẽ dọn dẹp và đóng SSLSocket.
+         */
+        void abort() {
+            closed = true;
+            outbound.close();
+            try {
+                plain.setSoLinger(true, 0);
+            } catch (IOException e) {
+                // Socket đã đóng: vẫn gọi close bên dưới
+            }
+            closeQuietly(plain);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Chúng ta dùng vòng lặp readLine() để phát hiện khi client ngắt kết nối
+                // Khi client đóng, readLine() sẽ trả về null
+                String inputLine;
+                while ((inputLine = reader.readLine()) != null) {
+                    lastRead = System.nanoTime();
+                    // Client mới xin dùng khung nhị phân; client cũ không gửi gì
+                    if (FrameCodec.HELLO_BINARY.equals(inputLine)) {
+                        binaryRequested = true;
+                        control(BroadcastPayload.upgrade(WireFormat.BINARY));
+                        continue;
+                    }
+                    // Client xin nén (sau HELLO_BINARY); bỏ qua nếu server tắt nén hoặc từ điển không khớp
+                    long dictionaryId = FrameCodec.parseCommand(inputLine, FrameCodec.COMPRESS);
+                    if (dictionaryId >= 0) {
+                        if (binaryRequested && !compressAccepted && compression != null
+                                && compression.accepts(dictionaryId)) {
+                            compressAccepted = true;
+                            control(BroadcastPayload.upgrade(WireFormat.DEFLATE));
+                        }
+                        continue;
+                    }
+                    // Client xin heartbeat (sau HELLO_BINARY); PONG chỉ để báo còn sống (lastRead đã cập nhật)
+                    if (FrameCodec.HEARTBEAT.equals(inputLine)) {
+                        if (binaryRequested && !heartbeatRequested && config.heartbeat()) {
+                            heartbeatRequested = true;
+                            joinHeartbeat(this);
+                        }
+                        continue;
+                    }
+                    if (FrameCodec.PONG.equals(inputLine)) {
+                        continue;
+                    }
+                    // Client chọn topic muốn nhận (SUB/UNSUB)
+                    if (subscriptions.onLine(inputLine)) {
+                        continue;
+                    }
+                    // Client kết nối lại xin các tin đã lỡ (hoặc xin lịch sử); luồng ghi sẽ phát lại đúng thứ tự
+                    BroadcastPayload request = history.replayRequest(inputLine);
+                    if (request != null) {
+                        control(request);
+                    }
+                }
+            } catch (SocketException e) {
+                if (isRunning) {
+                    log.accept("Client " + clientSocket.getInetAddress() + " ngắt kết nối đột ngột.");
+                }
+            } catch (IOException e) {
+                if (isRunning) {
+                    log.accept("Lỗi I/O với client " + clientSocket.getInetAddress() + ": " + e.getMessage());
+                }
+            } finally {
+                // --- Phần dọn dẹp quan trọng ---
+                log.accept("Client " + clientSocket.getInetAddress() + " đã ngắt kết nối." + outbound.dropSummary());
+
+                // Xóa client này khỏi danh sách broadcast (và chỉ mục topic) rồi dừng luồng ghi
+                clients.remove(slot);
+                subscriptions.leave();
+                outbound.close();
+                metrics.disconnected(tooSlow);
+
+                // Đóng luồng và socket
+                try {
+                    if (writer != null) writer.close();
+                    if (reader != null) reader.close();
+                    if (clientSocket != null) clientSocket.close();
+                } catch (IOException e) {
+                    log.accept("Lỗi khi đóng tài nguyên của client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // --- Đếm các lần ghi xuống SSLSocket: mỗi lần là một (hoặc vài) bản ghi TLS và một lần ghi socket ---
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final WriteStats stats;
+
+        CountingOutputStream(OutputStream out, WriteStats stats) {
+            super(out);
+            this.stats = stats;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            stats.write();
+            for (int i = 0; i < len; i += MAX_RECORD_PLAINTEXT) {
+                stats.record();
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package securebroadcaster;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * BroadcastConfig.java
+ * Cấu hình không tương tác của BroadcastEngine.
+ * Mỗi khóa lấy theo thứ tự: file .properties -> System property (-D...) -> mặc định.
+ * Các khóa trong RELOADABLE đổi được khi máy chủ đang chạy (BroadcastEngine.reload): trường của chúng
+ * là volatile và được đọc lại mỗi lần dùng; các khóa khác chỉ có hiệu lực sau khi khởi động lại.
+ */
+public class BroadcastConfig {
+
+    /**
+     * Khóa áp dụng được ngay khi đang chạy, không đóng kết nối nào
+     */
+    public static final Set<String> RELOADABLE = Set.of("server.port", "server.keystore", "server.password",
+            "server.handshake.timeout", "server.session.cache", "server.session.timeout", "server.queue.capacity",
+            "server.queue.overflow", "server.batch", "server.batch.linger", "server.batch.max",
+            "server.heartbeat.interval", "server.heartbeat.timeout");
+
+    /**
+     * Khóa RELOADABLE chỉ có hiệu lực với kết nối mới: hàng đợi gửi của mỗi kết nối được tạo một lần lúc kết nối,
+     * kết nối đang có giữ sức chứa và chính sách tràn cũ
+     */
+    public static final Set<String> NEW_CONNECTIONS_ONLY = Set.of("server.queue.capacity", "server.queue.overflow");
+
+    private volatile int port = 12345;
+    private volatile Path keystorePath = Path.of("server.jks");
+    private volatile PasswordSource passwordSource = PasswordSource.parse("env:SERVER_KEYSTORE_PASSWORD");
+
+    // File .properties đã nạp (null = chỉ từ System property) và có theo dõi keystore/file đó để nạp lại không
+    private Path source = null;
+    private boolean reload = true;
+
+    // Chế độ lõi mạng: NIO (SSLEngine + Selector) hoặc một luồng mỗi client
+    private boolean nioMode = true;
+
+    // Số shard fan-out (mỗi shard một luồng, sở hữu một phần client); ở chế độ NIO mỗi event-loop là một shard,
+    // nên số event-loop mặc định bằng số shard
+    private int shards = Runtime.getRuntime().availableProcessors();
+    private Integer loops = null; // null = bằng shards
+
+    // Cách chạy các tác vụ chặn: luồng ảo (mặc định), luồng hệ điều hành, hoặc nhóm luồng có giới hạn
+    private ExecutionMode threadMode = ExecutionMode.VIRTUAL;
+    private int maxThreads = 2000;
+
+    // Hạn chót cho một lần bắt tay TLS (mili giây)
+    private volatile long handshakeTimeoutMillis = 10_000;
+
+    // Bộ đệm phiên TLS phía server: client kết nối lại được nối lại phiên (không cần bắt tay RSA đầy đủ)
+    private volatile int sessionCacheSize = 20_000;
+    private volatile int sessionTimeoutSeconds = 86_400;
+
+    // Số broadcast gần nhất giữ lại để phát lại cho client kết nối lại
+    private int replayCapacity = 4096;
+
+    // Bộ nhớ đệm giá trị mới nhất của tin có khóa (ảnh chụp cho client vào muộn): số khóa tối đa (0 = tắt)
+    // và số byte ước lượng tối đa; vượt thì loại khóa được cập nhật lâu nhất
+    private int lvcEntries = 10_000;
+    private long lvcBytes = 16L * 1024 * 1024;
+
+    // Journal trên đĩa (tùy chọn): null = tắt
+    private Path journalDir = null;
+    private int journalSegmentSize = 64 * 1024 * 1024;
+    private int journalRetainSegments = 16;
+    private FsyncPolicy journalFsync = FsyncPolicy.INTERVAL;
+    private long journalFsyncIntervalMillis = 200;
+
+    // Hàng đợi gửi riêng của mỗi client
+    private volatile int queueCapacity = 1024;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    // Gom nhóm ghi (tùy chọn): nhiều tin đang chờ của một client đi chung một bản ghi TLS / một lần ghi socket.
+    // Chờ thêm tối đa batchLingerMillis để gom, tối đa batchMax tin mỗi lần ghi
+    private volatile boolean batch = false;
+    private volatile long batchLingerMillis = 2;
+    private volatile int batchMax = 64;
+
+    // Heartbeat (với client đã xin, xem FrameCodec.HEARTBEAT): gửi PING mỗi
+    // heartbeatIntervalMillis, ngắt kết nối khi không nhận được gì từ client quá heartbeatTimeoutMillis (0 = tắt)
+    private volatile long heartbeatIntervalMillis = 15_000;
+    private volatile long heartbeatTimeoutMillis = 45_000;
+
+    // Nén deflate (tùy chọn, thỏa thuận với từng client): mức nén, ngưỡng kích thước và từ điển dựng sẵn
+    private boolean compress = false;
+    private int compressLevel = 6;
+    private int compressMinSize = 128;
+    private Path compressDictionary = null;
+
+    // Liên kết nhiều node (tùy chọn): cổng liên kết mTLS (0 = tắt), địa chỉ các peer "host:port",
+    // tên node (mặc định "<hostname>:<server.port>") và truststore chứa chứng chỉ của các peer (mặc định = keystore)
+    private int federationPort = 0;
+    private List<String> federationPeers = List.of();
+    private String federationNode = null;
+    private Path federationTruststore = null;
+
+    // Số liệu: MBean JMX (mặc định bật) và trang văn bản /metrics trên loopback (cổng, 0 = tắt)
+    private boolean metricsJmx = true;
+    private int metricsHttpPort = 0;
+
+    // Payload broadcast nằm trong bộ nhớ direct (ngoài heap) hay không
+    private boolean directPayload = false;
+
+    /**
+     * Cấu hình chỉ từ System property và mặc định
+     */
+    public static BroadcastConfig fromSystemProperties() {
+        return fromProperties(new Properties());
+    }
+
+    /**
+     * Đọc file .properties (các khóa giống tên System property, ví dụ server.port=12345)
+     */
+    public static BroadcastConfig load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        BroadcastConfig c = fromProperties(props);
+        c.source = file;
+        return c;
+    }
+
+    public static BroadcastConfig fromProperties(Properties props) {
+        BroadcastConfig c = new BroadcastConfig();
+        String v;
+        if ((v = get(props, "server.port")) != null) c.port = Integer.parseInt(v);
+        if ((v = get(props, "server.keystore")) != null) c.keystorePath = Path.of(v);
+        if ((v = get(props, "server.password")) != null) c.passwordSource = PasswordSource.parse(v);
+        if ((v = get(props, "server.mode")) != null) c.nioMode = !"blocking".equalsIgnoreCase(v);
+        if ((v = get(props, "server.shards")) != null) c.shards = Integer.parseInt(v);
+        if ((v = get(props, "server.loops")) != null) c.loops = Integer.parseInt(v);
+        if ((v = get(props, "server.threads")) != null) c.threadMode = ExecutionMode.parse(v);
+        if ((v = get(props, "server.threads.max")) != null) c.maxThreads = Integer.parseInt(v);
+        if ((v = get(props, "server.handshake.timeout")) != null) c.handshakeTimeoutMillis = Long.parseLong(v);
+        if ((v = get(props, "server.session.cache")) != null) c.sessionCacheSize = Integer.parseInt(v);
+        if ((v = get(props, "server.session.timeout")) != null) c.sessionTimeoutSeconds = Integer.parseInt(v);
+        if ((v = get(props, "server.replay.capacity")) != null) c.replayCapacity = Integer.parseInt(v);
+        if ((v = get(props, "server.lvc.entries")) != null) c.lvcEntries = Integer.parseInt(v);
+        if ((v = get(props, "server.lvc.bytes")) != null) c.lvcBytes = Long.parseLong(v);
+        if ((v = get(props, "server.journal.dir")) != null) c.journalDir = v.isBlank() ? null : Path.of(v);
+        if ((v = get(props, "server.journal.segment.size")) != null) c.journalSegmentSize = Integer.parseInt(v);
+        if ((v = get(props, "server.journal.retain")) != null) c.journalRetainSegments = Integer.parseInt(v);
+        if ((v = get(props, "server.journal.fsync")) != null) c.journalFsync = FsyncPolicy.parse(v);
+        if ((v = get(props, "server.journal.fsync.interval")) != null)
+            c.journalFsyncIntervalMillis = Long.parseLong(v);
+        if ((v = get(props, "server.queue.capacity")) != null) c.queueCapacity = Integer.parseInt(v);
+        if ((v = get(props, "server.queue.overflow")) != null) c.overflowPolicy = OverflowPolicy.parse(v);
+        if ((v = get(props, "server.batch")) != null) c.batch = Boolean.parseBoolean(v);
+        if ((v = get(props, "server.batch.linger")) != null) c.batchLingerMillis = Long.parseLong(v);
+        if ((v = get(props, "server.batch.max")) != null) c.batchMax = Integer.parseInt(v);
+        if ((v = get(props, "server.heartbeat.interval")) != null) c.heartbeatIntervalMillis = Long.parseLong(v);
+        if ((v = get(props, "server.heartbeat.timeout")) != null) c.heartbeatTimeoutMillis = Long.parseLong(v);
+        if ((v = get(props, "server.compress")) != null) c.compress = Boolean.parseBoolean(v);
+        if ((v = get(props, "server.compress.level")) != null) c.compressLevel = Integer.parseInt(v);
+        if ((v = get(props, "server.compress.min")) != null) c.compressMinSize = Integer.parseInt(v);
+        if ((v = get(props, "server.compress.dictionary")) != null)
+            c.compressDictionary = v.isBlank() ? null : Path.of(v);
+        if ((v = get(props, "server.federation.port")) != null) c.federationPort = Integer.parseInt(v);
+        if ((v = get(props, "server.federation.peers")) != null) c.federationPeers = parseList(v);
+        if ((v = get(props, "server.federation.node")) != null) c.federationNode = v.isBlank() ? null : v;
+        if ((v = get(props, "server.federation.truststore")) != null)
+            c.federationTruststore = v.isBlank() ? null : Path.of(v);
+        if ((v = get(props, "server.metrics.jmx")) != null) c.metricsJmx = Boolean.parseBoolean(v);
+        if ((v = get(props, "server.metrics.http")) != null) c.metricsHttpPort = Integer.parseInt(v);
+        if ((v = get(props, "server.payload.direct")) != null) c.directPayload = Boolean.parseBoolean(v);
+        if ((v = get(props, "server.reload")) != null) c.reload = Boolean.parseBoolean(v);
+        return c;
+    }
+
+    /**
+     * Các khóa có giá trị khác trong 'other' (không so được server.password: luôn coi là không đổi)
+     */
+    public List<String> changedKeys(BroadcastConfig other) {
+        List<String> keys = new ArrayList<>();
+        diff(keys, "server.port", port, other.port);
+        diff(keys, "server.keystore", keystorePath, other.keystorePath);
+        diff(keys, "server.mode", nioMode, other.nioMode);
+        diff(keys, "server.shards", shards, other.shards);
+        diff(keys, "server.loops", loops, other.loops);
+        diff(keys, "server.threads", threadMode, other.threadMode);
+        diff(keys, "server.threads.max", maxThreads, other.maxThreads);
+        diff(keys, "server.handshake.timeout", handshakeTimeoutMillis, other.handshakeTimeoutMillis);
+        diff(keys, "server.session.cache", sessionCacheSize, other.sessionCacheSize);
+        diff(keys, "server.session.timeout", sessionTimeoutSeconds, other.sessionTimeoutSeconds);
+        diff(keys, "server.replay.capacity", replayCapacity, other.replayCapacity);
+        diff(keys, "server.lvc.entries", lvcEntries, other.lvcEntries);
+        diff(keys, "server.lvc.bytes", lvcBytes, other.lvcBytes);
+        diff(keys, "server.journal.dir", journalDir, other.journalDir);
+        diff(keys, "server.journal.segment.size", journalSegmentSize, other.journalSegmentSize);
+        diff(keys, "server.journal.retain", journalRetainSegments, other.journalRetainSegments);
+        diff(keys, "server.journal.fsync", journalFsync, other.journalFsync);
+        diff(keys, "server.journal.fsync.interval", journalFsyncIntervalMillis, other.journalFsyncIntervalMillis);
+        diff(keys, "server.queue.capacity", queueCapacity, other.queueCapacity);
+        diff(keys, "server.queue.overflow", overflowPolicy, other.overflowPolicy);
+        diff(keys, "server.batch", batch, other.batch);
+        diff(keys, "server.batch.linger", batchLingerMillis, other.batchLingerMillis);
+        diff(keys, "server.batch.max", batchMax, other.batchMax);
+        diff(keys, "server.heartbeat.interval", heartbeatIntervalMillis, other.heartbeatIntervalMillis);
+        diff(keys, "server.heartbeat.timeout", heartbeatTimeoutMillis, other.heartbeatTimeoutMillis);
+        diff(keys, "server.compress", compress, other.compress);
+        diff(keys, "server.compress.level", compressLevel, other.compressLevel);
+        diff(keys, "server.compress.min", compressMinSize, other.compressMinSize);
+        diff(keys, "server.compress.dictionary", compressDictionary, other.compressDictionary);
+        diff(keys, "server.federation.port", federationPort, other.federationPort);
+        diff(keys, "server.federation.peers", federationPeers, other.federationPeers);
+        diff(keys, "server.federation.node", federationNode, other.federationNode);
+        diff(keys, "server.federation.truststore", federationTruststore, other.federationTruststore);
+        diff(keys, "server.metrics.jmx", metricsJmx, other.metricsJmx);
+        diff(keys, "server.metrics.http", metricsHttpPort, other.metricsHttpPort);
+        diff(keys, "server.payload.direct", directPayload, other.directPayload);
+        diff(keys, "server.reload", reload, other.reload);
+        return keys;
+    }
+
+    private static void diff(List<String> keys, String key, Object a, Object b) {
+        if (!Objects.equals(a, b)) keys.add(key);
+    }
+
+    /**
+     * Chép các khóa RELOADABLE từ 'other' sang cấu hình này (các khóa khác giữ nguyên tới lần khởi động lại)
+     */
+    public void copyReloadable(BroadcastConfig other) {
+        port = other.port;
+        keystorePath = other.keystorePath;
+        passwordSource = other.passwordSource;
+        handshakeTimeoutMillis = other.handshakeTimeoutMillis;
+        sessionCacheSize = other.sessionCacheSize;
+        sessionTimeoutSeconds = other.sessionTimeoutSeconds;
+        queueCapacity = other.queueCapacity;
+        overflowPolicy = other.overflowPolicy;
+        batch = other.batch;
+        batchLingerMillis = other.batchLingerMillis;
+        batchMax = other.batchMax;
+        heartbeatIntervalMillis = other.heartbeatIntervalMillis;
+        heartbeatTimeoutMillis = other.heartbeatTimeoutMillis;
+    }
+
+    /**
+     * File .properties cấu hình này được nạp từ, null nếu chỉ từ System property
+     */
+    public Path source() {
+        return source;
+    }
+
+    public boolean reload() {
+        return reload;
+    }
+
+    public BroadcastConfig reload(boolean reload) {
+        this.reload = reload;
+        return this;
+    }
+
+    private static String get(Properties props, String key) {
+        String v = props.getProperty(key);
+        return v != null ? v.trim() : System.getProperty(key);
+    }
+
+    private static List<String> parseList(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public BroadcastConfig port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public Path keystorePath() {
+        return keystorePath;
+    }
+
+    public BroadcastConfig keystorePath(Path keystorePath) {
+        this.keystorePath = keystorePath;
+        return this;
+    }
+
+    public PasswordSource passwordSource() {
+        return passwordSource;
+    }
+
+    public BroadcastConfig passwordSource(PasswordSource passwordSource) {
+        this.passwordSource = passwordSource;
+        return this;
+    }
+
+    public boolean nioMode() {
+        return nioMode;
+    }
+
+    public BroadcastConfig nioMode(boolean nioMode) {
+        this.nioMode = nioMode;
+        return this;
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public BroadcastConfig shards(int shards) {
+        this.shards = shards;
+        return this;
+    }
+
+    public int loops() {
+        return loops != null ? loops : shards;
+    }
+
+    public BroadcastConfig loops(int loops) {
+        this.loops = loops;
+        return this;
+    }
+
+    public ExecutionMode threadMode() {
+        return threadMode;
+    }
+
+    public BroadcastConfig threadMode(ExecutionMode threadMode) {
+        this.threadMode = threadMode;
+        return this;
+    }
+
+    public int maxThreads() {
+        return maxThreads;
+    }
+
+    public BroadcastConfig maxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    public long handshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    public BroadcastConfig handshakeTimeoutMillis(long handshakeTimeoutMillis) {
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        return this;
+    }
+
+    public int sessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public BroadcastConfig sessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+        return this;
+    }
+
+    public int sessionTimeoutSeconds() {
+        return sessionTimeoutSeconds;
+    }
+
+    public BroadcastConfig sessionTimeoutSeconds(int sessionTimeoutSeconds) {
+        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+        return this;
+    }
+
+    public int replayCapacity() {
+        return replayCapacity;
+    }
+
+    public BroadcastConfig replayCapacity(int replayCapacity) {
+        this.replayCapacity = replayCapacity;
+        return this;
+    }
+
+    public int lvcEntries() {
+        return lvcEntries;
+    }
+
+    public BroadcastConfig lvcEntries(int lvcEntries) {
+        this.lvcEntries = lvcEntries;
+        return this;
+    }
+
+    public long lvcBytes() {
+        return lvcBytes;
+    }
+
+    public BroadcastConfig lvcBytes(long lvcBytes) {
+        this.lvcBytes = lvcBytes;
+        return this;
+    }
+
+    public Path journalDir() {
+        return journalDir;
+    }
+
+    public BroadcastConfig journalDir(Path journalDir) {
+        this.journalDir = journalDir;
+        return this;
+    }
+
+    public int journalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public BroadcastConfig journalSegmentSize(int journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+        return this;
+    }
+
+    public int journalRetainSegments() {
+        return journalRetainSegments;
+    }
+
+    public BroadcastConfig journalRetainSegments(int journalRetainSegments) {
+        this.journalRetainSegments = journalRetainSegments;
+        return this;
+    }
+
+    public FsyncPolicy journalFsync() {
+        return journalFsync;
+    }
+
+    public BroadcastConfig journalFsync(FsyncPolicy journalFsync) {
+        this.journalFsync = journalFsync;
+        return this;
+    }
+
+    public long journalFsyncIntervalMillis() {
+        return journalFsyncIntervalMillis;
+    }
+
+    public BroadcastConfig journalFsyncIntervalMillis(long journalFsyncIntervalMillis) {
+        this.journalFsyncIntervalMillis = journalFsyncIntervalMillis;
+        return this;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    public BroadcastConfig queueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public BroadcastConfig overflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public boolean batch() {
+        return batch;
+    }
+
+    public BroadcastConfig batch(boolean batch) {
+        this.batch = batch;
+        return this;
+    }
+
+    public long batchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public BroadcastConfig batchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = batchLingerMillis;
+        return this;
+    }
+
+    public int batchMax() {
+        return batchMax;
+    }
+
+    public BroadcastConfig batchMax(int batchMax) {
+        this.batchMax = batchMax;
+        return this;
+    }
+
+    public long heartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    public BroadcastConfig heartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        return this;
+    }
+
+    public long heartbeatTimeoutMillis() {
+        return heartbeatTimeoutMillis;
+    }
+
+    public BroadcastConfig heartbeatTimeoutMillis(long heartbeatTimeoutMillis) {
+        this.heartbeatTimeoutMillis = heartbeatTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Heartbeat chỉ bật khi cả khoảng PING lẫn hạn im lặng đều dương
+     */
+    public boolean heartbeat() {
+        return heartbeatIntervalMillis > 0 && heartbeatTimeoutMillis > 0;
+    }
+
+    public boolean compress() {
+        return compress;
+    }
+
+    public BroadcastConfig compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    public int compressLevel() {
+        return compressLevel;
+    }
+
+    public BroadcastConfig compressLevel(int compressLevel) {
+        this.compressLevel = compressLevel;
+        return this;
+    }
+
+    public int compressMinSize() {
+        return compressMinSize;
+    }
+
+    public BroadcastConfig compressMinSize(int compressMinSize) {
+        this.compressMinSize = compressMinSize;
+        return this;
+    }
+
+    public Path compressDictionary() {
+        return compressDictionary;
+    }
+
+    public BroadcastConfig compressDictionary(Path compressDictionary) {
+        this.compressDictionary = compressDictionary;
+        return this;
+    }
+
+    public int federationPort() {
+        return federationPort;
+    }
+
+    public BroadcastConfig federationPort(int federationPort) {
+        this.federationPort = federationPort;
+        return this;
+    }
+
+    public List<String> federationPeers() {
+        return federationPeers;
+    }
+
+    public BroadcastConfig federationPeers(List<String> federationPeers) {
+        this.federationPeers = List.copyOf(federationPeers);
+        return this;
+    }
+
+    public String federationNode() {
+        return federationNode;
+    }
+
+    public BroadcastConfig federationNode(String federationNode) {
+        this.federationNode = federationNode;
+        return this;
+    }
+
+    public Path federationTruststore() {
+        return federationTruststore != null ? federationTruststore : keystorePath;
+    }
+
+    public BroadcastConfig federationTruststore(Path federationTruststore) {
+        this.federationTruststore = federationTruststore;
+        return this;
+    }
+
+    public boolean metricsJmx() {
+        return metricsJmx;
+    }
+
+    public BroadcastConfig metricsJmx(boolean metricsJmx) {
+        this.metricsJmx = metricsJmx;
+        return this;
+    }
+
+    public int metricsHttpPort() {
+        return metricsHttpPort;
+    }
+
+    public BroadcastConfig metricsHttpPort(int metricsHttpPort) {
+        this.metricsHttpPort = metricsHttpPort;
+        return this;
+    }
+
+    public boolean directPayload() {
+        return directPayload;
+    }
+
+    public BroadcastConfig directPayload(boolean directPayload) {
+        this.directPayload = directPayload;
+        return this;
+    }
+}
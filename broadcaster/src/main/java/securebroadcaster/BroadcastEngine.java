@@ -0,0 +1,559 @@
+package securebroadcaster;
+
+import javax.management.JMException;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * BroadcastEngine.java
+ * Bộ máy broadcast độc lập với GUI: nhận kết nối SSL và phát tin tới mọi client.
+ * Dùng được từ SecureServer (Swing), chạy headless trên máy chủ, hoặc gọi trực tiếp từ load test.
+ *
+ * Chạy headless:
+ *   java -Djava.awt.headless=true -cp classes BroadcastEngine [server.properties]
+ * Mỗi dòng nhập từ stdin được broadcast tới các client; dòng "@topic nội dung" phát vào một topic,
+ * "=khóa nội dung" (hoặc "@topic =khóa nội dung") phát một tin có khóa (giá trị mới nhất của khóa đó).
+ *
+ * Khi đang chạy (server.reload=true), keystore, file cấu hình và truststore được theo dõi (ConfigWatcher):
+ * keystore mới được nạp thành SSLContext mới cho các bắt tay kế tiếp, các khóa cấu hình trong
+ * BroadcastConfig.RELOADABLE được áp dụng ngay (trừ BroadcastConfig.NEW_CONNECTIONS_ONLY: chỉ kết nối mới);
+ * không kết nối nào bị đóng.
+ */
+public class BroadcastEngine {
+
+    /**
+     * Kết quả một lần publish: số thứ tự, số client nhận và kích thước
+     */
+    public record PublishResult(long seq, int fanOut, int bytes) {
+    }
+
+    private final BroadcastConfig config;
+    private final Consumer<String> log;
+
+    // Số thứ tự tăng dần gắn vào mỗi broadcast
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final ReentrantLock publishLock = new ReentrantLock();
+
+    // Các broadcast gần nhất cho client kết nối lại (giữ qua các lần stop/start cùng với nextSeq),
+    // cộng journal trên đĩa nếu được bật, cộng giá trị mới nhất của mỗi khóa (ảnh chụp cho client vào muộn)
+    private final BroadcastHistory history;
+
+    // Tạo một lần rồi dùng lại qua các lần stop/start: giữ bộ đệm phiên và khóa session ticket,
+    // nên client kết nối lại sau khi restart được nối lại phiên TLS.
+    // Chỉ thay khi nạp lại keystore; transport đọc lại ở mỗi lần bắt tay (phiên cũ khi đó cần bắt tay đầy đủ)
+    private volatile SSLContext sslContext;
+    private volatile SSLContext peerSslContext; // Liên kết peer: thêm truststore để xác thực lẫn nhau
+
+    // Bộ nén dùng chung cho mọi broadcast (null khi tắt nén); tạo một lần ở lần start đầu tiên
+    private volatile DeflateCodec compression;
+
+    private volatile BroadcastTransport transport;
+    private volatile HandshakeStage handshakes;
+    private volatile WriteStats writeStats;
+    private volatile BroadcastMetrics metrics;
+    private volatile Federation federation; // null khi không liên kết node khác
+
+    // MBean JMX và trang /metrics (đọc số liệu của lần chạy hiện tại)
+    private final BroadcastMonitor monitor = new BroadcastMonitor(this);
+    private MetricsEndpoint metricsEndpoint;
+    private ConfigWatcher watcher; // null khi không theo dõi (server.reload=false hoặc đã dừng)
+
+    public BroadcastEngine(BroadcastConfig config, Consumer<String> log) {
+        this.config = config;
+        this.log = log;
+        this.history = new BroadcastHistory(new ReplayRing(config.replayCapacity()),
+                new LastValueCache(config.lvcEntries(), config.lvcBytes()));
+    }
+
+    /**
+     * Tải KeyStore, tạo SSLContext và mở cổng. Ném lỗi nếu sai mật khẩu, thiếu file, trùng cổng...
+     */
+    public synchronized void start() throws IOException, GeneralSecurityException {
+        if (transport != null) return;
+        log.accept("Đang khởi động máy chủ...");
+
+        if (sslContext == null) {
+            sslContext = createSslContext(config.keystorePath(), null, config.passwordSource());
+            applySessionSettings(sslContext);
+        }
+        if (config.federationPort() > 0 && peerSslContext == null) {
+            peerSslContext = createSslContext(config.keystorePath(), config.federationTruststore(),
+                    config.passwordSource());
+        }
+        if (config.compress() && compression == null) {
+            compression = DeflateCodec.fromConfig(config);
+        }
+        openJournal();
+        HandshakeStage stage = new HandshakeStage(config);
+        BroadcastMetrics m = new BroadcastMetrics();
+        BroadcastTransport t = config.nioMode()
+                ? new NioBroadcastServer(() -> sslContext, config, stage, history, compression, m, log)
+                : new BlockingBroadcastServer(() -> sslContext, config, stage, history, compression, m, log);
+        Federation f = config.federationPort() > 0 ? new Federation(() -> peerSslContext, config, this, log) : null;
+        try {
+            t.start();
+            if (f != null) f.start();
+        } catch (IOException e) {
+            t.stop();
+            stage.shutdown();
+            closeJournal();
+            throw e;
+        }
+        handshakes = stage;
+        writeStats = t.writeStats();
+        metrics = m;
+        federation = f;
+        transport = t;
+        startMonitoring();
+        if (config.reload()) {
+            try {
+                watcher = ConfigWatcher.start(this, log);
+            } catch (IOException e) {
+                log.accept("Không theo dõi được keystore/cấu hình để nạp lại: " + e.getMessage());
+            }
+        }
+
+        if (config.nioMode()) {
+            log.accept("Máy chủ SSL (NIO, " + config.loops() + " event-loop) đã khởi động trên cổng: " + config.port());
+        } else {
+            log.accept("Máy chủ SSL (blocking, " + config.shards() + " shard fan-out) đã khởi động trên cổng: "
+                    + config.port());
+        }
+        DeflateCodec codec = compression;
+        if (codec != null) {
+            log.accept("Nén deflate: mức " + config.compressLevel() + ", tin từ " + config.compressMinSize() + " byte"
+                    + (codec.dictionaryId() != 0 ? ", từ điển " + codec.dictionaryId() : "") + ".");
+        }
+        if (f != null) {
+            log.accept("Liên kết peer (mTLS) trên cổng " + config.federationPort() + ", node " + f.nodeId()
+                    + (config.federationPeers().isEmpty() ? "" : ", peer: " + String.join(", ", config.federationPeers()))
+                    + ".");
+        }
+        if (config.batch()) {
+            log.accept("Gom nhóm ghi: tối đa " + config.batchMax() + " tin / bản ghi TLS, chờ tối đa "
+                    + config.batchLingerMillis() + " ms.");
+        }
+    }
+
+    /**
+     * Dừng máy chủ một cách an toàn (đóng cổng và mọi kết nối)
+     */
+    public synchronized void stop() {
+        BroadcastTransport t = transport;
+        if (t == null) return;
+        log.accept("Đang dừng máy chủ...");
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        Federation f = federation;
+        if (f != null) f.stop(); // Ngừng nhận tin từ peer trước khi đóng client
+        transport = null;
+        t.stop();
+        stopMonitoring();
+        log.accept(metrics.summary());
+        log.accept("Ghi socket: " + t.writeStats().summary());
+        if (f != null) log.accept(f.summary());
+        DeflateCodec codec = compression;
+        if (codec != null) {
+            log.accept(codec.summary());
+        }
+        HandshakeStage stage = handshakes;
+        if (stage != null) {
+            log.accept(stage.summary());
+            stage.shutdown();
+        }
+        closeJournal();
+        log.accept("Máy chủ đã dừng.");
+    }
+
+    /**
+     * Áp dụng các thay đổi khi máy chủ đang chạy ('changed': các file vừa đổi, trong watchedFiles()).
+     * File cấu hình đổi: nạp lại, áp dụng các khóa RELOADABLE (đổi cổng thì mở cổng mới trước khi đóng cổng cũ),
+     * báo các khóa cần khởi động lại. Keystore/truststore đổi (hoặc đổi đường dẫn): tạo SSLContext mới cho các
+     * bắt tay kế tiếp. Lỗi ở bước nào thì giữ nguyên trạng thái cũ của bước đó; kết nối đang có không bị đóng.
+     */
+    public synchronized void reload(Set<Path> changed) {
+        BroadcastTransport t = transport;
+        if (t == null) return;
+        Path keystore = config.keystorePath();
+        boolean reloadKeys = changed.contains(absolute(keystore))
+                || (config.federationTruststore() != null && changed.contains(absolute(config.federationTruststore())));
+
+        Path source = config.source();
+        if (source != null && changed.contains(absolute(source))) {
+            BroadcastConfig fresh = null;
+            try {
+                fresh = BroadcastConfig.load(source);
+            } catch (IOException | RuntimeException e) {
+                log.accept("Không đọc được cấu hình " + source + ": " + e.getMessage() + " (giữ cấu hình cũ)");
+            }
+            if (fresh != null) {
+                List<String> keys = config.changedKeys(fresh);
+                List<String> applied = keys.stream().filter(BroadcastConfig.RELOADABLE::contains)
+                        .filter(key -> !BroadcastConfig.NEW_CONNECTIONS_ONLY.contains(key)).toList();
+                List<String> forNew = keys.stream().filter(BroadcastConfig.NEW_CONNECTIONS_ONLY::contains).toList();
+                List<String> restart = keys.stream().filter(key -> !BroadcastConfig.RELOADABLE.contains(key)).toList();
+                int port = config.port();
+                config.copyReloadable(fresh);
+                if (config.port() != port) {
+                    try {
+                        t.rebind(config.port());
+                        log.accept("Đã chuyển sang cổng " + config.port() + ", " + t.clientCount()
+                                + " kết nối đang có giữ nguyên.");
+                    } catch (IOException e) {
+                        log.accept("Không mở được cổng " + config.port() + ": " + e.getMessage() + " (vẫn nghe trên cổng "
+                                + port + ")");
+                        config.port(port);
+                    }
+                }
+                applySessionSettings(sslContext);
+                if (!applied.isEmpty()) {
+                    log.accept("Đã áp dụng cấu hình mới: " + String.join(", ", applied));
+                }
+                if (!forNew.isEmpty()) {
+                    log.accept("Chỉ áp dụng cho kết nối mới: " + String.join(", ", forNew)
+                            + " (kết nối đang có giữ hàng đợi cũ)");
+                }
+                if (!restart.isEmpty()) {
+                    log.accept("Cần khởi động lại để áp dụng: " + String.join(", ", restart));
+                }
+                reloadKeys |= !config.keystorePath().equals(keystore);
+            }
+        }
+        if (reloadKeys) {
+            reloadSslContexts(t);
+        }
+    }
+
+    /**
+     * Tạo lại SSLContext (và SSLContext của liên kết peer) từ keystore hiện tại rồi mới thay;
+     * lỗi (keystore đang ghi dở, sai mật khẩu...) thì giữ chứng chỉ cũ
+     */
+    private void reloadSslContexts(BroadcastTransport t) {
+        try {
+            SSLContext fresh = createSslContext(config.keystorePath(), null, config.passwordSource());
+            applySessionSettings(fresh);
+            SSLContext peer = federation != null
+                    ? createSslContext(config.keystorePath(), config.federationTruststore(), config.passwordSource())
+                    : null;
+            sslContext = fresh;
+            if (peer != null) peerSslContext = peer;
+            log.accept("Đã nạp lại keystore " + config.keystorePath() + ": áp dụng cho các bắt tay mới, "
+                    + t.clientCount() + " kết nối đang có giữ nguyên.");
+        } catch (IOException | GeneralSecurityException e) {
+            log.accept("Không nạp lại được keystore " + config.keystorePath() + ": " + e.getMessage()
+                    + " (vẫn dùng chứng chỉ cũ)");
+        }
+    }
+
+    /**
+     * Các file ConfigWatcher theo dõi (đường dẫn tuyệt đối): keystore, file cấu hình và truststore của liên kết peer
+     */
+    Set<Path> watchedFiles() {
+        Set<Path> files = new HashSet<>();
+        files.add(absolute(config.keystorePath()));
+        if (config.source() != null) files.add(absolute(config.source()));
+        if (config.federationPort() > 0 && config.federationTruststore() != null) {
+            files.add(absolute(config.federationTruststore()));
+        }
+        return files;
+    }
+
+    private static Path absolute(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private void applySessionSettings(SSLContext context) {
+        SSLSessionContext sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(config.sessionCacheSize());
+        sessions.setSessionTimeout(config.sessionTimeoutSeconds());
+    }
+
+    /**
+     * Thống kê bắt tay TLS của lần chạy hiện tại (hoặc lần gần nhất), null nếu chưa từng chạy
+     */
+    public HandshakeStage handshakeStats() {
+        return handshakes;
+    }
+
+    /**
+     * Bộ đếm ghi socket của lần chạy hiện tại (hoặc lần gần nhất), null nếu chưa từng chạy
+     */
+    public WriteStats writeStats() {
+        return writeStats;
+    }
+
+    /**
+     * Bộ đếm đường broadcast (kết nối, ngắt, tin bị bỏ, độ trễ publish/fan-out) của lần chạy hiện tại
+     * (hoặc lần gần nhất), null nếu chưa từng chạy
+     */
+    public BroadcastMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Liên kết với các node khác của lần chạy hiện tại (hoặc lần gần nhất), null nếu không bật
+     */
+    public Federation federation() {
+        return federation;
+    }
+
+    /**
+     * Bề mặt số liệu (JMX và văn bản); đọc được cả khi máy chủ đã dừng
+     */
+    public BroadcastMonitor monitor() {
+        return monitor;
+    }
+
+    /**
+     * Gọi 'action' với độ sâu hàng đợi gửi của từng client đang kết nối
+     */
+    public void queueDepths(IntConsumer action) {
+        BroadcastTransport t = transport;
+        if (t != null) t.queueDepths(action);
+    }
+
+    /**
+     * Bộ nén dùng chung (thống kê số byte tiết kiệm và CPU nén), null nếu không bật nén
+     */
+    public DeflateCodec compression() {
+        return compression;
+    }
+
+    public BroadcastConfig config() {
+        return config;
+    }
+
+    public boolean isRunning() {
+        return transport != null;
+    }
+
+    public int clientCount() {
+        BroadcastTransport t = transport;
+        return t != null ? t.clientCount() : 0;
+    }
+
+    /**
+     * Phát một tin thuộc topic mặc định (tới mọi client chưa chọn topic hoặc đăng ký "#")
+     */
+    public PublishResult publish(String message) {
+        return publish("", message);
+    }
+
+    /**
+     * Phát một tin tới các client đăng ký 'topic'. Chỉ mã hóa một lần, xếp vào hàng đợi của từng client
+     * rồi trả về ngay. Trả về null nếu máy chủ chưa chạy; ném IllegalArgumentException nếu topic sai cú pháp.
+     */
+    public PublishResult publish(String topic, String message) {
+        return publish(topic, null, message, true);
+    }
+
+    /**
+     * Phát giá trị mới của 'key' trong 'topic': như publish(topic, message), cộng thêm ghi vào bộ nhớ đệm
+     * giá trị mới nhất (ảnh chụp cho client vào muộn) và cho phép hàng đợi của client chậm thay tin chưa gửi
+     * cùng khóa bằng tin này. Ném IllegalArgumentException nếu topic hoặc khóa sai.
+     */
+    public PublishResult publishKeyed(String topic, String key, String message) {
+        FrameCodec.validateKey(key);
+        return publish(topic, key, message, true);
+    }
+
+    /**
+     * Phát tới client cục bộ một tin nhận từ node peer (Federation); không chuyển tiếp tới các peer khác.
+     * 'key' là null nếu tin không có khóa
+     */
+    PublishResult publishFromPeer(String topic, String key, String message) {
+        if (key != null) FrameCodec.validateKey(key);
+        return publish(topic, key, message, false);
+    }
+
+    private PublishResult publish(String topic, String key, String message, boolean relay) {
+        TopicRegistry.validateTopic(topic);
+        BroadcastTransport t = transport;
+        if (t == null) return null;
+        long start = System.nanoTime();
+
+        // Mã hóa tin ĐÚNG MỘT LẦN; mọi client dùng chung cùng một payload.
+        // Gán seq, ghi vào lịch sử và giao cho các shard trong cùng một khóa: journal cần seq tăng liên tiếp,
+        // và mỗi shard (một luồng, hàng đợi FIFO) nhận tin theo đúng thứ tự seq, nên hàng đợi của từng client
+        // cũng vậy (hai publisher đồng thời không thể xếp seq N+1 trước seq N). Giao cho shard chỉ là xếp
+        // một tác vụ, không chờ client nào. Ghi vào lịch sử TRƯỚC khi phát, để client đang RESUME không bị lỡ.
+        BroadcastPayload payload;
+        int fanOut;
+        publishLock.lock();
+        try {
+            payload = BroadcastPayload.message(topic, key, message, nextSeq.incrementAndGet(),
+                    config.directPayload(), compression);
+            appendToHistory(payload);
+            // Chuyển tới các peer trong cùng khóa: peer nhận tin theo đúng thứ tự seq (cần cho chống trùng)
+            Federation f = federation;
+            if (relay && f != null) f.relay(payload);
+            fanOut = t.broadcast(payload);
+        } finally {
+            publishLock.unlock();
+        }
+        history.awaitDurable(); // FsyncPolicy.SYNC: chờ tin xuống đĩa (ép gom nhóm với publisher khác)
+        metrics.published(System.nanoTime() - start);
+
+        return new PublishResult(payload.seq(), fanOut, payload.length(WireFormat.LINE));
+    }
+
+    /**
+     * Đăng ký MBean và mở trang /metrics theo cấu hình. Lỗi ở đây chỉ được ghi log, không chặn máy chủ.
+     */
+    private void startMonitoring() {
+        if (config.metricsJmx()) {
+            try {
+                monitor.register();
+            } catch (JMException e) {
+                log.accept("Không đăng ký được MBean JMX: " + e.getMessage());
+            }
+        }
+        if (config.metricsHttpPort() > 0) {
+            try {
+                metricsEndpoint = MetricsEndpoint.start(config.metricsHttpPort(), monitor);
+                log.accept("Số liệu: http://127.0.0.1:" + config.metricsHttpPort() + "/metrics");
+            } catch (IOException e) {
+                log.accept("Không mở được trang số liệu: " + e.getMessage());
+            }
+        }
+    }
+
+    private void stopMonitoring() {
+        monitor.unregister();
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+            metricsEndpoint = null;
+        }
+    }
+
+    private void appendToHistory(BroadcastPayload payload) {
+        try {
+            history.append(payload);
+        } catch (IOException e) {
+            log.accept("Lỗi ghi journal: " + e.getMessage()); // Vẫn phát tin, chỉ mất bản lưu trên đĩa
+        }
+    }
+
+    /**
+     * Mở journal (nếu được cấu hình) và tiếp tục đánh số từ tin cuối cùng đã lưu
+     */
+    private void openJournal() throws IOException {
+        if (config.journalDir() == null || history.journal() != null) return;
+        BroadcastJournal journal = BroadcastJournal.open(config.journalDir(), config.journalSegmentSize(),
+                config.journalRetainSegments(), config.journalFsync(), config.journalFsyncIntervalMillis());
+        nextSeq.accumulateAndGet(journal.lastSeq(), Math::max);
+        history.attach(journal);
+        if (journal.lastSeq() > 0) {
+            log.accept("Journal " + config.journalDir() + ": khôi phục tin #" + journal.firstSeq()
+                    + " - #" + journal.lastSeq());
+        }
+    }
+
+    private void closeJournal() {
+        BroadcastJournal journal = history.detach();
+        if (journal != null) journal.close();
+    }
+
+    public BroadcastHistory history() {
+        return history;
+    }
+
+    /**
+     * Giá trị mới nhất của mỗi khóa (số khóa, số byte, số lần loại, số ảnh chụp đã gửi)
+     */
+    public LastValueCache lastValues() {
+        return history.lastValues();
+    }
+
+    /**
+     * Tạo SSLContext phía server từ KeyStore JKS; nếu có 'truststorePath' thì chỉ tin cậy các chứng chỉ trong đó
+     * (liên kết peer xác thực lẫn nhau). Mật khẩu được xóa khỏi bộ nhớ ngay sau khi dùng.
+     */
+    static SSLContext createSslContext(Path keystorePath, Path truststorePath, PasswordSource passwordSource)
+            throws IOException, GeneralSecurityException {
+        char[] password = passwordSource.password();
+        try (InputStream in = Files.newInputStream(keystorePath)) {
+            // 1. Tải KeyStore
+            KeyStore ks = KeyStore.getInstance("JKS");
+            ks.load(in, password);
+
+            // 2. Tạo KeyManagerFactory (dùng chung 1 mật khẩu cho store và key)
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(ks, password);
+
+            // 3. TrustManager cho liên kết peer (cùng mật khẩu)
+            TrustManagerFactory tmf = null;
+            if (truststorePath != null) {
+                KeyStore ts = KeyStore.getInstance("JKS");
+                try (InputStream tin = Files.newInputStream(truststorePath)) {
+                    ts.load(tin, password);
+                }
+                tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(ts);
+            }
+
+            // 4. Tạo SSLContext
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(kmf.getKeyManagers(), tmf != null ? tmf.getTrustManagers() : null, null);
+            return sslContext;
+        } finally {
+            // [BẢO MẬT] Xóa mật khẩu khỏi bộ nhớ ngay sau khi dùng xong
+            Arrays.fill(password, ' ');
+        }
+    }
+
+    // --- Chạy headless: cấu hình từ file/System property, tin nhắn từ stdin ---
+    public static void main(String[] args) throws Exception {
+        BroadcastConfig config = args.length > 0
+                ? BroadcastConfig.load(Path.of(args[0]))
+                : BroadcastConfig.fromSystemProperties();
+
+        BroadcastEngine engine = new BroadcastEngine(config, System.out::println);
+        engine.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(engine::stop, "engine-shutdown"));
+
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = stdin.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            String topic = "";
+            if (line.startsWith("@") && line.indexOf(' ') > 1) {
+                topic = line.substring(1, line.indexOf(' '));
+                line = line.substring(line.indexOf(' ') + 1);
+            }
+            String key = null;
+            if (line.startsWith("=") && line.indexOf(' ') > 1) {
+                key = line.substring(1, line.indexOf(' '));
+                line = line.substring(line.indexOf(' ') + 1);
+            }
+            try {
+                PublishResult result = key != null ? engine.publishKeyed(topic, key, line) : engine.publish(topic, line);
+                System.out.println("BROADCAST #" + result.seq() + " -> " + result.fanOut() + " client");
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        // Hết stdin (ví dụ chạy nền với </dev/null): tiếp tục phục vụ tới khi tiến trình bị dừng
+        Thread.currentThread().join();
+    }
+}
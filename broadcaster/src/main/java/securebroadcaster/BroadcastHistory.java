@@ -0,0 +1,117 @@
+package securebroadcaster;
+
+import java.io.IOException;
+
+/**
+ * BroadcastHistory.java
+ * Lịch sử broadcast mà kết nối có thể xin phát lại: ReplayRing trong bộ nhớ cho các tin gần nhất,
+ * cộng BroadcastJournal trên đĩa (tùy chọn) cho các tin cũ hơn và sau khi server khởi động lại,
+ * và LastValueCache cho ảnh chụp giá trị mới nhất của các tin có khóa.
+ */
+public final class BroadcastHistory {
+
+    private final ReplayRing ring;
+    private final LastValueCache lastValues;
+    private volatile BroadcastJournal journal; // null khi không bật journal
+
+    public BroadcastHistory(ReplayRing ring) {
+        this(ring, new LastValueCache(0, 0));
+    }
+
+    public BroadcastHistory(ReplayRing ring, LastValueCache lastValues) {
+        this.ring = ring;
+        this.lastValues = lastValues;
+    }
+
+    void attach(BroadcastJournal journal) {
+        this.journal = journal;
+    }
+
+    BroadcastJournal detach() {
+        BroadcastJournal j = journal;
+        journal = null;
+        return j;
+    }
+
+    public ReplayRing ring() {
+        return ring;
+    }
+
+    public BroadcastJournal journal() {
+        return journal;
+    }
+
+    public LastValueCache lastValues() {
+        return lastValues;
+    }
+
+    /**
+     * Ghi một tin vào vòng phát lại, vào LastValueCache (nếu có khóa) và (nếu bật) vào journal
+     */
+    void append(BroadcastPayload payload) throws IOException {
+        ring.append(payload);
+        lastValues.put(payload);
+        BroadcastJournal j = journal;
+        if (j != null) j.append(payload);
+    }
+
+    /**
+     * Với FsyncPolicy.SYNC: chờ tới khi các tin đã ghi xuống đĩa. Gọi ngoài khóa publish.
+     */
+    void awaitDurable() {
+        BroadcastJournal j = journal;
+        if (j != null) j.awaitDurable();
+    }
+
+    public long latestSeq() {
+        BroadcastJournal j = journal;
+        return j != null ? Math.max(ring.latestSeq(), j.lastSeq()) : ring.latestSeq();
+    }
+
+    /**
+     * seq nhỏ nhất còn phát lại được (từ journal nếu có, không thì từ vòng)
+     */
+    public long oldestSeq() {
+        BroadcastJournal j = journal;
+        return j != null ? Math.min(ring.oldestSeq(), j.firstSeq()) : ring.oldestSeq();
+    }
+
+    /**
+     * Dịch dòng điều khiển của client (RESUME / HISTORY SEQ / HISTORY TIME / SNAPSHOT) thành mốc phát lại
+     * để đặt vào hàng đợi gửi; null nếu dòng không phải yêu cầu phát lại
+     */
+    public BroadcastPayload replayRequest(String line) {
+        if (FrameCodec.SNAPSHOT.equals(line)) return BroadcastPayload.snapshot(null);
+        String pattern = FrameCodec.parseArgument(line, FrameCodec.SNAPSHOT);
+        if (pattern != null) {
+            try {
+                TopicRegistry.validatePattern(pattern);
+            } catch (IllegalArgumentException e) {
+                return null; // Mẫu sai cú pháp: bỏ qua như mọi dòng không hiểu được
+            }
+            return BroadcastPayload.snapshot(pattern);
+        }
+        long value = FrameCodec.parseResume(line);
+        if (value >= 0) return BroadcastPayload.resume(value);
+        value = FrameCodec.parseCommand(line, FrameCodec.HISTORY_SEQ);
+        if (value >= 0) return BroadcastPayload.resume(Math.max(0, value - 1));
+        value = FrameCodec.parseCommand(line, FrameCodec.HISTORY_TIME);
+        if (value >= 0) return BroadcastPayload.resume(seqAt(value) - 1);
+        return null;
+    }
+
+    /**
+     * seq của tin đầu tiên phát lúc hoặc sau 'timestamp'; latestSeq() + 1 nếu không có
+     */
+    public long seqAt(long timestamp) {
+        BroadcastJournal j = journal;
+        if (j != null && j.lastSeq() > 0) return j.seqAt(timestamp);
+        // Không có journal: dò tuyến tính trong vòng (tối đa ring.capacity() tin)
+        long latest = ring.latestSeq();
+        for (long seq = ring.oldestSeq(); seq <= latest; seq++) {
+            BroadcastPayload payload = ring.get(seq);
+            if (payload != null && payload.timestamp() >= timestamp) return seq;
+        }
+        return latest + 1;
+    }
+}
@@ -0,0 +1,498 @@
+package securebroadcaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BroadcastJournal.java
+ * Nhật ký broadcast bền vững: các file segment chỉ-ghi-thêm, ánh xạ bộ nhớ (mmap).
+ * Mỗi tin được lưu đúng bằng khung nhị phân của FrameCodec, nên khi phát lại chỉ cần cắt
+ * một lát (slice) của vùng đã ánh xạ rồi gửi thẳng đi, không giải mã hay chép sang heap.
+ *
+ *   <seq đầu>.log   các khung nối tiếp nhau; trường length = 0 đánh dấu chỗ kết thúc
+ *   <seq đầu>.idx   chỉ mục thưa: cứ mỗi INDEX_INTERVAL byte một mục (seq, timestamp, vị trí)
+ *
+ * Khi mở lại, chỉ phần đuôi của segment cuối (sau mục chỉ mục cuối) cần được quét.
+ */
+public final class BroadcastJournal implements AutoCloseable {
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_INTERVAL = 4096;
+    private static final int INDEX_ENTRY_SIZE = 24; // long seq, long timestamp, long position
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int retainSegments;
+    private final FsyncPolicy fsync;
+
+    // Chỉ luồng đang giữ 'appendLock' được ghi; danh sách segment thay bằng mảng mới (copy-on-write)
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile Segment[] segments;
+    private volatile long lastSeq; // seq lớn nhất đã ghi trọn vẹn (người đọc không vượt quá)
+    private final ScheduledExecutorService flusher;
+
+    private BroadcastJournal(Path dir, int segmentSize, int retainSegments, FsyncPolicy fsync, long flushIntervalMillis) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.retainSegments = Math.max(1, retainSegments);
+        this.fsync = fsync;
+        if (fsync == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("journal-flush").daemon().factory());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Mở (hoặc tạo) journal trong thư mục 'dir' và khôi phục vị trí ghi từ các segment có sẵn
+     */
+    public static BroadcastJournal open(Path dir, int segmentSize, int retainSegments, FsyncPolicy fsync,
+                                        long flushIntervalMillis) throws IOException {
+        Files.createDirectories(dir);
+        BroadcastJournal journal = new BroadcastJournal(dir, segmentSize, retainSegments, fsync, flushIntervalMillis);
+        try {
+            journal.recover();
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Không phải segment của journal: bỏ qua
+                }
+            }
+        }
+        bases.sort(null);
+
+        List<Segment> loaded = new ArrayList<>();
+        for (long base : bases) {
+            Segment segment = Segment.map(dir, base, 0);
+            if (segment.indexCount == 0) {
+                continue; // Segment rỗng (vừa tạo thì dừng): bỏ qua, sẽ được dùng lại khi cần
+            }
+            loaded.add(segment);
+        }
+        segments = loaded.toArray(new Segment[0]);
+        if (loaded.isEmpty()) {
+            lastSeq = 0;
+            return;
+        }
+        // Chỉ segment cuối cần quét phần đuôi; các segment trước đã đầy và bất biến
+        Segment last = loaded.get(loaded.size() - 1);
+        lastSeq = last.recoverTail();
+    }
+
+    public long firstSeq() {
+        Segment[] s = segments;
+        return s.length == 0 ? lastSeq + 1 : s[0].baseSeq;
+    }
+
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Ghi thêm một tin (seq phải tăng liên tiếp). Chưa ép xuống đĩa: xem awaitDurable().
+     */
+    public void append(BroadcastPayload payload) throws IOException {
+        int length = payload.length(WireFormat.BINARY);
+        appendLock.lock();
+        try {
+            Segment active = active();
+            if (active == null || !active.fits(length)) {
+                active = roll(payload.seq(), length);
+            }
+            active.append(payload, length);
+            lastSeq = payload.seq();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Với FsyncPolicy.SYNC: ép mọi tin đã ghi xuống đĩa rồi mới trả về. Các chính sách khác không chờ.
+     */
+    public void awaitDurable() {
+        if (fsync == FsyncPolicy.SYNC) {
+            flush();
+        }
+    }
+
+    /**
+     * Ép phần đã ghi của segment đang hoạt động xuống đĩa. Gom nhóm: ai tới sau một lần ép
+     * đã bao trùm dữ liệu của mình thì không phải ép lại.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Segment active = active();
+            if (active != null) active.force();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Segment vừa bị đóng khi dừng: lần ép sau sẽ bỏ qua
+        }
+    }
+
+    private Segment active() {
+        Segment[] s = segments;
+        return s.length == 0 ? null : s[s.length - 1];
+    }
+
+    /**
+     * Mở segment mới bắt đầu từ 'baseSeq' và xóa bớt các segment cũ quá 'retainSegments'
+     */
+    private Segment roll(long baseSeq, int frameLength) throws IOException {
+        Segment previous = active();
+        if (previous != null && fsync != FsyncPolicy.NONE) {
+            flushLock.lock();
+            try {
+                previous.force(); // Segment cũ phải xuống đĩa trọn vẹn trước khi chuyển
+            } finally {
+                flushLock.unlock();
+            }
+        }
+        Segment next = Segment.map(dir, baseSeq, Math.max(segmentSize, frameLength + FrameCodec.LENGTH_SIZE));
+        Segment[] current = segments;
+        int keep = Math.min(current.length, retainSegments - 1);
+        Segment[] updated = Arrays.copyOfRange(current, current.length - keep, current.length + 1);
+        updated[keep] = next;
+        segments = updated;
+        for (int i = 0; i < current.length - keep; i++) {
+            current[i].delete(); // Người đọc đang dở vẫn đọc được vùng đã ánh xạ
+        }
+        return next;
+    }
+
+    /**
+     * Người đọc bắt đầu từ tin đầu tiên có seq >= 'fromSeq' (hoặc tin cũ nhất còn giữ)
+     */
+    public Reader reader(long fromSeq) {
+        Segment[] s = segments;
+        Reader reader = new Reader();
+        if (s.length == 0) {
+            reader.nextSeq = lastSeq + 1;
+            return reader;
+        }
+        int i = findSegment(s, fromSeq);
+        Segment segment = s[i];
+        reader.segment = segment;
+        reader.position = segment.positionOf(Math.max(fromSeq, segment.baseSeq));
+        reader.nextSeq = Math.max(fromSeq, segment.baseSeq);
+        return reader;
+    }
+
+    /**
+     * seq của tin đầu tiên phát lúc hoặc sau 'timestamp' (epoch millis); lastSeq() + 1 nếu không có
+     */
+    public long seqAt(long timestamp) {
+        Segment[] s = segments;
+        if (s.length == 0) return lastSeq + 1;
+        // Segment cuối cùng bắt đầu trước 'timestamp': các tin cùng mốc có thể đã bắt đầu từ segment trước
+        int lo = 0;
+        int hi = s.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (s[mid].firstTimestamp() < timestamp) lo = mid; else hi = mid - 1;
+        }
+        for (int i = lo; i < s.length; i++) {
+            long seq = s[i].seqAt(timestamp, lastSeq);
+            if (seq > 0) return seq;
+        }
+        return lastSeq + 1;
+    }
+
+    private static int findSegment(Segment[] s, long seq) {
+        int lo = 0;
+        int hi = s.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (s[mid].baseSeq <= seq) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Dừng luồng ép đĩa và ép lần cuối. Vùng ánh xạ được giải phóng khi GC thu hồi.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) flusher.shutdownNow();
+        appendLock.lock();
+        try {
+            Segment[] s = segments;
+            if (s != null && s.length > 0 && fsync != FsyncPolicy.NONE) {
+                flush();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // --- Người đọc: duyệt tuần tự các khung, mỗi tin là một lát của vùng đã ánh xạ ---
+    public final class Reader {
+        private Segment segment;
+        private int position;
+        private long nextSeq;
+
+        public long nextSeq() {
+            return nextSeq;
+        }
+
+        /**
+         * Tin kế tiếp (tham chiếu thẳng vào segment, không chép), hoặc null nếu đã tới cuối journal
+         */
+        public BroadcastPayload next() {
+            if (nextSeq > lastSeq || segment == null) return null;
+            int size = segment.frameSize(position);
+            if (size == 0) {
+                // Hết segment này: chuyển sang segment bắt đầu từ nextSeq
+                Segment[] s = segments;
+                int i = findSegment(s, nextSeq);
+                if (s[i] == segment || s[i].baseSeq > nextSeq) return null;
+                segment = s[i];
+                position = 0;
+                size = segment.frameSize(0);
+                if (size == 0) return null;
+            }
+            ByteBuffer log = segment.log;
+            long seq = log.getLong(position + 6);
+            long timestamp = log.getLong(position + 14);
+            BroadcastPayload payload = BroadcastPayload.framed(log.slice(position, size), seq, timestamp);
+            position += size;
+            nextSeq = seq + 1;
+            return payload;
+        }
+    }
+
+    // --- Một segment: file log và file chỉ mục, cả hai đều ánh xạ bộ nhớ ---
+    private static final class Segment {
+        final long baseSeq;
+        final Path logPath;
+        final Path indexPath;
+        final MappedByteBuffer log;
+        final MappedByteBuffer index;
+
+        // Chỉ luồng ghi thay đổi; 'writePos' volatile để luồng ép đĩa đọc được
+        volatile int writePos = 0;
+        int indexCount = 0;
+        int lastIndexedPos = -INDEX_INTERVAL;
+        int flushedPos = 0;
+
+        private Segment(long baseSeq, Path logPath, Path indexPath, MappedByteBuffer log, MappedByteBuffer index) {
+            this.baseSeq = baseSeq;
+            this.logPath = logPath;
+            this.indexPath = indexPath;
+            this.log = log;
+            this.index = index;
+        }
+
+        /**
+         * Ánh xạ segment 'baseSeq'. size = 0: mở segment có sẵn với kích thước hiện tại.
+         */
+        static Segment map(Path dir, long baseSeq, int size) throws IOException {
+            String name = String.format("%020d", baseSeq);
+            Path logPath = dir.resolve(name + LOG_SUFFIX);
+            Path indexPath = dir.resolve(name + INDEX_SUFFIX);
+            try (FileChannel logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileChannel indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                int logSize = size > 0 ? size : (int) logChannel.size();
+                int indexSize = (logSize / INDEX_INTERVAL + 2) * INDEX_ENTRY_SIZE;
+                // Mapping vẫn hợp lệ sau khi đóng channel
+                MappedByteBuffer log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, logSize);
+                MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+                Segment segment = new Segment(baseSeq, logPath, indexPath, log, index);
+                segment.loadIndex();
+                return segment;
+            }
+        }
+
+        /**
+         * Đếm các mục chỉ mục hợp lệ: mục trỏ tới khung không khớp seq (chỉ mục xuống đĩa trước log) bị bỏ
+         */
+        private void loadIndex() {
+            int count = 0;
+            while ((count + 1) * INDEX_ENTRY_SIZE <= index.capacity() && index.getLong(count * INDEX_ENTRY_SIZE) != 0) {
+                count++;
+            }
+            while (count > 0) {
+                int at = (count - 1) * INDEX_ENTRY_SIZE;
+                long seq = index.getLong(at);
+                long pos = index.getLong(at + 16);
+                if (pos + FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE <= log.capacity()
+                        && log.getInt((int) pos) >= FrameCodec.HEADER_SIZE && log.getLong((int) pos + 6) == seq) {
+                    break;
+                }
+                index.putLong(at, 0);
+                count--;
+            }
+            indexCount = count;
+            if (count > 0) {
+                lastIndexedPos = (int) index.getLong((count - 1) * INDEX_ENTRY_SIZE + 16);
+            }
+        }
+
+        /**
+         * Quét từ mục chỉ mục cuối tới hết các khung hợp lệ; trả về seq cuối cùng
+         */
+        long recoverTail() {
+            int at = (indexCount - 1) * INDEX_ENTRY_SIZE;
+            long expected = index.getLong(at);
+            int pos = (int) index.getLong(at + 16);
+            long last = expected - 1;
+            int size;
+            // Dừng khi hết dữ liệu, hoặc gặp khung ghi dở khi tiến trình bị dừng đột ngột
+            while ((size = frameSize(pos)) > 0 && log.getLong(pos + 6) == expected) {
+                last = expected++;
+                pos += size;
+            }
+            writePos = pos;
+            flushedPos = pos;
+            return last;
+        }
+
+        /**
+         * Kích thước (gồm trường length) của khung hợp lệ tại 'pos', 0 nếu tới đó đã hết dữ liệu
+         */
+        int frameSize(int pos) {
+            if (pos + FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE > log.capacity()) return 0;
+            int length = log.getInt(pos);
+            if (length < FrameCodec.HEADER_SIZE || pos + FrameCodec.LENGTH_SIZE + length > log.capacity()) return 0;
+            return FrameCodec.LENGTH_SIZE + length;
+        }
+
+        boolean fits(int length) {
+            return writePos + length <= log.capacity();
+        }
+
+        /**
+         * Ghi thân khung trước, trường length sau cùng: khung chỉ "tồn tại" khi đã ghi trọn vẹn
+         */
+        void append(BroadcastPayload payload, int length) {
+            int pos = writePos;
+            int body = length - FrameCodec.LENGTH_SIZE;
+            payload.copyTo(WireFormat.BINARY, log.slice(pos + FrameCodec.LENGTH_SIZE, body), FrameCodec.LENGTH_SIZE);
+            int end = pos + length;
+            if (end + FrameCodec.LENGTH_SIZE <= log.capacity()) {
+                log.putInt(end, 0); // Xóa rác (nếu có) để lần khôi phục sau dừng đúng chỗ
+            }
+            log.putInt(pos, body);
+
+            if (pos - lastIndexedPos >= INDEX_INTERVAL
+                    && (indexCount + 1) * INDEX_ENTRY_SIZE <= index.capacity()) {
+                int at = indexCount * INDEX_ENTRY_SIZE;
+                index.putLong(at + 8, payload.timestamp());
+                index.putLong(at + 16, pos);
+                index.putLong(at, payload.seq()); // seq khác 0 đánh dấu mục đã dùng: ghi sau cùng
+                indexCount++;
+                lastIndexedPos = pos;
+            }
+            writePos = end;
+        }
+
+        void force() {
+            int end = writePos;
+            if (end > flushedPos) {
+                log.force(flushedPos, end - flushedPos);
+                index.force();
+                flushedPos = end;
+            }
+        }
+
+        long firstTimestamp() {
+            return index.getLong(8);
+        }
+
+        /**
+         * Vị trí khung đầu tiên có seq >= 'seq' (tra chỉ mục thưa rồi quét tiếp), hoặc cuối dữ liệu nếu chưa có
+         */
+        int positionOf(long seq) {
+            int entry = lastEntry(seq, 0);
+            int pos = entry < 0 ? 0 : (int) index.getLong(entry * INDEX_ENTRY_SIZE + 16);
+            int size;
+            while ((size = frameSize(pos)) > 0 && log.getLong(pos + 6) < seq) {
+                pos += size;
+            }
+            return pos;
+        }
+
+        /**
+         * seq của khung đầu tiên có timestamp >= 'timestamp' trong segment này, 0 nếu không có
+         */
+        long seqAt(long timestamp, long lastSeq) {
+            int entry = lastEntry(timestamp - 1, 8); // Mục cuối có timestamp < mốc: không bỏ sót tin cùng mốc
+            int pos = entry < 0 ? 0 : (int) index.getLong(entry * INDEX_ENTRY_SIZE + 16);
+            int size;
+            while ((size = frameSize(pos)) > 0) {
+                long seq = log.getLong(pos + 6);
+                if (seq > lastSeq) return 0;
+                if (log.getLong(pos + 14) >= timestamp) return seq;
+                pos += size;
+            }
+            return 0;
+        }
+
+        /**
+         * Tìm nhị phân mục chỉ mục cuối có trường (tại 'field') <= 'key'; -1 nếu không có
+         */
+        private int lastEntry(long key, int field) {
+            int lo = 0;
+            int hi = indexCount - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (index.getLong(mid * INDEX_ENTRY_SIZE + field) <= key) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(logPath);
+                Files.deleteIfExists(indexPath);
+            } catch (IOException e) {
+                // Trên Windows file đang ánh xạ không xóa được: lần khởi động sau sẽ còn thừa segment cũ
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package securebroadcaster;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BroadcastMetrics.java
+ * Bộ đếm của đường broadcast trong một lần chạy: kết nối được nhận/từ chối, ngắt kết nối, tin bị bỏ vì
+ * hàng đợi đầy hoặc bị gộp theo khóa, và hai histogram độ trễ (publish trên luồng gọi, fan-out tới lúc shard cuối xếp xong tin).
+ * Ghi nhận chỉ là một phép cộng LongAdder hoặc một ô AtomicLongArray, không cấp phát, không khóa,
+ * nên để bật thường trực được. Các số liệu tính được lúc đọc (số client, độ sâu hàng đợi, số byte ra)
+ * không nằm ở đây mà được BroadcastMonitor lấy thẳng từ transport.
+ */
+public final class BroadcastMetrics {
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder slowDisconnects = new LongAdder();
+    private final LongAdder idleDisconnects = new LongAdder();
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder conflatedMessages = new LongAdder();
+    private final LongAdder publishes = new LongAdder();
+
+    // Nano giây: publish() từ lúc nhận tin tới khi đã giao cho mọi shard (gồm mã hóa, ghi lịch sử);
+    // fan-out từ lúc giao tới khi một shard xếp xong tin vào hàng đợi của mọi kết nối khớp
+    // (FanOutShards ghi thẳng vào, mỗi shard một mẫu)
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private final LatencyHistogram fanOutLatency = new LatencyHistogram();
+
+    // Tốc độ accept: tính lại lúc đọc, nhiều nhất mỗi giây một lần
+    private long rateSampleCount = 0;
+    private long rateSampleNanos = System.nanoTime();
+    private double acceptRate = 0;
+
+    /**
+     * Đã nhận một kết nối TCP (trước bắt tay TLS)
+     */
+    public void accepted() {
+        accepted.increment();
+    }
+
+    /**
+     * Đã từ chối một kết nối vì hết luồng (chế độ POOLED)
+     */
+    public void rejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Một client đã bắt tay xong rời đi; 'slow' = bị ngắt vì hàng đợi đầy (OverflowPolicy.DISCONNECT)
+     */
+    public void disconnected(boolean slow) {
+        disconnects.increment();
+        if (slow) slowDisconnects.increment();
+    }
+
+    /**
+     * Một client bị ngắt vì im lặng quá server.heartbeat.timeout (gọi trước disconnected)
+     */
+    public void idleDisconnected() {
+        idleDisconnects.increment();
+    }
+
+    /**
+     * Đã xếp một PING heartbeat cho một client
+     */
+    public void pinged() {
+        pings.increment();
+    }
+
+    /**
+     * Ghi nhận kết quả xếp một tin vào hàng đợi của một client (chỉ đếm khi có tin bị bỏ/loại/gộp)
+     */
+    public void enqueued(OutboundQueue.Result result) {
+        if (result == OutboundQueue.Result.DROPPED_NEWEST || result == OutboundQueue.Result.DROPPED_OLDEST) {
+            droppedMessages.increment();
+        } else if (result == OutboundQueue.Result.CONFLATED) {
+            conflatedMessages.increment();
+        }
+    }
+
+    public void published(long nanos) {
+        publishes.increment();
+        publishLatency.record(nanos);
+    }
+
+    public long acceptedCount() {
+        return accepted.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long disconnectCount() {
+        return disconnects.sum();
+    }
+
+    public long slowDisconnectCount() {
+        return slowDisconnects.sum();
+    }
+
+    public long idleDisconnectCount() {
+        return idleDisconnects.sum();
+    }
+
+    public long pingCount() {
+        return pings.sum();
+    }
+
+    /**
+     * Số tin bị bỏ (DROP_NEWEST) hoặc bị loại khỏi hàng đợi (DROP_OLDEST), cộng dồn qua mọi client
+     */
+    public long droppedMessageCount() {
+        return droppedMessages.sum();
+    }
+
+    /**
+     * Số tin chưa gửi đã bị thay bằng tin mới hơn cùng khóa, cộng dồn qua mọi client
+     */
+    public long conflatedMessageCount() {
+        return conflatedMessages.sum();
+    }
+
+    public long publishCount() {
+        return publishes.sum();
+    }
+
+    public LatencyHistogram publishLatency() {
+        return publishLatency;
+    }
+
+    public LatencyHistogram fanOutLatency() {
+        return fanOutLatency;
+    }
+
+    /**
+     * Mô tả ngắn để ghi log, ví dụ
+     * "Broadcast: 1200 tin, publish p50=12µs p99=80µs, fan-out p50=40µs p99=900µs; bỏ 0 tin, gộp 5 tin, 3 lần ngắt
+     * (0 vì chậm, 1 vì im lặng)"
+     */
+    public String summary() {
+        return "Broadcast: " + publishCount() + " tin, publish p50=" + publishLatency.percentile(50) / 1000
+                + "µs p99=" + publishLatency.percentile(99) / 1000 + "µs, fan-out p50=" + fanOutLatency.percentile(50) / 1000
+                + "µs p99=" + fanOutLatency.percentile(99) / 1000 + "µs; bỏ " + droppedMessageCount() + " tin, gộp "
+                + conflatedMessageCount() + " tin, " + disconnectCount() + " lần ngắt (" + slowDisconnectCount() + " vì chậm, " + idleDisconnectCount()
+                + " vì im lặng)";
+    }
+
+    /**
+     * Số kết nối nhận được mỗi giây, trung bình từ lần tính trước (cập nhật tối đa mỗi giây một lần)
+     */
+    public synchronized double acceptsPerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampleNanos;
+        if (elapsed >= 1_000_000_000L) {
+            long count = accepted.sum();
+            acceptRate = (count - rateSampleCount) * 1e9 / elapsed;
+            rateSampleCount = count;
+            rateSampleNanos = now;
+        }
+        return acceptRate;
+    }
+}
@@ -0,0 +1,394 @@
+package securebroadcaster;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * BroadcastMonitor.java
+ * Bề mặt số liệu của một BroadcastEngine: MBean JMX (BroadcastMonitorMBean) và trang văn bản /metrics
+ * (MetricsEndpoint, định dạng Prometheus). Không ghi nhận gì trên đường nóng: mỗi lần đọc chỉ cộng các
+ * bộ đếm của lần chạy hiện tại (BroadcastMetrics, HandshakeStage, WriteStats) và duyệt độ sâu hàng đợi
+ * của các client, nên chi phí chỉ phát sinh khi có người xem.
+ */
+public class BroadcastMonitor implements BroadcastMonitorMBean {
+
+    private final BroadcastEngine engine;
+    private ObjectName name; // != null khi đã đăng ký với MBeanServer
+
+    public BroadcastMonitor(BroadcastEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Đăng ký với MBeanServer của JVM dưới tên "securebroadcaster:type=BroadcastEngine,port=<cổng>"
+     */
+    public synchronized void register() throws JMException {
+        if (name != null) return;
+        ObjectName objectName = new ObjectName("securebroadcaster:type=BroadcastEngine,port=" + engine.config().port());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        name = objectName;
+    }
+
+    public synchronized void unregister() {
+        if (name == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            // Đã bị gỡ từ bên ngoài: bỏ qua
+        }
+        name = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return engine.isRunning();
+    }
+
+    @Override
+    public int getConnectedClients() {
+        return engine.clientCount();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.acceptedCount() : 0;
+    }
+
+    @Override
+    public double getAcceptsPerSecond() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.acceptsPerSecond() : 0;
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.rejectedCount() : 0;
+    }
+
+    @Override
+    public long getDisconnects() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.disconnectCount() : 0;
+    }
+
+    @Override
+    public long getSlowClientDisconnects() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.slowDisconnectCount() : 0;
+    }
+
+    @Override
+    public long getIdleClientDisconnects() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.idleDisconnectCount() : 0;
+    }
+
+    @Override
+    public long getHeartbeatPings() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.pingCount() : 0;
+    }
+
+    @Override
+    public long getHandshakesSucceeded() {
+        HandshakeStage h = engine.handshakeStats();
+        return h != null ? h.succeededCount() : 0;
+    }
+
+    @Override
+    public long getHandshakesResumed() {
+        HandshakeStage h = engine.handshakeStats();
+        return h != null ? h.resumedCount() : 0;
+    }
+
+    @Override
+    public long getHandshakesFailed() {
+        HandshakeStage h = engine.handshakeStats();
+        return h != null ? h.failedCount() : 0;
+    }
+
+    @Override
+    public long getHandshakesTimedOut() {
+        HandshakeStage h = engine.handshakeStats();
+        return h != null ? h.timedOutCount() : 0;
+    }
+
+    @Override
+    public long getHandshakeLatencyP50Micros() {
+        HandshakeStage h = engine.handshakeStats();
+        return h != null ? h.latency().percentile(50) / 1000 : 0;
+    }
+
+    @Override
+    public long getHandshakeLatencyP99Micros() {
+        HandshakeStage h = engine.handshakeStats();
+        return h != null ? h.latency().percentile(99) / 1000 : 0;
+    }
+
+    @Override
+    public long getPublishes() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.publishCount() : 0;
+    }
+
+    @Override
+    public long getPublishLatencyP50Micros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.publishLatency().percentile(50) / 1000 : 0;
+    }
+
+    @Override
+    public long getPublishLatencyP99Micros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.publishLatency().percentile(99) / 1000 : 0;
+    }
+
+    @Override
+    public long getPublishLatencyMaxMicros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.publishLatency().max() / 1000 : 0;
+    }
+
+    @Override
+    public long getFanOutLatencyP50Micros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.fanOutLatency().percentile(50) / 1000 : 0;
+    }
+
+    @Override
+    public long getFanOutLatencyP99Micros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.fanOutLatency().percentile(99) / 1000 : 0;
+    }
+
+    @Override
+    public long getFanOutLatencyP999Micros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.fanOutLatency().percentile(99.9) / 1000 : 0;
+    }
+
+    @Override
+    public long getFanOutLatencyMaxMicros() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.fanOutLatency().max() / 1000 : 0;
+    }
+
+    @Override
+    public long getQueuedMessages() {
+        return queueDepths().total;
+    }
+
+    @Override
+    public int getQueueDepthMax() {
+        return queueDepths().max;
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.droppedMessageCount() : 0;
+    }
+
+    @Override
+    public long getConflatedMessages() {
+        BroadcastMetrics m = engine.metrics();
+        return m != null ? m.conflatedMessageCount() : 0;
+    }
+
+    @Override
+    public int getLastValueKeys() {
+        return engine.lastValues().size();
+    }
+
+    @Override
+    public long getLastValueBytes() {
+        return engine.lastValues().bytes();
+    }
+
+    @Override
+    public long getLastValueEvictions() {
+        return engine.lastValues().evictedCount();
+    }
+
+    @Override
+    public long getSnapshots() {
+        return engine.lastValues().snapshotCount();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        WriteStats w = engine.writeStats();
+        return w != null ? w.messages() : 0;
+    }
+
+    @Override
+    public long getBytesOut() {
+        WriteStats w = engine.writeStats();
+        return w != null ? w.bytes() : 0;
+    }
+
+    @Override
+    public long getCompressedBytesSaved() {
+        WriteStats w = engine.writeStats();
+        return w != null ? w.savedBytes() : 0;
+    }
+
+    @Override
+    public long getTlsRecords() {
+        WriteStats w = engine.writeStats();
+        return w != null ? w.records() : 0;
+    }
+
+    @Override
+    public long getSocketWrites() {
+        WriteStats w = engine.writeStats();
+        return w != null ? w.writes() : 0;
+    }
+
+    @Override
+    public int getFederationPeers() {
+        Federation f = engine.federation();
+        return f != null ? f.peerCount() : 0;
+    }
+
+    @Override
+    public long getFederationRelayed() {
+        Federation f = engine.federation();
+        return f != null ? f.relayedCount() : 0;
+    }
+
+    @Override
+    public long getFederationReceived() {
+        Federation f = engine.federation();
+        return f != null ? f.receivedCount() : 0;
+    }
+
+    @Override
+    public long getFederationDuplicates() {
+        Federation f = engine.federation();
+        return f != null ? f.duplicateCount() : 0;
+    }
+
+    @Override
+    public long getFederationLatencyP50Micros() {
+        Federation f = engine.federation();
+        return f != null ? f.latency().percentile(50) / 1000 : 0;
+    }
+
+    @Override
+    public long getFederationLatencyP99Micros() {
+        Federation f = engine.federation();
+        return f != null ? f.latency().percentile(99) / 1000 : 0;
+    }
+
+    /**
+     * Định dạng văn bản của Prometheus: counter/gauge một dòng, độ trễ là summary (giây) theo phân vị
+     */
+    @Override
+    public String text() {
+        StringBuilder out = new StringBuilder(4096);
+        gauge(out, "broadcaster_up", "1 nếu máy chủ đang chạy", isRunning() ? 1 : 0);
+        gauge(out, "broadcaster_clients", "Số client đã bắt tay xong đang kết nối", getConnectedClients());
+        counter(out, "broadcaster_accepted_total", "Số kết nối TCP đã nhận", getAcceptedConnections());
+        gauge(out, "broadcaster_accepts_per_second", "Tốc độ nhận kết nối", getAcceptsPerSecond());
+        counter(out, "broadcaster_rejected_total", "Số kết nối bị từ chối vì hết luồng", getRejectedConnections());
+        counter(out, "broadcaster_disconnects_total", "Số client đã rời đi", getDisconnects());
+        counter(out, "broadcaster_slow_disconnects_total", "Số client bị ngắt vì hàng đợi đầy",
+                getSlowClientDisconnects());
+        counter(out, "broadcaster_idle_disconnects_total", "Số client bị ngắt vì im lặng quá hạn heartbeat",
+                getIdleClientDisconnects());
+        counter(out, "broadcaster_heartbeat_pings_total", "Số PING heartbeat đã gửi", getHeartbeatPings());
+        counter(out, "broadcaster_handshakes_total", "Số lần bắt tay TLS thành công", getHandshakesSucceeded());
+        counter(out, "broadcaster_handshakes_resumed_total", "Số lần bắt tay nối lại phiên", getHandshakesResumed());
+        counter(out, "broadcaster_handshakes_failed_total", "Số lần bắt tay TLS lỗi", getHandshakesFailed());
+        counter(out, "broadcaster_handshakes_timed_out_total", "Số lần bắt tay TLS quá hạn", getHandshakesTimedOut());
+        HandshakeStage h = engine.handshakeStats();
+        if (h != null) summary(out, "broadcaster_handshake_seconds", "Độ trễ bắt tay TLS", h.latency());
+        BroadcastMetrics m = engine.metrics();
+        if (m != null) {
+            summary(out, "broadcaster_publish_seconds", "Thời gian publish trên luồng gọi", m.publishLatency());
+            summary(out, "broadcaster_fanout_seconds", "Từ lúc giao broadcast tới khi một shard xếp xong tin",
+                    m.fanOutLatency());
+        }
+        QueueDepths q = queueDepths();
+        gauge(out, "broadcaster_queued_messages", "Tổng số tin đang chờ trong hàng đợi gửi", q.total);
+        gauge(out, "broadcaster_queue_depth_max", "Hàng đợi gửi sâu nhất", q.max);
+        counter(out, "broadcaster_dropped_messages_total", "Số tin bị bỏ/loại vì hàng đợi đầy", getDroppedMessages());
+        counter(out, "broadcaster_conflated_messages_total", "Số tin chưa gửi bị thay bằng tin mới hơn cùng khóa",
+                getConflatedMessages());
+        gauge(out, "broadcaster_lvc_keys", "Số khóa trong bộ nhớ đệm giá trị mới nhất", getLastValueKeys());
+        gauge(out, "broadcaster_lvc_bytes", "Số byte ước lượng của bộ nhớ đệm giá trị mới nhất", getLastValueBytes());
+        counter(out, "broadcaster_lvc_evictions_total", "Số khóa bị loại vì vượt giới hạn", getLastValueEvictions());
+        counter(out, "broadcaster_snapshots_total", "Số ảnh chụp giá trị mới nhất đã gửi", getSnapshots());
+        counter(out, "broadcaster_messages_out_total", "Số tin đã gửi (cộng qua mọi client)", getMessagesOut());
+        counter(out, "broadcaster_bytes_out_total", "Số byte đã gửi trước TLS", getBytesOut());
+        counter(out, "broadcaster_compressed_bytes_saved_total", "Số byte tiết kiệm nhờ nén",
+                getCompressedBytesSaved());
+        counter(out, "broadcaster_tls_records_total", "Số bản ghi TLS đã tạo", getTlsRecords());
+        counter(out, "broadcaster_socket_writes_total", "Số lần ghi socket", getSocketWrites());
+        Federation f = engine.federation();
+        if (f != null) {
+            gauge(out, "broadcaster_federation_peers", "Số node peer đang liên kết", f.peerCount());
+            counter(out, "broadcaster_federation_relayed_total", "Số khung đã gửi tới peer (gồm phát lại)",
+                    f.relayedCount());
+            counter(out, "broadcaster_federation_received_total", "Số tin nhận từ peer", f.receivedCount());
+            counter(out, "broadcaster_federation_duplicates_total", "Số tin nhận trùng từ peer (đã bỏ)",
+                    f.duplicateCount());
+            summary(out, "broadcaster_federation_latency_seconds", "Độ trễ từ publish ở node gốc tới node này",
+                    f.latency());
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ');
+        if (value == Math.rint(value)) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.3f", value));
+        }
+        out.append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, help, "summary");
+        for (String q : new String[]{"0.5", "0.99", "0.999"}) {
+            long nanos = histogram.percentile(Double.parseDouble(q) * 100);
+            out.append(name).append("{quantile=\"").append(q).append("\"} ")
+                    .append(String.format(Locale.ROOT, "%.6f", nanos / 1e9)).append('\n');
+        }
+        out.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // --- Độ sâu hàng đợi gửi: duyệt mọi client lúc đọc ---
+    private QueueDepths queueDepths() {
+        QueueDepths q = new QueueDepths();
+        engine.queueDepths(depth -> {
+            q.total += depth;
+            if (depth > q.max) q.max = depth;
+        });
+        return q;
+    }
+
+    private static final class QueueDepths {
+        long total;
+        int max;
+    }
+}
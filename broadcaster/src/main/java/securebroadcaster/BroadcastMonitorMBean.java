@@ -0,0 +1,98 @@
+package securebroadcaster;
+
+/**
+ * BroadcastMonitorMBean.java
+ * Giao diện JMX (Standard MBean) của BroadcastMonitor: xem bằng jconsole/VisualVM dưới tên
+ * "securebroadcaster:type=BroadcastEngine,port=<cổng>". Độ trễ tính bằng micro giây.
+ */
+public interface BroadcastMonitorMBean {
+
+    boolean isRunning();
+
+    int getConnectedClients();
+
+    long getAcceptedConnections();
+
+    double getAcceptsPerSecond();
+
+    long getRejectedConnections();
+
+    long getDisconnects();
+
+    long getSlowClientDisconnects();
+
+    long getIdleClientDisconnects();
+
+    long getHeartbeatPings();
+
+    long getHandshakesSucceeded();
+
+    long getHandshakesResumed();
+
+    long getHandshakesFailed();
+
+    long getHandshakesTimedOut();
+
+    long getHandshakeLatencyP50Micros();
+
+    long getHandshakeLatencyP99Micros();
+
+    long getPublishes();
+
+    long getPublishLatencyP50Micros();
+
+    long getPublishLatencyP99Micros();
+
+    long getPublishLatencyMaxMicros();
+
+    long getFanOutLatencyP50Micros();
+
+    long getFanOutLatencyP99Micros();
+
+    long getFanOutLatencyP999Micros();
+
+    long getFanOutLatencyMaxMicros();
+
+    long getQueuedMessages();
+
+    int getQueueDepthMax();
+
+    long getDroppedMessages();
+
+    long getConflatedMessages();
+
+    int getLastValueKeys();
+
+    long getLastValueBytes();
+
+    long getLastValueEvictions();
+
+    long getSnapshots();
+
+    long getMessagesOut();
+
+    long getBytesOut();
+
+    long getCompressedBytesSaved();
+
+    long getTlsRecords();
+
+    long getSocketWrites();
+
+    int getFederationPeers();
+
+    long getFederationRelayed();
+
+    long getFederationReceived();
+
+    long getFederationDuplicates();
+
+    long getFederationLatencyP50Micros();
+
+    long getFederationLatencyP99Micros();
+
+    /**
+     * Toàn bộ số liệu dạng văn bản (giống trang /metrics)
+     */
+    String text();
+}
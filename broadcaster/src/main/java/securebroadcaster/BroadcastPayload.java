@@ -0,0 +1,368 @@
+package securebroadcaster;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BroadcastPayload.java
+ * Một tin broadcast, được mã hóa thành byte ĐÚNG MỘT LẦN cho mỗi định dạng (WireFormat).
+ * Bất biến và dùng chung cho mọi client: mỗi kết nối chỉ đọc (theo vị trí tuyệt đối)
+ * rồi tự mã hóa TLS, nên broadcast tới N client không cấp phát thêm N bộ đệm.
+ * Bản nén (WireFormat.DEFLATE) cũng chỉ được tạo một lần, lúc kết nối nén đầu tiên cần tới nó.
+ * Tin có khóa (cập nhật trạng thái) mang thêm conflationKey: hàng đợi gửi thay tin chưa gửi cùng khóa
+ * bằng tin mới nhất, LastValueCache giữ tin mới nhất của mỗi khóa.
+ */
+public final class BroadcastPayload {
+
+    private final byte type;
+    private final String topic;   // "" = topic mặc định; null = tin từ journal (giải mã từ khung khi cần)
+    private final String message;
+    private final String key;     // null = tin không có khóa (hoặc tin từ journal: giải mã từ khung khi cần)
+    private final LastValueCache.Key conflationKey; // (topic, key); null = không gộp
+    private final long seq;
+    private final long timestamp;
+    private final boolean direct;
+    private final DeflateCodec codec; // null = không bao giờ nén
+
+    // != null: tin điều khiển; sau khi ghi xong, kết nối chuyển sang định dạng này
+    private final WireFormat upgradeTo;
+
+    // Mã hóa lười theo định dạng. Hai luồng ghi có thể cùng mã hóa lần đầu;
+    // kết quả giống hệt nhau nên chỉ tốn thêm một lần, không sai.
+    private volatile Encoding line;
+    private volatile Encoding frame;
+    private volatile Encoding deflated; // Bằng 'frame' khi tin không đáng nén
+
+    // Mốc nội bộ trong hàng đợi gửi: client xin phát lại các tin sau 'seq' (không bao giờ ghi ra mạng)
+    private static final byte TYPE_RESUME = -1;
+    // Mốc nội bộ: client xin ảnh chụp LastValueCache ('message' = mẫu topic, "" = theo đăng ký)
+    private static final byte TYPE_SNAPSHOT = -2;
+
+    /**
+     * Khung TYPE_CONTROL chứa PING (heartbeat), dùng chung cho mọi kết nối nhị phân nên chỉ mã hóa một lần
+     */
+    public static final BroadcastPayload PING = new BroadcastPayload(FrameCodec.TYPE_CONTROL, "", FrameCodec.PING,
+            0, 0, false, null, null);
+
+    private BroadcastPayload(byte type, String topic, String message, long seq, long timestamp, boolean direct,
+                             DeflateCodec codec, WireFormat upgradeTo) {
+        this(type, topic, null, message, seq, timestamp, direct, codec, upgradeTo);
+    }
+
+    private BroadcastPayload(byte type, String topic, String key, String message, long seq, long timestamp,
+                             boolean direct, DeflateCodec codec, WireFormat upgradeTo) {
+        this.type = type;
+        this.topic = topic;
+        this.key = key;
+        this.conflationKey = key != null ? new LastValueCache.Key(topic, key) : null;
+        this.message = message;
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.direct = direct;
+        this.codec = codec;
+        this.upgradeTo = upgradeTo;
+    }
+
+    /**
+     * Một tin broadcast thông thường (topic mặc định)
+     */
+    public static BroadcastPayload message(String message, long seq, boolean direct) {
+        return message("", message, seq, direct);
+    }
+
+    /**
+     * Một tin broadcast thuộc 'topic' (chỉ gửi tới kết nối có mẫu đăng ký khớp)
+     */
+    public static BroadcastPayload message(String topic, String message, long seq, boolean direct) {
+        return message(topic, message, seq, direct, null);
+    }
+
+    /**
+     * Một tin broadcast có thể gửi nén bằng 'codec' tới các kết nối đã thỏa thuận nén
+     */
+    public static BroadcastPayload message(String topic, String message, long seq, boolean direct,
+                                           DeflateCodec codec) {
+        return message(topic, null, message, seq, direct, codec);
+    }
+
+    /**
+     * Một tin có khóa ('key' != null): giá trị mới nhất của khóa đó trong topic, thay cho các giá trị trước
+     */
+    public static BroadcastPayload message(String topic, String key, String message, long seq, boolean direct,
+                                           DeflateCodec codec) {
+        return new BroadcastPayload(FrameCodec.TYPE_MESSAGE, topic, key, message, seq, System.currentTimeMillis(),
+                direct, codec, null);
+    }
+
+    /**
+     * Một tin đọc lại từ BroadcastJournal: 'frame' là lát của segment đã ánh xạ (gồm cả trường length),
+     * được gửi thẳng đi mà không chép sang heap. Nội dung văn bản chỉ được giải mã khi thật sự cần.
+     */
+    public static BroadcastPayload framed(ByteBuffer frame, long seq, long timestamp) {
+        BroadcastPayload payload = new BroadcastPayload(frame.get(FrameCodec.LENGTH_SIZE), null, null, seq,
+                timestamp, true, null, null);
+        payload.frame = new Encoding(frame);
+        return payload;
+    }
+
+    /**
+     * Báo client rằng các tin [from, to] đã quá cũ, không còn trong ReplayRing để phát lại
+     */
+    public static BroadcastPayload gap(long from, long to) {
+        return new BroadcastPayload(FrameCodec.TYPE_GAP, "", FrameCodec.gapText(from, to), to, System.currentTimeMillis(),
+                false, null, null);
+    }
+
+    /**
+     * Mốc RESUME: đặt vào hàng đợi gửi để luồng ghi phát lại các tin sau 'lastSeen' đúng thứ tự
+     */
+    public static BroadcastPayload resume(long lastSeen) {
+        return new BroadcastPayload(TYPE_RESUME, "", "", lastSeen, System.currentTimeMillis(), false, null, null);
+    }
+
+    /**
+     * Mốc SNAPSHOT: đặt vào hàng đợi gửi để luồng ghi gửi các giá trị trong LastValueCache thuộc topic
+     * kết nối đã đăng ký và khớp 'pattern' (null = mọi topic đã đăng ký)
+     */
+    public static BroadcastPayload snapshot(String pattern) {
+        return new BroadcastPayload(TYPE_SNAPSHOT, "", pattern != null ? pattern : "", 0, System.currentTimeMillis(),
+                false, null, null);
+    }
+
+    /**
+     * Khung TYPE_CONTROL kết thúc một ảnh chụp gồm 'count' giá trị
+     */
+    public static BroadcastPayload snapshotEnd(int count) {
+        return new BroadcastPayload(FrameCodec.TYPE_CONTROL, "", FrameCodec.SNAPSHOT_END + " " + count, 0,
+                System.currentTimeMillis(), false, null, null);
+    }
+
+    /**
+     * Xác nhận thỏa thuận giao thức; kết nối chuyển sang 'format' ngay sau nó.
+     * BINARY: dòng ACK_BINARY. DEFLATE: khung TYPE_CONTROL chứa ACK_COMPRESS (kết nối đã dùng khung nhị phân).
+     */
+    public static BroadcastPayload upgrade(WireFormat format) {
+        if (format == WireFormat.DEFLATE) {
+            return new BroadcastPayload(FrameCodec.TYPE_CONTROL, "", FrameCodec.ACK_COMPRESS, 0,
+                    System.currentTimeMillis(), false, null, format);
+        }
+        return new BroadcastPayload(FrameCodec.TYPE_MESSAGE, "", FrameCodec.ACK_BINARY, 0, System.currentTimeMillis(),
+                false, null, format);
+    }
+
+    public byte type() {
+        return type;
+    }
+
+    public boolean isResume() {
+        return type == TYPE_RESUME;
+    }
+
+    public boolean isSnapshot() {
+        return type == TYPE_SNAPSHOT;
+    }
+
+    /**
+     * Mẫu topic của mốc SNAPSHOT, null = mọi topic kết nối đã đăng ký
+     */
+    public String snapshotPattern() {
+        return message.isEmpty() ? null : message;
+    }
+
+    public String topic() {
+        if (topic != null) return topic;
+        // Tin đọc từ journal: giải mã từ khung đã lưu
+        if (!hasTopicSection()) return "";
+        int offset = FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE;
+        return decode(offset + 2, topicSectionLength() - 2);
+    }
+
+    public String message() {
+        if (message != null) return message;
+        // Tin đọc từ journal: giải mã từ khung đã lưu (bỏ qua phần topic và phần khóa nếu có)
+        int offset = keySectionOffset();
+        if (hasKeySection()) offset += 2 + (frame.data.getShort(offset) & 0xFFFF);
+        return decode(offset, frame.length - offset);
+    }
+
+    /**
+     * Khóa của tin, null nếu tin không có khóa
+     */
+    public String key() {
+        if (topic != null) return key;
+        // Tin đọc từ journal: giải mã từ khung đã lưu
+        if (!hasKeySection()) return null;
+        int offset = keySectionOffset();
+        return decode(offset + 2, frame.data.getShort(offset) & 0xFFFF);
+    }
+
+    /**
+     * Khóa gộp (topic, khóa) của tin có khóa: hàng đợi gửi chỉ giữ tin mới nhất của mỗi khóa gộp
+     */
+    public LastValueCache.Key conflationKey() {
+        return conflationKey;
+    }
+
+    private boolean hasTopicSection() {
+        return (frame.data.get(FrameCodec.LENGTH_SIZE + 1) & FrameCodec.FLAG_TOPIC) != 0;
+    }
+
+    private boolean hasKeySection() {
+        return (frame.data.get(FrameCodec.LENGTH_SIZE + 1) & FrameCodec.FLAG_KEY) != 0;
+    }
+
+    private int topicSectionLength() {
+        int offset = FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE;
+        return 2 + (frame.data.getShort(offset) & 0xFFFF);
+    }
+
+    private int keySectionOffset() {
+        int offset = FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE;
+        return hasTopicSection() ? offset + topicSectionLength() : offset;
+    }
+
+    private String decode(int offset, int length) {
+        byte[] text = new byte[length];
+        frame.data.get(offset, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    public long seq() {
+        return seq;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public WireFormat upgradeTo() {
+        return upgradeTo;
+    }
+
+    public int length(WireFormat format) {
+        return encoding(format).length;
+    }
+
+    /**
+     * Số byte tiết kiệm được mỗi lần gửi tin này ở định dạng 'format' (so với khung không nén)
+     */
+    public int savedBytes(WireFormat format) {
+        if (format != WireFormat.DEFLATE || upgradeTo != null) return 0;
+        return encoding(WireFormat.BINARY).length - encoding(WireFormat.DEFLATE).length;
+    }
+
+    /**
+     * Chép tối đa dst.remaining() byte bắt đầu từ offset vào dst (không đổi trạng thái của payload).
+     * Trả về số byte đã chép.
+     */
+    public int copyTo(WireFormat format, ByteBuffer dst, int offset) {
+        Encoding e = encoding(format);
+        int n = Math.min(dst.remaining(), e.length - offset);
+        dst.put(dst.position(), e.data, offset, n);
+        dst.position(dst.position() + n);
+        return n;
+    }
+
+    /**
+     * Ghi toàn bộ payload ra luồng. 'scratch' là bộ đệm riêng của luồng ghi,
+     * chỉ dùng khi payload nằm trong bộ nhớ direct.
+     */
+    public void writeTo(WireFormat format, OutputStream out, byte[] scratch) throws IOException {
+        Encoding e = encoding(format);
+        if (e.array != null) {
+            out.write(e.array, 0, e.length);
+            return;
+        }
+        for (int offset = 0; offset < e.length; ) {
+            int n = Math.min(scratch.length, e.length - offset);
+            e.data.get(offset, scratch, 0, n);
+            out.write(scratch, 0, n);
+            offset += n;
+        }
+    }
+
+    private Encoding encoding(WireFormat format) {
+        if (format == WireFormat.DEFLATE && upgradeTo == null) {
+            Encoding e = deflated;
+            if (e == null) deflated = e = deflate(encoding(WireFormat.BINARY));
+            return e;
+        }
+        if (format != WireFormat.LINE && upgradeTo != WireFormat.BINARY) {
+            Encoding e = frame;
+            if (e == null) {
+                byte[] body = message.getBytes(StandardCharsets.UTF_8);
+                byte flags = 0;
+                if (key != null) {
+                    body = FrameCodec.withKey(key, body);
+                    flags |= FrameCodec.FLAG_KEY;
+                }
+                if (!topic.isEmpty()) {
+                    body = FrameCodec.withTopic(topic, body);
+                    flags |= FrameCodec.FLAG_TOPIC;
+                }
+                frame = e = new Encoding(FrameCodec.encode(type, flags, seq, timestamp, body), direct);
+            }
+            return e;
+        }
+        Encoding e = line;
+        if (e == null) {
+            // Đúng định dạng của PrintWriter.println (charset mặc định + xuống dòng hệ thống)
+            // để SecureClient cũ đọc được bằng readLine(); tin có topic được ghi kèm "[topic] " ở đầu dòng,
+            // tin có khóa ghi dạng "khóa=giá trị"
+            String topic = topic();
+            String key = key();
+            String text = key == null ? message() : key + "=" + message();
+            if (!topic.isEmpty()) text = "[" + topic + "] " + text;
+            byte[] bytes = (text + System.lineSeparator()).getBytes(Charset.defaultCharset());
+            line = e = new Encoding(bytes, direct);
+        }
+        return e;
+    }
+
+    /**
+     * Khung nén từ khung thường: cùng header, thêm FLAG_DEFLATE, payload (cả phần topic) là luồng zlib.
+     * Trả về chính khung thường nếu không có codec, tin quá nhỏ hoặc nén không nhỏ hơn.
+     */
+    private Encoding deflate(Encoding plain) {
+        if (codec == null) return plain;
+        int headerEnd = FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE;
+        byte[] src = plain.array;
+        if (src == null) {
+            src = new byte[plain.length];
+            plain.data.get(0, src);
+        }
+        byte[] body = codec.deflate(src, headerEnd, plain.length - headerEnd);
+        if (body == null) return plain;
+        byte flags = (byte) (src[FrameCodec.LENGTH_SIZE + 1] | FrameCodec.FLAG_DEFLATE);
+        return new Encoding(FrameCodec.encode(type, flags, seq, timestamp, body), direct);
+    }
+
+    // --- Byte đã mã hóa của một định dạng ---
+    private static final class Encoding {
+        final ByteBuffer data;  // Chỉ đọc, dùng chung
+        final byte[] array;     // Mảng gốc khi là bộ đệm heap (null nếu là direct)
+        final int length;
+
+        Encoding(ByteBuffer view) {
+            this.length = view.remaining();
+            this.data = view.asReadOnlyBuffer();
+            this.array = null;
+        }
+
+        Encoding(byte[] bytes, boolean direct) {
+            this.length = bytes.length;
+            if (direct) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes).flip();
+                this.data = buffer.asReadOnlyBuffer();
+                this.array = null;
+            } else {
+                this.data = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+                this.array = bytes;
+            }
+        }
+    }
+}
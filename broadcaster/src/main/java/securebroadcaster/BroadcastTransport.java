@@ -0,0 +1,41 @@
+package securebroadcaster;
+
+import java.io.IOException;
+import java.util.function.IntConsumer;
+
+/**
+ * BroadcastTransport.java
+ * Lõi mạng của BroadcastEngine: nhận kết nối và phát payload tới các client.
+ * SSLContext được lấy lại cho mỗi lần bắt tay, nên BroadcastEngine thay được chứng chỉ
+ * (nạp lại keystore) mà không đóng các kết nối đang có.
+ */
+public interface BroadcastTransport {
+
+    void start() throws IOException;
+
+    /**
+     * Xếp payload vào hàng đợi của mọi client đăng ký topic của nó rồi trả về ngay (không chặn).
+     * Trả về số client đã nhận.
+     */
+    int broadcast(BroadcastPayload payload);
+
+    int clientCount();
+
+    /**
+     * Bộ đếm ghi của transport (số tin, số bản ghi TLS, số lần ghi socket)
+     */
+    WriteStats writeStats();
+
+    /**
+     * Gọi 'action' với số tin đang chờ trong hàng đợi gửi của từng client (đọc lúc thu số liệu, không phải trên đường nóng)
+     */
+    void queueDepths(IntConsumer action);
+
+    /**
+     * Chuyển sang lắng nghe trên 'port': mở cổng mới rồi mới đóng cổng cũ, các kết nối đang có giữ nguyên.
+     * Nếu không mở được cổng mới thì ném lỗi và vẫn nghe trên cổng cũ.
+     */
+    void rebind(int port) throws IOException;
+
+    void stop();
+}
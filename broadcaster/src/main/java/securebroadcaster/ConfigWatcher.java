@@ -0,0 +1,115 @@
+package securebroadcaster;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ConfigWatcher.java
+ * Theo dõi các file của máy chủ đang chạy (keystore, file cấu hình, truststore của liên kết peer)
+ * và gọi BroadcastEngine.reload khi chúng đổi. WatchService chỉ theo dõi được thư mục, nên mỗi thư mục
+ * cha được đăng ký một lần; sự kiện của file khác trong thư mục bị bỏ qua.
+ * Các sự kiện đến dồn dập (ghi file từng phần, thay file bằng rename) được gom lại: chỉ nạp lại khi
+ * thư mục yên lặng DEBOUNCE_MS, nên keystore đang ghi dở ít khi bị đọc.
+ */
+public class ConfigWatcher {
+
+    private static final long DEBOUNCE_MS = 500;
+
+    private final BroadcastEngine engine;
+    private final Consumer<String> log;
+    private final WatchService service;
+    private final Set<Path> directories = new HashSet<>(); // Thư mục đã đăng ký; chỉ luồng theo dõi dùng (sau start)
+    private volatile boolean isRunning = true;
+
+    private ConfigWatcher(BroadcastEngine engine, Consumer<String> log) throws IOException {
+        this.engine = engine;
+        this.log = log;
+        this.service = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Đăng ký các thư mục chứa file cần theo dõi rồi chạy luồng nền "config-watch"
+     */
+    public static ConfigWatcher start(BroadcastEngine engine, Consumer<String> log) throws IOException {
+        ConfigWatcher watcher = new ConfigWatcher(engine, log);
+        try {
+            watcher.register();
+        } catch (IOException e) {
+            watcher.service.close();
+            throw e;
+        }
+        Thread.ofPlatform().name("config-watch").daemon().start(watcher::watchLoop);
+        return watcher;
+    }
+
+    public void stop() {
+        isRunning = false;
+        try {
+            service.close(); // Đánh thức luồng đang chờ trong take()
+        } catch (IOException e) {
+            // Bỏ qua lỗi
+        }
+    }
+
+    /**
+     * Đăng ký thư mục cha của mọi file đang theo dõi (gọi lại sau mỗi lần nạp: đường dẫn keystore có thể đã đổi)
+     */
+    private void register() throws IOException {
+        for (Path file : engine.watchedFiles()) {
+            Path dir = file.getParent();
+            if (dir != null && !directories.contains(dir)) {
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.add(dir);
+            }
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (isRunning) {
+                Set<Path> changed = new HashSet<>();
+                collect(service.take(), changed);
+                // Gom các sự kiện tới liền sau đó cho tới khi yên lặng
+                WatchKey key;
+                while ((key = service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+                changed.retainAll(engine.watchedFiles());
+                if (changed.isEmpty() || !isRunning) continue;
+                engine.reload(changed);
+                try {
+                    register();
+                } catch (IOException e) {
+                    log.accept("Không theo dõi được thư mục mới: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Đang dừng
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Mất sự kiện: coi mọi file trong thư mục này là đã đổi
+                for (Path file : engine.watchedFiles()) {
+                    if (dir.equals(file.getParent())) changed.add(file);
+                }
+            } else {
+                changed.add(dir.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+}
@@ -0,0 +1,204 @@
+package securebroadcaster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DeflateCodec.java
+ * Nén/giải nén payload của khung nhị phân (FrameCodec.FLAG_DEFLATE) bằng deflate, tùy chọn có từ điển dựng sẵn.
+ * Mỗi khung là một luồng zlib độc lập, nên client giải nén được từng khung mà không cần trạng thái chung.
+ * Deflater/Inflater giữ bộ nhớ native: được dùng lại qua một nhóm (pool) có giới hạn thay vì tạo mới mỗi tin.
+ * Ở server mỗi broadcast chỉ nén một lần (BroadcastPayload giữ kết quả), mọi kết nối đã thỏa thuận dùng chung.
+ * Định danh từ điển là Adler-32 của nó, đúng trường DICTID trong đầu luồng zlib.
+ */
+public final class DeflateCodec {
+
+    private final int level;
+    private final byte[] dictionary; // null = không có từ điển
+    private final long dictionaryId;  // 0 = không có từ điển
+    private final int minSize;
+
+    private final BlockingQueue<Deflater> deflaters;
+    private final BlockingQueue<Inflater> inflaters;
+
+    // Thống kê nén (một lần mỗi broadcast) và giải nén
+    private final LongAdder compressed = new LongAdder();   // Số payload đã nén
+    private final LongAdder skipped = new LongAdder();      // Số payload quá nhỏ hoặc nén không nhỏ hơn
+    private final LongAdder bytesIn = new LongAdder();      // Tổng byte trước khi nén (chỉ các payload đã nén)
+    private final LongAdder bytesOut = new LongAdder();     // Tổng byte sau khi nén
+    private final LongAdder deflateNanos = new LongAdder();
+    private final LongAdder inflated = new LongAdder();
+    private final LongAdder inflateNanos = new LongAdder();
+
+    /**
+     * @param level      mức nén của Deflater (1..9, hoặc Deflater.DEFAULT_COMPRESSION)
+     * @param dictionary từ điển dựng sẵn (các chuỗi hay xuất hiện trong tin), hoặc null
+     * @param minSize    payload nhỏ hơn số byte này không nén
+     */
+    public DeflateCodec(int level, byte[] dictionary, int minSize) {
+        this.level = level;
+        this.dictionary = dictionary != null && dictionary.length > 0 ? dictionary.clone() : null;
+        this.dictionaryId = dictionaryId(this.dictionary);
+        this.minSize = Math.max(0, minSize);
+        int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+        this.deflaters = new ArrayBlockingQueue<>(poolSize);
+        this.inflaters = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Bộ nén phía server theo cấu hình (đọc file từ điển nếu có)
+     */
+    public static DeflateCodec fromConfig(BroadcastConfig config) throws IOException {
+        byte[] dictionary = config.compressDictionary() != null ? Files.readAllBytes(config.compressDictionary()) : null;
+        return new DeflateCodec(config.compressLevel(), dictionary, config.compressMinSize());
+    }
+
+    /**
+     * Adler-32 của từ điển (0 nếu không có) — giá trị client gửi trong dòng COMPRESS
+     */
+    public static long dictionaryId(byte[] dictionary) {
+        if (dictionary == null || dictionary.length == 0) return 0;
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return adler.getValue();
+    }
+
+    public long dictionaryId() {
+        return dictionaryId;
+    }
+
+    /**
+     * Client có từ điển 'clientDictionaryId' có giải nén được khung của bộ nén này không
+     */
+    public boolean accepts(long clientDictionaryId) {
+        return dictionary == null || clientDictionaryId == dictionaryId;
+    }
+
+    /**
+     * Nén src[offset, offset + length) thành một luồng zlib. Trả về null nếu payload nhỏ hơn ngưỡng
+     * hoặc bản nén không nhỏ hơn bản gốc (khi đó gửi không nén).
+     */
+    public byte[] deflate(byte[] src, int offset, int length) {
+        if (length < minSize) {
+            skipped.increment();
+            return null;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) deflater = new Deflater(level);
+        try {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            // Chỉ cần bản nén nhỏ hơn bản gốc: bộ đệm bằng bản gốc, không vừa thì bỏ
+            byte[] out = new byte[length];
+            int n = 0;
+            while (!deflater.finished() && n < out.length) {
+                n += deflater.deflate(out, n, out.length - n);
+            }
+            if (!deflater.finished() || n >= length) {
+                skipped.increment();
+                return null;
+            }
+            compressed.increment();
+            bytesIn.add(length);
+            bytesOut.add(n);
+            return Arrays.copyOf(out, n);
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) deflater.end(); // Nhóm đã đầy: giải phóng bộ nhớ native ngay
+            deflateNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Giải nén src[offset, offset + length) vào dst. Trả về số byte đã giải nén,
+     * hoặc -1 nếu dst không đủ chỗ (người gọi nới dst rồi gọi lại).
+     */
+    public int inflate(byte[] src, int offset, int length, byte[] dst) throws IOException {
+        long start = System.nanoTime();
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) inflater = new Inflater();
+        try {
+            inflater.setInput(src, offset, length);
+            int n = 0;
+            while (!inflater.finished()) {
+                if (n == dst.length) return -1;
+                int r = inflater.inflate(dst, n, dst.length - n);
+                n += r;
+                if (r == 0) {
+                    if (inflater.needsDictionary()) {
+                        long id = inflater.getAdler() & 0xFFFFFFFFL; // DICTID của luồng zlib
+                        if (dictionary == null || id != dictionaryId) {
+                            throw new IOException("Khung nén bằng từ điển không khớp (DICTID " + id + ")");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("Khung nén bị cắt cụt");
+                    }
+                }
+            }
+            inflated.increment();
+            return n;
+        } catch (DataFormatException e) {
+            throw new IOException("Khung nén hỏng: " + e.getMessage(), e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) inflater.end();
+            inflateNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public long compressedCount() {
+        return compressed.sum();
+    }
+
+    public long skippedCount() {
+        return skipped.sum();
+    }
+
+    public long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long bytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Tổng thời gian CPU (nano giây) đã dùng để nén
+     */
+    public long deflateNanos() {
+        return deflateNanos.sum();
+    }
+
+    public long inflatedCount() {
+        return inflated.sum();
+    }
+
+    public long inflateNanos() {
+        return inflateNanos.sum();
+    }
+
+    /**
+     * Mô tả ngắn để ghi log, ví dụ "Nén: 1200 tin (bỏ qua 30), 1228800 -> 204800 byte (17%), CPU 85 ms (71 µs/tin)"
+     */
+    public String summary() {
+        long n = compressedCount();
+        long in = bytesIn();
+        long out = bytesOut();
+        long nanos = deflateNanos();
+        long total = n + skippedCount();
+        return String.format("Nén: %d tin (bỏ qua %d), %d -> %d byte (%d%%), CPU %d ms (%d µs/tin)",
+                n, skippedCount(), in, out, in == 0 ? 100 : out * 100 / in,
+                nanos / 1_000_000, total == 0 ? 0 : nanos / 1000 / total);
+    }
+}
@@ -0,0 +1,52 @@
+package securebroadcaster;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecutionMode.java
+ * Cách chạy các tác vụ chặn (accept, đọc/ghi từng client, kết nối phía client).
+ */
+public enum ExecutionMode {
+    VIRTUAL,   // Luồng ảo JDK 21: mỗi tác vụ một luồng ảo, hàng chục nghìn client nhàn rỗi tốn rất ít bộ nhớ
+    PLATFORM,  // Mỗi tác vụ một luồng hệ điều hành (như trước đây), có đặt tên
+    POOLED;    // Nhóm luồng hệ điều hành có giới hạn; khi đầy thì từ chối (RejectedExecutionException)
+
+    /**
+     * Đọc từ cấu hình: "virtual", "platform" hoặc "pooled"
+     */
+    public static ExecutionMode parse(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * Tạo executor; tên luồng có dạng name-0, name-1...
+     * maxThreads chỉ áp dụng cho POOLED.
+     */
+    public ExecutorService newExecutor(String name, int maxThreads) {
+        switch (this) {
+            case VIRTUAL:
+                return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+            case PLATFORM:
+                return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name(name + "-", 0).factory());
+            default:
+                // Không có hàng chờ: client vượt giới hạn bị từ chối ngay thay vì chờ vô hạn
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), Thread.ofPlatform().name(name + "-", 0).factory());
+                pool.allowCoreThreadTimeOut(true);
+                return pool;
+        }
+    }
+
+    /**
+     * Khởi động một luồng riêng lẻ có tên (POOLED dùng luồng hệ điều hành)
+     */
+    public Thread startThread(String name, Runnable task) {
+        return this == VIRTUAL
+                ? Thread.ofVirtual().name(name).start(task)
+                : Thread.ofPlatform().name(name).start(task);
+    }
+}
@@ -0,0 +1,101 @@
+package securebroadcaster;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * FanOutShards.java
+ * Chia tập kết nối thành các shard, mỗi shard gắn với MỘT luồng (event-loop ở chế độ NIO,
+ * luồng fan-out riêng ở chế độ blocking), khoảng một shard cho mỗi nhân CPU.
+ * Một broadcast chỉ tra chỉ mục topic của từng shard rồi giao cho luồng của shard đó
+ * (O(số shard) trên luồng publish); việc xếp hàng, mã hóa TLS và ghi cho từng kết nối
+ * chạy song song trên các shard.
+ * Mỗi kết nối thuộc đúng một shard và mỗi shard xử lý broadcast theo thứ tự được giao,
+ * nên thứ tự tin trên một kết nối được giữ nguyên.
+ */
+public final class FanOutShards<C> {
+
+    private final Shard<C>[] shards;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LatencyHistogram fanOutLatency; // null = không đo
+
+    public FanOutShards(Executor[] executors) {
+        this(executors, null);
+    }
+
+    /**
+     * 'fanOutLatency' nhận một mẫu mỗi shard mỗi broadcast: từ lúc gọi broadcast() tới khi shard
+     * đã giao tin cho mọi kết nối khớp
+     */
+    public FanOutShards(Executor[] executors, LatencyHistogram fanOutLatency) {
+        this.fanOutLatency = fanOutLatency;
+        @SuppressWarnings("unchecked")
+        Shard<C>[] created = (Shard<C>[]) new Shard<?>[executors.length];
+        this.shards = created;
+        for (int i = 0; i < executors.length; i++) {
+            shards[i] = new Shard<>(i, executors[i]);
+        }
+    }
+
+    public int count() {
+        return shards.length;
+    }
+
+    public Shard<C> shard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Shard cho một kết nối mới (chia vòng tròn)
+     */
+    public Shard<C> assign() {
+        return shards[Math.floorMod(next.getAndIncrement(), shards.length)];
+    }
+
+    /**
+     * Giao một broadcast cho mọi shard có người đăng ký topic; 'deliver' chạy trên luồng của shard
+     * cho từng kết nối khớp. Trả về số kết nối sẽ nhận (cận trên nếu các mẫu đăng ký chồng nhau).
+     */
+    public int broadcast(String topic, Consumer<? super C> deliver) {
+        long start = fanOutLatency != null ? System.nanoTime() : 0;
+        int total = 0;
+        for (Shard<C> shard : shards) {
+            TopicRegistry.Match<C> match = shard.subscribers.match(topic);
+            if (match.isEmpty()) continue;
+            total += match.size();
+            shard.executor.execute(() -> {
+                match.forEach(deliver);
+                if (fanOutLatency != null) fanOutLatency.record(System.nanoTime() - start);
+            });
+        }
+        return total;
+    }
+
+    // --- Một shard: chỉ mục topic của các kết nối thuộc shard và luồng xử lý chúng ---
+    public static final class Shard<C> {
+        private final int index;
+        private final Executor executor;
+        private final TopicRegistry<C> subscribers = new TopicRegistry<>();
+
+        private Shard(int index, Executor executor) {
+            this.index = index;
+            this.executor = executor;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public TopicRegistry<C> subscribers() {
+            return subscribers;
+        }
+
+        /**
+         * Chạy một tác vụ trên luồng của shard (sau mọi broadcast đã giao trước đó)
+         */
+        public void execute(Runnable task) {
+            executor.execute(task);
+        }
+    }
+}
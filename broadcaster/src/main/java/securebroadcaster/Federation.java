@@ -0,0 +1,479 @@
+package securebroadcaster;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Federation.java
+ * Liên kết nhiều máy chủ (node) thành một cụm: tin publish ở node nào cũng tới client của mọi node.
+ * Các node nối với nhau qua liên kết TLS hai chiều xác thực lẫn nhau (mTLS, cùng truststore),
+ * trên một cổng riêng (server.federation.port); mỗi node tự quay số tới các peer trong server.federation.peers.
+ *
+ * Giao thức của một liên kết (đối xứng, hai bên làm giống nhau):
+ *   "PEER <node> <incarnation>"  tên node và mốc khởi động (đổi khi node khởi động lại, seq bắt đầu lại)
+ *   "RESUME <seq>"               seq cuối đã nhận từ bên kia (0 = chỉ nhận tin mới)
+ *   sau đó là các khung TYPE_MESSAGE của FrameCodec, seq = seq gốc ở node phát,
+ *   trường timestamp = thời điểm publish ở node gốc tính bằng MICRO giây (để đo độ trễ liên node).
+ *
+ * Chỉ tin publish tại node này được chuyển đi, đúng một lần cho mỗi peer; tin nhận từ peer chỉ phát tới
+ * client cục bộ, không chuyển tiếp nữa, nên không có vòng lặp (cụm là lưới đầy đủ, mỗi tin đi một chặng).
+ * Bên nhận bỏ các tin có seq không lớn hơn seq cuối đã nhận từ node gốc: chống trùng khi phát lại sau
+ * kết nối lại và khi hai node quay số tới nhau cùng lúc (chỉ giữ một liên kết cho mỗi cặp).
+ * Peer kết nối lại được phát lại các tin đã lỡ từ một vòng đệm chỉ chứa tin gốc của node này.
+ * SSLContext được lấy lại cho mỗi liên kết mới (cả chiều nhận lẫn quay số), nên keystore/truststore
+ * nạp lại áp dụng từ lần nối kế tiếp; các liên kết đang có giữ nguyên.
+ */
+public class Federation {
+
+    static final String HELLO = "PEER";
+
+    private static final long RECONNECT_MIN_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30_000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Supplier<SSLContext> sslContext;
+    private final BroadcastConfig config;
+    private final BroadcastEngine engine;
+    private final Consumer<String> log;
+    private final String nodeId;
+    private final long incarnation = System.currentTimeMillis();
+
+    // Tin phát tại node này (theo seq cục bộ) để phát lại cho peer kết nối lại; tin nhận từ peer không nằm ở đây
+    private final ReplayRing relayRing;
+
+    // Liên kết đang hoạt động (mỗi node peer một liên kết) và trạng thái nhận của từng peer (giữ qua các lần nối lại)
+    private final ConcurrentHashMap<String, PeerLink> links = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PeerState> peers = new ConcurrentHashMap<>();
+
+    private volatile boolean isRunning = false;
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    // Thống kê
+    private final LongAdder relayed = new LongAdder();    // Khung đã gửi tới peer (cộng qua mọi peer)
+    private final LongAdder replayed = new LongAdder();   // Trong đó, số khung phát lại sau kết nối lại
+    private final LongAdder received = new LongAdder();   // Tin nhận từ peer và đã phát tới client cục bộ
+    private final LongAdder duplicates = new LongAdder(); // Tin nhận trùng (đã bỏ)
+    private final LatencyHistogram latency = new LatencyHistogram(); // Độ trễ liên node (nano giây)
+
+    public Federation(Supplier<SSLContext> sslContext, BroadcastConfig config, BroadcastEngine engine, Consumer<String> log) {
+        this.sslContext = sslContext;
+        this.config = config;
+        this.engine = engine;
+        this.log = log;
+        this.nodeId = config.federationNode() != null ? config.federationNode() : defaultNodeId(config.port());
+        this.relayRing = new ReplayRing(config.replayCapacity());
+    }
+
+    private static String defaultNodeId(int port) {
+        try {
+            return InetAddress.getLocalHost().getHostName() + ":" + port;
+        } catch (UnknownHostException e) {
+            return "localhost:" + port;
+        }
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Mở cổng liên kết (yêu cầu chứng chỉ của peer) và bắt đầu quay số tới các peer đã cấu hình
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(config.federationPort()); // TLS phủ lên từng socket đã accept
+        executor = config.threadMode().newExecutor("peer", config.maxThreads());
+        isRunning = true;
+        executor.execute(this::acceptLoop);
+        for (String address : config.federationPeers()) {
+            executor.execute(() -> dialLoop(address));
+        }
+    }
+
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            log.accept("Lỗi khi đóng cổng liên kết: " + e.getMessage());
+        }
+        links.values().forEach(PeerLink::close);
+        if (executor != null) executor.shutdownNow(); // Đánh thức các vòng quay số đang chờ
+    }
+
+    /**
+     * Gọi trong khóa publish của BroadcastEngine (nên thứ tự seq được giữ): lưu để phát lại
+     * rồi xếp tin vào hàng đợi của mọi peer. Mã hóa khung một lần, dùng chung cho mọi peer.
+     */
+    void relay(BroadcastPayload payload) {
+        relayRing.append(payload);
+        if (links.isEmpty()) return;
+        Relay relay = new Relay(payload.seq(), peerFrame(payload, nowMicros()));
+        for (PeerLink link : links.values()) {
+            link.offer(relay);
+        }
+    }
+
+    private static byte[] peerFrame(BroadcastPayload payload, long originMicros) {
+        byte[] body = payload.message().getBytes(StandardCharsets.UTF_8);
+        byte flags = 0;
+        if (payload.key() != null) {
+            body = FrameCodec.withKey(payload.key(), body);
+            flags |= FrameCodec.FLAG_KEY;
+        }
+        if (!payload.topic().isEmpty()) {
+            body = FrameCodec.withTopic(payload.topic(), body);
+            flags |= FrameCodec.FLAG_TOPIC;
+        }
+        return FrameCodec.encode(FrameCodec.TYPE_MESSAGE, flags, payload.seq(), originMicros, body);
+    }
+
+    private static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    // --- Nhận và quay số ---
+
+    private void acceptLoop() {
+        while (isRunning) {
+            try {
+                Socket plain = serverSocket.accept();
+                executor.execute(() -> {
+                    try (plain; SSLSocket socket = (SSLSocket) sslContext.get().getSocketFactory().createSocket(
+                            plain, plain.getInetAddress().getHostAddress(), plain.getPort(), true)) {
+                        socket.setUseClientMode(false);
+                        socket.setNeedClientAuth(true); // mTLS: peer không có chứng chỉ tin cậy bị từ chối khi bắt tay
+                        runLink(socket, false, String.valueOf(socket.getInetAddress()));
+                    } catch (IOException ignored) {
+                        // Bỏ qua lỗi khi đóng socket
+                    }
+                });
+            } catch (IOException e) {
+                if (isRunning) {
+                    log.accept("Lỗi cổng liên kết: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Quay số tới một peer "host:port" và giữ liên kết; mất kết nối thì quay lại với độ trễ tăng dần.
+     * Không quay số khi peer đó đang nối với node này qua liên kết do nó chủ động mở.
+     */
+    private void dialLoop(String address) {
+        int colon = address.lastIndexOf(':');
+        String host = address.substring(0, colon);
+        int port = Integer.parseInt(address.substring(colon + 1));
+        String knownNode = null; // Tên node ở địa chỉ này (biết sau lần bắt tay đầu tiên)
+        long delay = RECONNECT_MIN_DELAY_MS;
+        while (isRunning) {
+            if (knownNode == null || !links.containsKey(knownNode)) {
+                try (SSLSocket socket = (SSLSocket) sslContext.get().getSocketFactory().createSocket(host, port)) {
+                    String node = runLink(socket, true, address);
+                    if (node != null) {
+                        knownNode = node;
+                        delay = RECONNECT_MIN_DELAY_MS;
+                    }
+                } catch (IOException e) {
+                    if (isRunning && delay == RECONNECT_MIN_DELAY_MS) {
+                        log.accept("Chưa kết nối được peer " + address + ": " + e.getMessage() + " (sẽ thử lại)");
+                    }
+                }
+            }
+            try {
+                Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (InterruptedException e) {
+                return; // Đang dừng
+            }
+            delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MS);
+        }
+    }
+
+    /**
+     * Bắt tay TLS, trao đổi PEER/RESUME rồi phục vụ liên kết tới khi nó đóng (đọc khung trên một luồng,
+     * ghi trên luồng gọi). Trả về tên node peer nếu đã thiết lập được, null nếu không.
+     */
+    private String runLink(SSLSocket socket, boolean initiator, String address) {
+        PeerLink link;
+        FrameReader reader;
+        PeerState state;
+        long theirResume;
+        try {
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, config.handshakeTimeoutMillis()));
+            socket.startHandshake();
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            reader = new FrameReader(socket.getInputStream());
+
+            writeLine(out, HELLO + " " + nodeId + " " + incarnation);
+            String[] hello = String.valueOf(reader.readLine()).split(" ");
+            if (hello.length != 3 || !HELLO.equals(hello[0])) {
+                throw new IOException("Lời chào liên kết không hợp lệ");
+            }
+            String peerNode = hello[1];
+            long peerIncarnation = Long.parseLong(hello[2]);
+            if (peerNode.equals(nodeId)) {
+                log.accept("Bỏ qua liên kết tới chính node này (" + address + ").");
+                return null;
+            }
+
+            // Peer khởi động lại: seq của nó bắt đầu lại, không còn so được với seq cũ
+            state = peers.computeIfAbsent(peerNode, node -> new PeerState());
+            long resumeFrom;
+            synchronized (state) {
+                if (state.incarnation != peerIncarnation) {
+                    state.incarnation = peerIncarnation;
+                    state.lastSeq = 0;
+                }
+                resumeFrom = state.lastSeq;
+            }
+            writeLine(out, FrameCodec.resumeLine(resumeFrom));
+            theirResume = FrameCodec.parseResume(String.valueOf(reader.readLine()));
+            if (theirResume < 0) throw new IOException("Thiếu RESUME từ peer " + peerNode);
+            socket.setSoTimeout(0);
+
+            link = new PeerLink(peerNode, initiator, socket, out);
+        } catch (IOException | NumberFormatException e) {
+            if (isRunning) log.accept("Liên kết peer " + address + " thất bại: " + e.getMessage());
+            return null;
+        }
+        if (!register(link)) {
+            return link.node; // Đã có liên kết khác tới cùng peer
+        }
+        log.accept("Đã liên kết với peer " + link.node + " (" + address + (initiator ? ", chủ động" : "") + ").");
+        try {
+            executor.execute(() -> readFrames(link, reader, state));
+            link.drain(theirResume);
+        } finally {
+            boolean current = links.remove(link.node, link); // false: đã bị liên kết mới hơn thay thế
+            link.close();
+            if (isRunning && current) log.accept("Mất liên kết với peer " + link.node + ".");
+        }
+        return link.node;
+    }
+
+    /**
+     * Đưa liên kết vào danh sách. Hai node quay số tới nhau cùng lúc sẽ có hai liên kết: cả hai bên
+     * cùng giữ liên kết do node có tên nhỏ hơn mở. Trả về false nếu liên kết này bị bỏ.
+     */
+    private boolean register(PeerLink link) {
+        PeerLink[] loser = new PeerLink[1];
+        links.compute(link.node, (node, old) -> {
+            if (old == null || old.closed || preferred(link, old)) {
+                loser[0] = old;
+                return link;
+            }
+            loser[0] = link;
+            return old;
+        });
+        if (loser[0] != null) loser[0].close();
+        return loser[0] != link;
+    }
+
+    private boolean preferred(PeerLink candidate, PeerLink existing) {
+        if (candidate.initiator == existing.initiator) return true; // Nối lại: liên kết cũ đã hỏng
+        String opener = candidate.initiator ? nodeId : candidate.node;
+        return opener.equals(nodeId.compareTo(candidate.node) < 0 ? nodeId : candidate.node);
+    }
+
+    /**
+     * Luồng đọc của một liên kết: bỏ tin trùng, đo độ trễ liên node rồi phát tới client cục bộ
+     */
+    private void readFrames(PeerLink link, FrameReader reader, PeerState state) {
+        try {
+            while (reader.readFrame()) {
+                if (reader.type() != FrameCodec.TYPE_MESSAGE) continue;
+                synchronized (state) {
+                    if (reader.seq() <= state.lastSeq) {
+                        duplicates.increment();
+                        continue;
+                    }
+                    state.lastSeq = reader.seq();
+                }
+                latency.record((nowMicros() - reader.timestamp()) * 1000);
+                received.increment();
+                try {
+                    engine.publishFromPeer(reader.topic(), reader.key(), reader.payloadAsString());
+                } catch (IllegalArgumentException e) {
+                    log.accept("Bỏ tin từ peer " + link.node + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            if (isRunning && !link.closed) {
+                log.accept("Lỗi đọc từ peer " + link.node + ": " + e.getMessage());
+            }
+        } finally {
+            link.close(); // Luồng ghi thoát khỏi take() và dọn dẹp
+        }
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    public int peerCount() {
+        return links.size();
+    }
+
+    /**
+     * Tên các peer đang liên kết
+     */
+    public List<String> peerNodes() {
+        return List.copyOf(links.keySet());
+    }
+
+    public long relayedCount() {
+        return relayed.sum();
+    }
+
+    public long replayedCount() {
+        return replayed.sum();
+    }
+
+    public long receivedCount() {
+        return received.sum();
+    }
+
+    public long duplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Độ trễ liên node (nano giây): từ lúc publish ở node gốc tới lúc node này phát tới client cục bộ.
+     * So đồng hồ của hai máy, nên chỉ chính xác khi đồng hồ được đồng bộ (cùng máy: luôn đúng).
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    public String summary() {
+        return "Liên kết peer (" + nodeId + "): " + peerCount() + " peer, gửi " + relayedCount() + " khung (phát lại "
+                + replayedCount() + "), nhận " + receivedCount() + " tin (trùng " + duplicateCount()
+                + "); độ trễ liên node p50=" + latency.percentile(50) / 1000 + "µs p99="
+                + latency.percentile(99) / 1000 + "µs";
+    }
+
+    // --- Một tin chờ gửi tới peer: seq gốc và khung đã mã hóa (dùng chung cho mọi peer) ---
+    private record Relay(long seq, byte[] frame) {
+    }
+
+    // --- Trạng thái nhận từ một node peer: giữ qua các lần nối lại để RESUME và chống trùng ---
+    private static final class PeerState {
+        long incarnation = -1;
+        long lastSeq = 0;
+    }
+
+    // --- Một liên kết đã thiết lập: hàng đợi gửi riêng, luồng ghi là luồng đã mở liên kết ---
+    private final class PeerLink {
+        private final String node;
+        private final boolean initiator; // Node này chủ động quay số
+        private final SSLSocket socket;
+        private final OutputStream out;
+        // Peer chậm quá một hàng đợi thì ngắt: khi nối lại nó được phát lại từ relayRing, không mất tin
+        private final OutboundQueue<Relay> queue = new OutboundQueue<>(config.queueCapacity(), OverflowPolicy.DISCONNECT);
+        private volatile boolean closed = false;
+
+        PeerLink(String node, boolean initiator, SSLSocket socket, OutputStream out) {
+            this.node = node;
+            this.initiator = initiator;
+            this.socket = socket;
+            this.out = out;
+        }
+
+        /**
+         * Gọi trong khóa publish: chỉ xếp hàng. Khi đầy thì đánh dấu đóng và dừng hàng đợi ngay, còn việc đóng
+         * socket chạy trên luồng khác vì luồng ghi có thể đang kẹt giữ khóa ghi của SSLSocket với peer chậm.
+         */
+        void offer(Relay relay) {
+            if (queue.offer(relay) == OutboundQueue.Result.OVERFLOW) {
+                log.accept("Peer " + node + " quá chậm (hàng đợi đầy), ngắt liên kết để phát lại khi nối lại.");
+                closed = true;
+                queue.close();
+                Thread.ofVirtual().name("peer-abort").start(this::abort);
+            }
+        }
+
+        /**
+         * Phát lại các tin sau 'resumeFrom' (nếu > 0) rồi gửi tin live; tin live đã có trong phần phát lại bị bỏ
+         */
+        void drain(long resumeFrom) {
+            try {
+                long floor = resumeFrom > 0 ? replay(resumeFrom) : 0;
+                Relay relay;
+                while ((relay = queue.take()) != null) {
+                    if (relay.seq() <= floor) continue;
+                    out.write(relay.frame());
+                    relayed.increment();
+                    if (queue.size() == 0) out.flush(); // Gom các tin đang chờ vào một lần ghi
+                }
+            } catch (IOException e) {
+                if (isRunning && !closed) log.accept("Lỗi ghi tới peer " + node + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Ghi các tin gốc của node này có seq trong (resumeFrom, mới nhất]; trả về seq mới nhất đã xét
+         */
+        private long replay(long resumeFrom) throws IOException {
+            long latest = relayRing.latestSeq();
+            long from = resumeFrom + 1;
+            long oldest = relayRing.oldestSeq();
+            if (from < oldest && from <= latest) {
+                log.accept("Peer " + node + " đã lỡ các tin #" + from + " - #" + (oldest - 1)
+                        + " (quá cũ, không còn để phát lại).");
+                from = oldest;
+            }
+            for (long seq = from; seq <= latest; seq++) {
+                BroadcastPayload payload = relayRing.get(seq);
+                if (payload == null) continue; // seq của tin nhận từ peer khác, hoặc vừa bị đè
+                out.write(peerFrame(payload, payload.timestamp() * 1000));
+                relayed.increment();
+                replayed.increment();
+            }
+            out.flush();
+            return latest;
+        }
+
+        void close() {
+            closed = true;
+            queue.close();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Bỏ qua lỗi
+            }
+        }
+
+        /**
+         * Đóng không chờ: SO_LINGER 0 khiến SSLSocket không đợi khóa ghi để gửi close_notify mà đóng
+         * thẳng socket TCP (gửi RST); luồng ghi đang kẹt nhận lỗi và runLink dọn dẹp như thường.
+         */
+        private void abort() {
+            try {
+                socket.setSoLinger(true, 0);
+            } catch (IOException e) {
+                // Socket đã đóng
+            }
+            close();
+        }
+    }
+}
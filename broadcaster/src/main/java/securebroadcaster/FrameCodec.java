@@ -0,0 +1,183 @@
+package securebroadcaster;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FrameCodec.java
+ * Định dạng khung nhị phân (big-endian) dùng chung cho server và client:
+ *
+ *   int   length     số byte phía sau trường này (HEADER_SIZE + payload)
+ *   byte  type       loại khung (TYPE_*)
+ *   byte  flags      cờ mở rộng (FLAG_*)
+ *   long  seq        số thứ tự broadcast
+ *   long  timestamp  thời điểm server phát (epoch millis)
+ *   byte[] payload   nội dung (văn bản UTF-8 với TYPE_MESSAGE; "from-to" với TYPE_GAP, seq = to)
+ *
+ * Khi có FLAG_TOPIC, payload bắt đầu bằng topic của tin: unsigned short độ dài + topic UTF-8,
+ * phần còn lại mới là văn bản. Tin thuộc topic mặc định ("") không có phần này.
+ * Tin có khóa (FLAG_KEY: cập nhật trạng thái của một khóa, chỉ giá trị mới nhất có ý nghĩa) có thêm
+ * phần khóa cùng cách mã hóa, đứng sau phần topic và trước văn bản.
+ *
+ * Thỏa thuận: ngay sau bắt tay TLS, client gửi dòng HELLO_BINARY; server trả dòng ACK_BINARY
+ * rồi từ đó gửi khung nhị phân. Client cũ không gửi gì nên vẫn nhận dòng văn bản như trước.
+ * Client kết nối lại gửi thêm dòng "RESUME <seq cuối đã nhận>": server phát lại các tin đã lỡ
+ * từ ReplayRing/journal, hoặc gửi khung TYPE_GAP cho phần đã quá cũ. Client cũng có thể xin lịch sử
+ * từ một seq ("HISTORY SEQ <seq>") hoặc một thời điểm ("HISTORY TIME <epoch millis>").
+ * Client chỉ muốn nhận một số topic gửi "SUB <mẫu>" / "UNSUB <mẫu>" (xem TopicRegistry);
+ * kết nối chưa SUB lần nào nhận mọi topic như trước.
+ *
+ * Nén: sau HELLO_BINARY, client gửi thêm "COMPRESS DEFLATE/1 <id từ điển>" (0 = không có từ điển,
+ * xem DeflateCodec). Nếu server bật nén và từ điển khớp, nó gửi khung TYPE_CONTROL chứa ACK_COMPRESS
+ * rồi từ đó các khung đủ lớn có FLAG_DEFLATE: payload (gồm cả phần topic) là một luồng zlib.
+ * Server không hỗ trợ thì bỏ qua dòng này; client nhận được cả khung nén lẫn không nén.
+ *
+ * Heartbeat: client dùng khung nhị phân có thể gửi dòng HEARTBEAT. Khi đó server gửi khung TYPE_CONTROL
+ * chứa PING mỗi server.heartbeat.interval, client trả lời bằng dòng PONG; server
+ * ngắt kết nối nếu không nhận được gì từ client quá server.heartbeat.timeout (kết nối nửa mở, NAT đã mất...).
+ * Client cũ không gửi HEARTBEAT nên không nhận PING và không bị ngắt vì im lặng.
+ *
+ * Ảnh chụp: client gửi dòng "SNAPSHOT" (hoặc "SNAPSHOT <mẫu>") để nhận giá trị mới nhất của mọi khóa
+ * trong các topic đã đăng ký (khớp thêm mẫu nếu có), lấy từ LastValueCache của server. Các giá trị tới
+ * như khung TYPE_MESSAGE có FLAG_KEY (seq và timestamp của lần publish gốc, nên có thể nhỏ hơn seq đã thấy),
+ * theo sau là khung TYPE_CONTROL "SNAPSHOT-END <số giá trị>"; tin live tới sau đó.
+ */
+public final class FrameCodec {
+
+    public static final String HELLO_BINARY = "PROTO BINARY/1";
+    public static final String ACK_BINARY = "PROTO-OK BINARY/1";
+
+    public static final String RESUME = "RESUME";
+    public static final String HISTORY_SEQ = "HISTORY SEQ";
+    public static final String HISTORY_TIME = "HISTORY TIME";
+    public static final String COMPRESS = "COMPRESS DEFLATE/1";
+    public static final String ACK_COMPRESS = "COMPRESS-OK DEFLATE/1";
+    public static final String SUBSCRIBE = "SUB";
+    public static final String UNSUBSCRIBE = "UNSUB";
+    public static final String HEARTBEAT = "HEARTBEAT/1";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+    public static final String SNAPSHOT = "SNAPSHOT";
+    public static final String SNAPSHOT_END = "SNAPSHOT-END";
+
+    public static final byte TYPE_MESSAGE = 1;
+    public static final byte TYPE_GAP = 2;
+    public static final byte TYPE_CONTROL = 3; // Thông báo của server (vd. ACK_COMPRESS, PING), không có seq
+
+    public static final byte FLAG_TOPIC = 0x01;
+    public static final byte FLAG_DEFLATE = 0x02;
+    public static final byte FLAG_KEY = 0x04;
+    public static final int MAX_TOPIC_LENGTH = 255;
+    public static final int MAX_KEY_LENGTH = 255;
+
+    public static final int LENGTH_SIZE = 4;
+    public static final int HEADER_SIZE = 1 + 1 + 8 + 8;
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Đọc/ghi int, long big-endian trực tiếp trên mảng byte, không cấp phát
+    static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Dòng client gửi để xin phát lại các tin sau 'lastSeen'
+     */
+    public static String resumeLine(long lastSeen) {
+        return RESUME + " " + lastSeen;
+    }
+
+    /**
+     * Dòng client gửi để xin nén, kèm định danh từ điển của nó (0 nếu không có)
+     */
+    public static String compressLine(long dictionaryId) {
+        return COMPRESS + " " + dictionaryId;
+    }
+
+    /**
+     * seq trong dòng RESUME, hoặc -1 nếu không phải dòng RESUME hợp lệ
+     */
+    public static long parseResume(String line) {
+        return parseCommand(line, RESUME);
+    }
+
+    /**
+     * Số (không âm) theo sau 'command' trong dòng, hoặc -1 nếu dòng không phải lệnh đó
+     */
+    public static long parseCommand(String line, String command) {
+        if (!line.startsWith(command + " ")) return -1;
+        try {
+            long value = Long.parseLong(line.substring(command.length() + 1).trim());
+            return value >= 0 ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Tham số (chuỗi) theo sau 'command' trong dòng, hoặc null nếu dòng không phải lệnh đó
+     */
+    public static String parseArgument(String line, String command) {
+        if (!line.startsWith(command + " ")) return null;
+        String argument = line.substring(command.length() + 1).trim();
+        return argument.isEmpty() ? null : argument;
+    }
+
+    /**
+     * Thân khung có topic: unsigned short độ dài + topic UTF-8 + văn bản (dùng với FLAG_TOPIC)
+     */
+    public static byte[] withTopic(String topic, byte[] text) {
+        return prefixed(topic, text);
+    }
+
+    /**
+     * Thân khung có khóa: unsigned short độ dài + khóa UTF-8 + văn bản (dùng với FLAG_KEY, trước withTopic)
+     */
+    public static byte[] withKey(String key, byte[] text) {
+        return prefixed(key, text);
+    }
+
+    private static byte[] prefixed(String prefix, byte[] text) {
+        byte[] name = prefix.getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[2 + name.length + text.length];
+        body[0] = (byte) (name.length >>> 8);
+        body[1] = (byte) name.length;
+        System.arraycopy(name, 0, body, 2, name.length);
+        System.arraycopy(text, 0, body, 2 + name.length, text.length);
+        return body;
+    }
+
+    /**
+     * Kiểm tra khóa của tin khi publish; ném IllegalArgumentException nếu sai
+     */
+    public static void validateKey(String key) {
+        if (key.isEmpty()) throw new IllegalArgumentException("Khóa không được rỗng");
+        if (key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Khóa dài quá " + MAX_KEY_LENGTH + " byte: " + key);
+        }
+        if (key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Khóa không được chứa xuống dòng");
+        }
+    }
+
+    static String gapText(long from, long to) {
+        return from + "-" + to;
+    }
+
+    /**
+     * Tạo một khung hoàn chỉnh (gồm cả trường length)
+     */
+    public static byte[] encode(byte type, byte flags, long seq, long timestamp, byte[] payload) {
+        byte[] frame = new byte[LENGTH_SIZE + HEADER_SIZE + payload.length];
+        INT.set(frame, 0, HEADER_SIZE + payload.length);
+        frame[4] = type;
+        frame[5] = flags;
+        LONG.set(frame, 6, seq);
+        LONG.set(frame, 14, timestamp);
+        System.arraycopy(payload, 0, frame, LENGTH_SIZE + HEADER_SIZE, payload.length);
+        return frame;
+    }
+}
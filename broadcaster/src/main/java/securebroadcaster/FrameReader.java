@@ -0,0 +1,224 @@
+package securebroadcaster;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FrameReader.java
+ * Đọc dữ liệu từ server trên MỘT bộ đệm dùng lại: dòng văn bản (giai đoạn thỏa thuận
+ * và chế độ cũ) hoặc khung nhị phân. Đọc khung không cấp phát gì: các trường của khung
+ * vừa đọc được giữ trong chính đối tượng này, payload trỏ thẳng vào bộ đệm
+ * (chỉ hợp lệ tới lần đọc tiếp theo).
+ * Khung nén (FLAG_DEFLATE) được giải nén vào một bộ đệm thứ hai, cũng dùng lại; buffer() trả về
+ * bộ đệm đang chứa payload của khung vừa đọc.
+ */
+public class FrameReader {
+
+    private final InputStream in;
+    private final DeflateCodec codec; // null = không nhận khung nén
+    private byte[] buf = new byte[16 * 1024];
+    private int start = 0; // buf[start, end) là dữ liệu chưa xử lý
+    private int end = 0;
+    private byte[] inflated = new byte[0]; // Payload đã giải nén của khung nén
+
+    // Khung vừa đọc
+    private byte type;
+    private byte flags;
+    private long seq;
+    private long timestamp;
+    private byte[] payloadBuf;
+    private int payloadOffset;
+    private int payloadLength;
+    private int topicOffset;
+    private int topicLength; // 0 = topic mặc định
+    private int keyOffset;
+    private int keyLength;   // -1 = tin không có khóa
+
+    public FrameReader(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * 'codec' giải nén các khung có FLAG_DEFLATE (cần cùng từ điển với server)
+     */
+    public FrameReader(InputStream in, DeflateCodec codec) {
+        this.in = in;
+        this.codec = codec;
+    }
+
+    /**
+     * Đọc một dòng (bỏ '\n' hoặc "\r\n"). Trả về null khi hết luồng.
+     */
+    public String readLine() throws IOException {
+        int scanned = 0; // Số byte (tính từ start) đã quét mà chưa thấy '\n'
+        while (true) {
+            for (int i = start + scanned; i < end; i++) {
+                if (buf[i] == '\n') {
+                    int len = i - start;
+                    if (len > 0 && buf[i - 1] == '\r') len--;
+                    String line = new String(buf, start, len, Charset.defaultCharset());
+                    start = i + 1;
+                    return line;
+                }
+            }
+            scanned = end - start;
+            if (!fill(end - start + 1)) {
+                if (start == end) return null;
+                String line = new String(buf, start, end - start, Charset.defaultCharset());
+                start = end;
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Đọc một khung. Trả về false khi hết luồng đúng tại ranh giới khung.
+     */
+    public boolean readFrame() throws IOException {
+        if (!ensure(FrameCodec.LENGTH_SIZE)) return false;
+        int length = (int) FrameCodec.INT.get(buf, start);
+        if (length < FrameCodec.HEADER_SIZE || length > FrameCodec.MAX_FRAME_LENGTH) {
+            throw new IOException("Độ dài khung không hợp lệ: " + length);
+        }
+        if (!ensure(FrameCodec.LENGTH_SIZE + length)) {
+            throw new EOFException("Kết nối đóng giữa chừng một khung");
+        }
+        int p = start + FrameCodec.LENGTH_SIZE;
+        type = buf[p];
+        flags = buf[p + 1];
+        seq = (long) FrameCodec.LONG.get(buf, p + 2);
+        timestamp = (long) FrameCodec.LONG.get(buf, p + 10);
+        payloadBuf = buf;
+        payloadOffset = p + FrameCodec.HEADER_SIZE;
+        payloadLength = length - FrameCodec.HEADER_SIZE;
+        if ((flags & FrameCodec.FLAG_DEFLATE) != 0) {
+            inflatePayload();
+        }
+        topicLength = 0;
+        if ((flags & FrameCodec.FLAG_TOPIC) != 0) {
+            // Phần topic đứng trước văn bản: tách ra để payload chỉ còn nội dung tin
+            if (payloadLength < 2) throw new IOException("Khung thiếu phần topic");
+            topicLength = ((payloadBuf[payloadOffset] & 0xFF) << 8) | (payloadBuf[payloadOffset + 1] & 0xFF);
+            if (topicLength > payloadLength - 2) throw new IOException("Độ dài topic không hợp lệ: " + topicLength);
+            topicOffset = payloadOffset + 2;
+            payloadOffset = topicOffset + topicLength;
+            payloadLength -= 2 + topicLength;
+        }
+        keyLength = -1;
+        if ((flags & FrameCodec.FLAG_KEY) != 0) {
+            // Phần khóa đứng sau phần topic, cùng cách mã hóa
+            if (payloadLength < 2) throw new IOException("Khung thiếu phần khóa");
+            keyLength = ((payloadBuf[payloadOffset] & 0xFF) << 8) | (payloadBuf[payloadOffset + 1] & 0xFF);
+            if (keyLength > payloadLength - 2) throw new IOException("Độ dài khóa không hợp lệ: " + keyLength);
+            keyOffset = payloadOffset + 2;
+            payloadOffset = keyOffset + keyLength;
+            payloadLength -= 2 + keyLength;
+        }
+        start += FrameCodec.LENGTH_SIZE + length;
+        return true;
+    }
+
+    /**
+     * Giải nén payload của khung vừa đọc vào 'inflated' (nới gấp đôi tới khi vừa, tối đa MAX_FRAME_LENGTH)
+     */
+    private void inflatePayload() throws IOException {
+        if (codec == null) throw new IOException("Nhận khung nén nhưng chưa thỏa thuận nén");
+        if (inflated.length == 0) inflated = new byte[Math.max(1024, payloadLength * 4)];
+        int n;
+        while ((n = codec.inflate(buf, payloadOffset, payloadLength, inflated)) < 0) {
+            if (inflated.length >= FrameCodec.MAX_FRAME_LENGTH) {
+                throw new IOException("Khung giải nén vượt quá " + FrameCodec.MAX_FRAME_LENGTH + " byte");
+            }
+            inflated = new byte[Math.min(FrameCodec.MAX_FRAME_LENGTH, inflated.length * 2)];
+        }
+        payloadBuf = inflated;
+        payloadOffset = 0;
+        payloadLength = n;
+    }
+
+    public byte type() {
+        return type;
+    }
+
+    public byte flags() {
+        return flags;
+    }
+
+    public long seq() {
+        return seq;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Bộ đệm chứa payload của khung vừa đọc (dùng với payloadOffset/payloadLength)
+     */
+    public byte[] buffer() {
+        return payloadBuf;
+    }
+
+    public int payloadOffset() {
+        return payloadOffset;
+    }
+
+    public int payloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Topic của khung vừa đọc ("" nếu là topic mặc định); có cấp phát, chỉ dùng khi cần hiển thị
+     */
+    public String topic() {
+        return topicLength == 0 ? "" : new String(payloadBuf, topicOffset, topicLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Khóa của khung vừa đọc (FLAG_KEY), null nếu tin không có khóa; có cấp phát, chỉ dùng khi cần hiển thị
+     */
+    public String key() {
+        return keyLength < 0 ? null : new String(payloadBuf, keyOffset, keyLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Giải mã payload thành chuỗi (có cấp phát, chỉ dùng khi cần hiển thị)
+     */
+    public String payloadAsString() {
+        return new String(payloadBuf, payloadOffset, payloadLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean ensure(int n) throws IOException {
+        while (end - start < n) {
+            if (!fill(n)) {
+                if (start == end) return false;
+                throw new EOFException("Kết nối đóng giữa chừng một khung");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Dồn dữ liệu về đầu bộ đệm (nới rộng nếu cần chứa 'needed' byte) và đọc thêm.
+     * Trả về false khi hết luồng.
+     */
+    private boolean fill(int needed) throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (needed > buf.length || end == buf.length) {
+            byte[] bigger = new byte[Math.max(needed, buf.length * 2)];
+            System.arraycopy(buf, 0, bigger, 0, end);
+            buf = bigger;
+        }
+        int n = in.read(buf, end, buf.length - end);
+        if (n < 0) return false;
+        end += n;
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package securebroadcaster;
+
+/**
+ * FsyncPolicy.java
+ * Khi nào dữ liệu journal được ép xuống đĩa (fsync/msync).
+ */
+public enum FsyncPolicy {
+    NONE,      // Để hệ điều hành tự ghi; mất điện có thể mất các tin gần nhất
+    INTERVAL,  // Gom nhóm: một luồng nền ép định kỳ mọi tin đã ghi kể từ lần trước
+    SYNC;      // publish chỉ trả về khi tin đã xuống đĩa; các publisher đồng thời dùng chung một lần ép
+
+    /**
+     * Đọc từ cấu hình, chấp nhận cả "interval" lẫn "INTERVAL"
+     */
+    public static FsyncPolicy parse(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,135 @@
+package securebroadcaster;
+
+import javax.net.ssl.SSLSession;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HandshakeStage.java
+ * Giai đoạn bắt tay TLS tường minh, tách khỏi vòng accept và khỏi đường broadcast.
+ * Việc bắt tay (hoặc các delegated task nặng CPU của SSLEngine) chạy trên nhóm worker riêng,
+ * mỗi lần bắt tay có hạn chót; chỉ kết nối bắt tay thành công mới được đưa vào danh sách broadcast.
+ */
+public class HandshakeStage {
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final BroadcastConfig config; // Hạn chót đọc lại mỗi lần bắt tay (đổi được khi đang chạy)
+
+    // Bộ đếm xuất ra ngoài
+    private final LongAdder started = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public HandshakeStage(BroadcastConfig config) {
+        this.workers = config.threadMode().newExecutor("handshake", config.maxThreads());
+        this.timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("handshake-timer").daemon().factory());
+        this.config = config;
+    }
+
+    /**
+     * Chạy một tác vụ bắt tay trên nhóm worker (có thể ném RejectedExecutionException ở chế độ POOLED)
+     */
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Bắt đầu đếm giờ một lần bắt tay. 'onTimeout' được gọi (trên luồng hẹn giờ) nếu quá hạn.
+     */
+    public Attempt begin(Runnable onTimeout) {
+        started.increment();
+        return new Attempt(onTimeout);
+    }
+
+    public long startedCount() {
+        return started.sum();
+    }
+
+    public long succeededCount() {
+        return succeeded.sum();
+    }
+
+    /**
+     * Số lần bắt tay thành công nhờ nối lại phiên cũ (không cần trao đổi khóa đầy đủ)
+     */
+    public long resumedCount() {
+        return resumed.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public long timedOutCount() {
+        return timedOut.sum();
+    }
+
+    /**
+     * Độ trễ bắt tay thành công (nano giây)
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    public String summary() {
+        return "Bắt tay TLS: " + succeededCount() + " thành công (" + resumedCount() + " nối lại phiên), "
+                + failedCount() + " lỗi, " + timedOutCount() + " quá hạn; p50=" + latency.percentile(50) / 1_000_000 + "ms p99="
+                + latency.percentile(99) / 1_000_000 + "ms";
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        timer.shutdownNow();
+    }
+
+    // --- Một lần bắt tay: kết thúc đúng một lần (thành công, lỗi hoặc quá hạn) ---
+    public final class Attempt {
+        private final long startNanos = System.nanoTime();
+        private final long startMillis = System.currentTimeMillis();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private final ScheduledFuture<?> deadline;
+        private volatile boolean expired = false;
+
+        private Attempt(Runnable onTimeout) {
+            this.deadline = timer.schedule(() -> {
+                if (done.compareAndSet(false, true)) {
+                    expired = true;
+                    timedOut.increment();
+                    onTimeout.run();
+                }
+            }, config.handshakeTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Báo bắt tay xong. Trả về false nếu đã quá hạn (kết nối đang bị đóng, không được đăng ký).
+         */
+        public boolean succeeded(SSLSession session) {
+            if (!done.compareAndSet(false, true)) return false;
+            // Phiên được nối lại giữ thời điểm tạo của lần bắt tay đầy đủ trước đó
+            if (session.getCreationTime() < startMillis) resumed.increment();
+            deadline.cancel(false);
+            succeeded.increment();
+            latency.record(System.nanoTime() - startNanos);
+            return true;
+        }
+
+        public void failed() {
+            if (!done.compareAndSet(false, true)) return;
+            deadline.cancel(false);
+            failed.increment();
+        }
+
+        public boolean isTimedOut() {
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package securebroadcaster;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * LastValueCache.java
+ * Giá trị mới nhất của mỗi khóa (topic, khóa) từ các tin có khóa, để gửi ảnh chụp trạng thái cho client
+ * vào muộn (FrameCodec.SNAPSHOT). Giữ chính BroadcastPayload đã publish (dùng chung, mã hóa sẵn), nên
+ * gửi ảnh chụp không phải mã hóa lại.
+ * Bộ nhớ có giới hạn theo số khóa (server.lvc.entries) và số byte ước lượng (server.lvc.bytes): vượt thì
+ * loại khóa được cập nhật lâu nhất. Ghi chỉ xảy ra trong khóa publish của BroadcastEngine; ảnh chụp được đọc
+ * từ luồng ghi của các kết nối, nên dùng một ReentrantLock (luồng ảo chờ khóa không bị ghim luồng mang).
+ */
+public final class LastValueCache {
+
+    /**
+     * Khóa gộp: cùng khóa ở hai topic khác nhau là hai giá trị riêng
+     */
+    public record Key(String topic, String key) {
+    }
+
+    // Ước lượng bộ nhớ của một mục ngoài phần chuỗi: nút LinkedHashMap, Key, BroadcastPayload và các header chuỗi
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // Thứ tự chèn = thứ tự cập nhật (mỗi lần cập nhật gỡ rồi chèn lại): mục đầu là mục cũ nhất, bị loại trước
+    private final LinkedHashMap<Key, BroadcastPayload> values = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes = 0;
+    private long evicted = 0;
+    private long snapshots = 0;
+
+    public LastValueCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * false khi bộ nhớ đệm bị tắt (server.lvc.entries=0): put() không giữ gì
+     */
+    public boolean enabled() {
+        return maxEntries > 0 && maxBytes > 0;
+    }
+
+    /**
+     * Ghi giá trị mới nhất của khóa của 'payload' (bỏ qua tin không có khóa), rồi loại các khóa cũ nhất
+     * nếu vượt giới hạn. Giá trị lớn hơn cả giới hạn byte không được giữ (và không đẩy khóa khác ra);
+     * giá trị cũ của chính khóa đó bị bỏ vì đã lỗi thời.
+     */
+    public void put(BroadcastPayload payload) {
+        Key key = payload.conflationKey();
+        if (key == null || !enabled()) return;
+        long weight = weight(payload);
+        lock.lock();
+        try {
+            BroadcastPayload old = values.remove(key);
+            if (old != null) bytes -= weight(old);
+            if (weight > maxBytes) {
+                if (old != null) evicted++;
+                return;
+            }
+            values.put(key, payload);
+            bytes += weight;
+            Iterator<BroadcastPayload> eldest = values.values().iterator();
+            while (values.size() > maxEntries || bytes > maxBytes) {
+                BroadcastPayload victim = eldest.next();
+                eldest.remove();
+                bytes -= weight(victim);
+                evicted++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Các giá trị hiện có thuộc topic thỏa 'topicFilter', từ khóa cập nhật lâu nhất tới mới nhất
+     */
+    public List<BroadcastPayload> snapshot(Predicate<String> topicFilter) {
+        List<BroadcastPayload> out = new ArrayList<>();
+        if (!enabled()) return out;
+        lock.lock();
+        try {
+            snapshots++;
+            for (BroadcastPayload payload : values.values()) {
+                if (topicFilter.test(payload.topic())) out.add(payload);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return out;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return values.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Số byte ước lượng đang giữ (chuỗi topic, khóa, nội dung và chi phí mỗi mục)
+     */
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Số khóa đã bị loại vì vượt giới hạn
+     */
+    public long evictedCount() {
+        lock.lock();
+        try {
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Số ảnh chụp đã gửi cho client
+     */
+    public long snapshotCount() {
+        lock.lock();
+        try {
+            return snapshots;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long weight(BroadcastPayload payload) {
+        Key key = payload.conflationKey();
+        return ENTRY_OVERHEAD + 2L * (key.topic().length() + key.key().length() + payload.message().length());
+    }
+}
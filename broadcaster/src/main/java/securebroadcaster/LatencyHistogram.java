@@ -0,0 +1,72 @@
+package securebroadcaster;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram.java
+ * Histogram độ trễ kiểu HDR (log-tuyến tính): mỗi khoảng lũy thừa 2 chia thành 64 ô,
+ * sai số tương đối ~1.6%. Ghi nhận không cấp phát và an toàn cho nhiều luồng.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;          // 64 ô mỗi khoảng
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Ghi một giá trị (thường là nano giây). Giá trị âm được tính là 0.
+     */
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        return total;
+    }
+
+    /**
+     * Giá trị tại phân vị p (0..100), ví dụ 99.9. Trả về 0 nếu chưa có dữ liệu.
+     */
+    public long percentile(double p) {
+        long total = count();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return valueAt(i);
+        }
+        return valueAt(BUCKETS - 1);
+    }
+
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) return valueAt(i);
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * Giá trị đại diện (điểm giữa) của một ô
+     */
+    static long valueAt(int index) {
+        if (index < 2 * SUB_COUNT) return index;
+        int shift = index / SUB_COUNT - 1;
+        long lower = (long) (index % SUB_COUNT + SUB_COUNT) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+}
@@ -0,0 +1,174 @@
+package securebroadcaster;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LogView.java
+ * Khung hiển thị nhật ký/tin nhắn chịu được tốc độ hàng nghìn dòng mỗi giây (dùng chung cho SecureClient và SecureServer).
+ *  - Luồng mạng chỉ append() vào một hàng đợi không khóa có giới hạn, không đụng tới Swing.
+ *  - EDT lấy cả lô mỗi khung hình (tối đa FRAMES_PER_SECOND lần/giây) bằng một javax.swing.Timer,
+ *    thay vì một invokeLater cho mỗi dòng làm hàng đợi sự kiện phình ra không giới hạn.
+ *  - Chỉ giữ 'capacity' dòng gần nhất trong một vòng đệm; JList chỉ vẽ các dòng đang nhìn thấy.
+ *  - Dòng cũ bị bỏ (hàng đợi đầy trong một khung hình) và dòng cũ bị đẩy khỏi vòng đệm được đếm ở thanh trạng thái.
+ */
+public class LogView extends JPanel {
+
+    public static final int DEFAULT_CAPACITY = 5000;
+    private static final int FRAMES_PER_SECOND = 30;
+
+    private final int capacity;
+    private final RingListModel model;
+    private final JList<String> list;
+    private final JLabel status;
+
+    // Phía luồng mạng: hàng đợi không khóa, giới hạn bằng bộ đếm (vượt thì bỏ dòng cũ nhất: nó cũng sẽ bị đẩy khỏi vòng đệm)
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+
+    // Chỉ EDT dùng
+    private long trimmed = 0;
+    private long shownDropped = -1;
+    private long shownTrimmed = -1;
+
+    public LogView(int capacity) {
+        super(new BorderLayout());
+        this.capacity = Math.max(1, capacity);
+        this.model = new RingListModel(this.capacity);
+        this.list = new JList<>(model) {
+            // Dòng rộng bằng khung nhìn; dòng quá dài bị cắt, di chuột để xem đầy đủ
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                return true;
+            }
+
+            @Override
+            public String getToolTipText(MouseEvent e) {
+                int index = locationToIndex(e.getPoint());
+                return index >= 0 ? model.getElementAt(index) : null;
+            }
+        };
+        // Kích thước dòng cố định: JList không phải đo từng dòng mỗi lần mô hình thay đổi,
+        // nên cuộn và vẽ chỉ tốn theo số dòng đang nhìn thấy
+        list.setPrototypeCellValue("Server [topic]: Ág");
+        list.setFixedCellWidth(1);
+        ToolTipManager.sharedInstance().registerComponent(list);
+        status = new JLabel(" ");
+        status.setFont(status.getFont().deriveFont(Font.PLAIN, status.getFont().getSize2D() - 1f));
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        add(status, BorderLayout.SOUTH);
+
+        Timer timer = new Timer(1000 / FRAMES_PER_SECOND, e -> drain());
+        timer.setCoalesce(true); // EDT bận thì gộp các nhịp lỡ thành một
+        timer.start();
+    }
+
+    /**
+     * Thêm một dòng; gọi được từ mọi luồng, không chặn và không cấp phát sự kiện Swing
+     */
+    public void append(String line) {
+        pending.add(line);
+        // Đầy: bỏ dòng cũ nhất đang chờ (dòng mới nhất, thường là lỗi vừa xảy ra, luôn được giữ).
+        // poll() trả về null nghĩa là EDT vừa lấy hết, bộ đếm đã được trừ ở drain()
+        if (pendingCount.incrementAndGet() > capacity && pending.poll() != null) {
+            pendingCount.decrementAndGet();
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Số dòng cũ bị bỏ vì dòng mới tới nhanh hơn tốc độ vẽ
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Chạy trên EDT mỗi khung hình: đưa cả lô dòng mới vào vòng đệm rồi cuộn xuống (nếu đang ở cuối)
+     */
+    private void drain() {
+        int n = pendingCount.get();
+        if (n > 0) {
+            boolean follow = isAtBottom();
+            String[] batch = new String[n];
+            int count = 0;
+            String line;
+            while (count < n && (line = pending.poll()) != null) {
+                batch[count++] = line;
+            }
+            pendingCount.addAndGet(-count);
+            trimmed += model.addAll(batch, count);
+            if (follow) list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+        updateStatus();
+    }
+
+    private boolean isAtBottom() {
+        if (model.getSize() == 0) return true;
+        int last = list.getLastVisibleIndex();
+        return last < 0 || last >= model.getSize() - 1;
+    }
+
+    private void updateStatus() {
+        long d = dropped.sum();
+        if (d == shownDropped && trimmed == shownTrimmed) return;
+        shownDropped = d;
+        shownTrimmed = trimmed;
+        StringBuilder text = new StringBuilder("Hiển thị tối đa " + capacity + " dòng gần nhất");
+        if (trimmed > 0) text.append(" · ").append(trimmed).append(" dòng cũ đã bị ẩn");
+        if (d > 0) text.append(" · bỏ qua ").append(d).append(" dòng (tới quá nhanh)");
+        status.setText(text.toString());
+    }
+
+    // --- Mô hình dữ liệu cho JList: vòng đệm cố định, dòng mới đẩy dòng cũ nhất ra ---
+    private static final class RingListModel extends AbstractListModel<String> {
+        private final String[] items;
+        private int head = 0; // Vị trí dòng cũ nhất
+        private int size = 0;
+
+        RingListModel(int capacity) {
+            this.items = new String[capacity];
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return items[(head + index) % items.length];
+        }
+
+        /**
+         * Thêm 'count' dòng, báo JList đúng một lần cho phần bị đẩy ra và một lần cho phần thêm vào.
+         * Trả về số dòng cũ đã bị đẩy ra (kể cả dòng mới bị đẩy ra ngay khi lô lớn hơn vòng đệm).
+         */
+        int addAll(String[] batch, int count) {
+            int skip = Math.max(0, count - items.length); // Lô lớn hơn vòng đệm: chỉ giữ phần cuối
+            int added = count - skip;
+            int evicted = Math.max(0, size + added - items.length);
+            if (evicted > 0) {
+                for (int i = 0; i < evicted; i++) {
+                    items[(head + i) % items.length] = null;
+                }
+                head = (head + evicted) % items.length;
+                size -= evicted;
+                fireIntervalRemoved(this, 0, evicted - 1);
+            }
+            int first = size;
+            for (int i = skip; i < count; i++) {
+                items[(head + size) % items.length] = batch[i];
+                size++;
+            }
+            fireIntervalAdded(this, first, size - 1);
+            return evicted + skip;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package securebroadcaster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MetricsEndpoint.java
+ * Trang số liệu dạng văn bản: GET http://127.0.0.1:<server.metrics.http>/metrics trả về BroadcastMonitor.text().
+ * Chỉ lắng nghe trên địa chỉ loopback (không có xác thực), một luồng xử lý của HttpServer trong JDK.
+ */
+public class MetricsEndpoint {
+
+    private final HttpServer server;
+
+    private MetricsEndpoint(HttpServer server) {
+        this.server = server;
+    }
+
+    public static MetricsEndpoint start(int port, BroadcastMonitor monitor) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, monitor));
+        server.start();
+        return new MetricsEndpoint(server);
+    }
+
+    private static void respond(HttpExchange exchange, BroadcastMonitor monitor) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = monitor.text().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
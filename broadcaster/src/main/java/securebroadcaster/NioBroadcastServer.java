@@ -0,0 +1,833 @@
+package securebroadcaster;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * NioBroadcastServer.java
+ * Lõi máy chủ không chặn (non-blocking) dùng SSLEngine + SocketChannel.
+ * Một luồng accept và một nhóm nhỏ cố định các event-loop (mỗi loop một Selector)
+ * đảm nhận bắt tay TLS, wrap/unwrap, đọc và ghi cho tất cả client,
+ * thay cho mô hình "một luồng cho mỗi client".
+ * Các delegated task nặng CPU của bắt tay chạy trên HandshakeStage để không chặn event-loop;
+ * kết nối chỉ được đưa vào danh sách broadcast sau khi bắt tay xong.
+ * Mỗi event-loop là một shard fan-out (FanOutShards): broadcast được giao cho từng loop một lần,
+ * loop tự xếp hàng và mã hóa TLS cho các kết nối của mình, song song với các loop khác.
+ * Khi bật gom nhóm (server.batch), nhiều tin đang chờ của một kết nối được chép chung vào bộ đệm tạm
+ * và wrap thành một bản ghi TLS; kết nối có ít tin chờ được hoãn tối đa 'linger' để gom thêm.
+ * Heartbeat của các kết nối đã xin (FrameCodec.HEARTBEAT) do bánh xe hẹn giờ (TimerWheel) của event-loop
+ * sở hữu chúng quản lý: mỗi kết nối một nút, không có bộ hẹn giờ hay tác vụ riêng cho từng kết nối.
+ */
+public class NioBroadcastServer implements BroadcastTransport {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int MAX_LINE = 4096; // Dòng điều khiển client gửi lên dài nhất
+    private static final long HEARTBEAT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Supplier<SSLContext> sslContext; // Lấy lại cho mỗi kết nối: keystore nạp lại chỉ áp dụng cho bắt tay mới
+    private final BroadcastConfig config;
+    private final Consumer<String> log;
+    private final EventLoop[] loops;
+    private final ExecutionMode threadMode;
+    private final HandshakeStage handshakes;
+    private final BroadcastHistory history;
+    private final DeflateCodec compression; // null = không nén
+    private final BroadcastMetrics metrics;
+    private final WriteStats writeStats = new WriteStats();
+
+    private volatile boolean isRunning = false;
+    private volatile ServerSocketChannel serverChannel; // Đổi khi rebind
+    private Thread acceptThread;
+    private int nextLoop = 0; // Chỉ luồng accept dùng, không cần đồng bộ
+
+    // Tất cả kết nối đã bắt tay xong (để đếm client); kết nối đang bắt tay chỉ nằm trong Selector
+    private final SlotRegistry<NioConnection> connections = new SlotRegistry<>();
+
+    // Mỗi event-loop một shard, mỗi shard một chỉ mục topic -> kết nối của loop đó
+    private FanOutShards<NioConnection> shards;
+
+    public NioBroadcastServer(Supplier<SSLContext> sslContext, BroadcastConfig config, HandshakeStage handshakes,
+                              BroadcastHistory history, DeflateCodec compression, BroadcastMetrics metrics,
+                              Consumer<String> log) {
+        this.history = history;
+        this.compression = compression;
+        this.metrics = metrics;
+        this.sslContext = sslContext;
+        this.handshakes = handshakes;
+        this.config = config;
+        this.log = log;
+        this.loops = new EventLoop[Math.max(1, config.loops())];
+        this.threadMode = config.threadMode();
+    }
+
+    // --- Cấu hình đọc lại mỗi lần dùng: các khóa này đổi được khi đang chạy (BroadcastConfig.RELOADABLE) ---
+
+    /**
+     * Số tin tối đa trong một bản ghi TLS (1 = không gom)
+     */
+    private int batchMax() {
+        return config.batch() ? Math.max(1, config.batchMax()) : 1;
+    }
+
+    /**
+     * Thời gian hoãn tối đa để gom thêm tin (0 = không hoãn)
+     */
+    private long lingerNanos() {
+        return config.batch() ? TimeUnit.MILLISECONDS.toNanos(config.batchLingerMillis()) : 0;
+    }
+
+    /**
+     * Mở cổng và khởi động luồng accept cùng các event-loop
+     */
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.port()));
+        isRunning = true;
+
+        // Event-loop luôn là luồng hệ điều hành: số lượng cố định và không bao giờ nhàn rỗi lâu
+        Executor[] executors = new Executor[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(Selector.open());
+            executors[i] = loops[i]::execute;
+        }
+        shards = new FanOutShards<>(executors, metrics.fanOutLatency());
+        for (int i = 0; i < loops.length; i++) {
+            loops[i].shard = shards.shard(i);
+            loops[i].thread = Thread.ofPlatform().name("nio-loop-" + i).start(loops[i]);
+        }
+
+        // accept() chặn nên chạy được trên luồng ảo
+        acceptThread = threadMode.startThread("nio-accept", this::acceptLoop);
+    }
+
+    /**
+     * Vòng lặp accept: nhận kết nối rồi chia đều (round-robin) cho các event-loop
+     */
+    private void acceptLoop() {
+        while (isRunning) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                metrics.accepted();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                loop.register(channel);
+            } catch (ClosedChannelException e) {
+                if (!isRunning) break; // serverChannel đã bị đóng trong stop()
+                // Cổng cũ vừa được đóng sau rebind: nhận tiếp trên cổng mới
+            } catch (IOException e) {
+                if (isRunning) {
+                    log.accept("Lỗi Socket: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gửi một payload (đã mã hóa sẵn, dùng chung) tới các client đăng ký topic của nó.
+     * Mỗi kết nối chỉ giữ tham chiếu tới payload; chỉ phần mã hóa TLS là riêng từng client
+     * và chạy trên event-loop sở hữu kết nối.
+     */
+    @Override
+    public int broadcast(BroadcastPayload payload) {
+        return shards.broadcast(payload.topic(), connection -> connection.deliver(payload));
+    }
+
+    @Override
+    public int clientCount() {
+        return connections.size();
+    }
+
+    @Override
+    public WriteStats writeStats() {
+        return writeStats;
+    }
+
+    @Override
+    public void queueDepths(IntConsumer action) {
+        connections.forEach(connection -> action.accept(connection.outbound.size()));
+    }
+
+    @Override
+    public void rebind(int port) throws IOException {
+        ServerSocketChannel fresh = ServerSocketChannel.open();
+        try {
+            fresh.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            fresh.close();
+            throw e;
+        }
+        ServerSocketChannel old = serverChannel;
+        serverChannel = fresh;
+        old.close(); // Luồng accept đang chờ trên cổng cũ thoát ra và chuyển sang cổng mới
+    }
+
+    /**
+     * Dừng máy chủ: đóng cổng, đóng mọi kết nối và dừng các event-loop
+     */
+    @Override
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            log.accept("Lỗi khi đóng cổng: " + e.getMessage());
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+        for (EventLoop loop : loops) {
+            if (loop == null) continue;
+            try {
+                loop.thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // --- Event-loop: một Selector, một luồng, sở hữu các kết nối được gán ---
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private Thread thread;
+        private FanOutShards.Shard<NioConnection> shard;
+
+        // Bộ đệm tạm dùng chung cho mọi kết nối của loop: chép một đoạn payload vào đây rồi wrap
+        private ByteBuffer staging;
+
+        // Kết nối vừa nhận tin trong lượt tác vụ này: bơm một lần sau khi chạy hết tác vụ,
+        // nên nhiều broadcast dồn lại chỉ tốn một lượt wrap/ghi cho mỗi kết nối
+        private final List<NioConnection> dirty = new ArrayList<>();
+
+        // Kết nối đang hoãn ghi để gom nhóm, theo thứ tự hạn chót (mọi kết nối cùng một 'linger')
+        private final ArrayDeque<NioConnection> lingering = new ArrayDeque<>();
+
+        // Hạn heartbeat của các kết nối thuộc loop (trống khi tắt heartbeat); 'now' lấy một lần mỗi vòng lặp
+        private final TimerWheel<NioConnection> wheel;
+        private long now = System.nanoTime();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+            this.wheel = new TimerWheel<>(HEARTBEAT_TICK_NANOS, TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(config.heartbeatIntervalMillis(), config.heartbeatTimeoutMillis())), now);
+        }
+
+        /**
+         * Đưa một tác vụ vào loop (an toàn từ mọi luồng) và đánh thức Selector
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SSLEngine engine = sslContext.get().createSSLEngine();
+                    engine.setUseClientMode(false);
+                    if (staging == null) {
+                        staging = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                    }
+                    NioConnection connection = new NioConnection(this, channel, engine);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connection.attempt = handshakes.begin(() -> execute(() -> connection.timeout()));
+                    engine.beginHandshake();
+                } catch (IOException e) {
+                    log.accept("Lỗi khi đăng ký client: " + e.getMessage());
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Bỏ qua lỗi
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning) {
+                    select();
+                    now = System.nanoTime();
+                    wheel.advance(now, NioConnection::onHeartbeat);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    for (NioConnection connection : dirty) {
+                        connection.dirty = false;
+                        if (!connection.linger()) connection.pumpSafely();
+                    }
+                    dirty.clear();
+                    flushLingering(System.nanoTime());
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) continue;
+                        if (key.isWritable()) connection.onWritable();
+                        if (key.isValid() && key.isReadable()) connection.onReadable();
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (isRunning) {
+                    log.accept("Lỗi event-loop: " + e.getMessage());
+                }
+            } finally {
+                // Đóng tất cả kết nối thuộc loop này
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioConnection connection) {
+                        connection.close(true);
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // Bỏ qua lỗi
+                }
+            }
+        }
+
+        /**
+         * Chờ sự kiện; nếu có kết nối đang hoãn ghi thì chỉ chờ tới hạn chót sớm nhất,
+         * nếu có hạn heartbeat thì chỉ chờ tới tick kế tiếp của bánh xe
+         */
+        private void select() throws IOException {
+            long time = System.nanoTime();
+            long wait = -1; // -1 = chờ tới khi có sự kiện
+            NioConnection first = lingering.peekFirst();
+            if (first != null) wait = Math.max(0, first.lingerDeadline - time);
+            long tick = wheel.nanosToNextTick(time);
+            if (tick >= 0 && (wait < 0 || tick < wait)) wait = tick;
+            if (wait < 0) {
+                selector.select();
+            } else if (wait == 0) {
+                selector.selectNow();
+            } else {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            }
+        }
+
+        /**
+         * Bơm các kết nối đã hết thời gian hoãn
+         */
+        private void flushLingering(long now) {
+            NioConnection connection;
+            while ((connection = lingering.peekFirst()) != null && connection.lingerDeadline - now <= 0) {
+                lingering.pollFirst();
+                connection.lingering = false;
+                connection.pumpSafely();
+            }
+        }
+    }
+
+    // --- Một kết nối TLS không chặn ---
+    private final class NioConnection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        private final String address;
+        private SelectionKey key;
+
+        // netIn/netOut: dữ liệu đã mã hóa (luôn ở chế độ ghi); appIn: dữ liệu đã giải mã
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        private ByteBuffer appIn;
+
+        // Hàng đợi gửi có giới hạn; 'inFlight' là các tin đang được mã hóa dở (đã lấy khỏi hàng đợi),
+        // 'currentOffset' là số byte đã mã hóa của tin đầu
+        // Tin có khóa gộp: tin mới thay tin chưa gửi cùng khóa (bản mới xếp vào cuối)
+        private final OutboundQueue<BroadcastPayload> outbound = new OutboundQueue<>(config.queueCapacity(),
+                config.overflowPolicy(), BroadcastPayload::conflationKey);
+        private final ArrayDeque<BroadcastPayload> inFlight = new ArrayDeque<>(4);
+        private int currentOffset;
+        private WireFormat format = WireFormat.LINE;
+        private boolean binaryRequested = false;   // Client đã gửi HELLO_BINARY
+        private boolean compressAccepted = false;  // Đã nhận lời xin nén (ACK đã/đang xếp hàng)
+        private final Subscriptions<NioConnection> subscriptions;
+        private final ReplayCursor cursor;
+
+        // Dòng điều khiển client gửi lên đang đọc dở
+        private byte[] lineBuf = new byte[128];
+        private int lineLength = 0;
+        private boolean closed = false;
+        private boolean tooSlow = false; // Bị ngắt vì hàng đợi đầy (OverflowPolicy.DISCONNECT)
+        private boolean dirty = false; // Đang nằm trong loop.dirty
+        private boolean lingering = false; // Đang nằm trong loop.lingering
+        private long lingerDeadline;
+
+        // Heartbeat (khi client đã xin): nút trong loop.wheel, lần cuối nhận dữ liệu và lần cuối gửi PING
+        private TimerWheel.Timeout<NioConnection> heartbeat;
+        private long lastRead;
+        private long lastPing;
+
+        // Trạng thái bắt tay: chỉ event-loop đọc/ghi
+        private HandshakeStage.Attempt attempt;
+        private boolean handshakeDone = false;
+        private long slot; // Handle trong 'connections' (hợp lệ khi handshakeDone)
+        private boolean tasksRunning = false;
+
+        NioConnection(EventLoop loop, SocketChannel channel, SSLEngine engine) {
+            this.loop = loop;
+            this.channel = channel;
+            this.engine = engine;
+            this.address = String.valueOf(channel.socket().getInetAddress());
+            SSLSession session = engine.getSession();
+            this.netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+            this.netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+            this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+            this.subscriptions = new Subscriptions<>(loop.shard.subscribers(), this);
+            this.cursor = new ReplayCursor(history, subscriptions);
+        }
+
+        /**
+         * Gọi trên event-loop sở hữu kết nối (shard của nó): xếp tin vào hàng đợi;
+         * loop mã hóa và ghi sau khi chạy hết các tác vụ đang chờ
+         */
+        void deliver(BroadcastPayload payload) {
+            if (closed) return;
+            OutboundQueue.Result result = outbound.offer(payload);
+            metrics.enqueued(result);
+            if (result == OutboundQueue.Result.OVERFLOW) {
+                log.accept("Client " + address() + " quá chậm (hàng đợi đầy), ngắt kết nối.");
+                tooSlow = true;
+                close(false);
+                return;
+            }
+            markDirty();
+        }
+
+        /**
+         * Đưa kết nối vào danh sách loop bơm sau khi chạy hết các tác vụ đang chờ
+         */
+        private void markDirty() {
+            if (!dirty) {
+                dirty = true;
+                loop.dirty.add(this);
+            }
+        }
+
+        /**
+         * Gọi trên event-loop: xếp ACK, mốc phát lại hoặc PING vào làn điều khiển (không bị bỏ khi hàng đợi đầy)
+         */
+        private void control(BroadcastPayload payload) {
+            if (outbound.offerControl(payload) == OutboundQueue.Result.OVERFLOW) {
+                log.accept("Client " + address() + " gửi dồn quá nhiều yêu cầu, ngắt kết nối.");
+                close(false);
+            }
+        }
+
+        /**
+         * Gom nhóm: hoãn ghi nếu hàng đợi còn ít hơn một nhóm đầy, để các tin tới trong 'linger'
+         * đi chung một bản ghi TLS. Trả về true nếu kết nối đang được hoãn (loop sẽ bơm khi hết hạn).
+         */
+        boolean linger() {
+            if (outbound.size() >= batchMax()) return false; // Đủ một nhóm: ghi ngay
+            if (lingering) return true;
+            long lingerNanos = lingerNanos();
+            if (lingerNanos == 0 || !handshakeDone) return false;
+            lingering = true;
+            lingerDeadline = System.nanoTime() + lingerNanos;
+            loop.lingering.addLast(this);
+            return true;
+        }
+
+        void onReadable() {
+            try {
+                if (channel.read(netIn) < 0) {
+                    close(false);
+                    return;
+                }
+                lastRead = loop.now;
+                pump();
+            } catch (IOException e) {
+                if (isRunning) {
+                    log.accept("Client " + address() + " ngắt kết nối đột ngột.");
+                }
+                close(false);
+            }
+        }
+
+        void onWritable() {
+            pumpSafely();
+        }
+
+        /**
+         * Hết hạn bắt tay (gọi trên event-loop)
+         */
+        void timeout() {
+            if (closed || handshakeDone) return;
+            log.accept("Bắt tay TLS với " + address() + " quá thời gian.");
+            close(false);
+        }
+
+        /**
+         * Tới hạn heartbeat (gọi trên event-loop từ loop.wheel): ngắt nếu client im lặng quá lâu,
+         * xếp PING nếu đã tới lượt, rồi đặt hạn kế tiếp. PING đi làn điều khiển: không bị bỏ hay tính là
+         * tràn khi hàng đợi dữ liệu đầy, và vẫn chỉ được mã hóa sau khi tin đang dở đã ghi xong.
+         */
+        void onHeartbeat() {
+            if (closed) return;
+            if (!config.heartbeat()) {
+                heartbeat = null; // Heartbeat vừa bị tắt: bỏ nút khỏi bánh xe
+                return;
+            }
+            long heartbeatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.heartbeatIntervalMillis());
+            long heartbeatTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.heartbeatTimeoutMillis());
+            long now = loop.now;
+            if (now - lastRead >= heartbeatTimeoutNanos) {
+                log.accept("Client " + address() + " không phản hồi heartbeat quá "
+                        + TimeUnit.NANOSECONDS.toMillis(heartbeatTimeoutNanos) + " ms, ngắt kết nối.");
+                metrics.idleDisconnected();
+                close(false);
+                return;
+            }
+            if (now - lastPing >= heartbeatIntervalNanos) {
+                lastPing = now;
+                metrics.pinged();
+                control(BroadcastPayload.PING);
+                if (closed) return;
+                markDirty(); // Loop bơm kết nối sau khi chạy hết tác vụ
+            }
+            loop.wheel.schedule(heartbeat, Math.min(lastPing + heartbeatIntervalNanos, lastRead + heartbeatTimeoutNanos));
+        }
+
+        private void pumpSafely() {
+            try {
+                if (!closed) pump();
+            } catch (IOException e) {
+                if (isRunning) {
+                    log.accept("Lỗi I/O với client " + address() + ": " + e.getMessage());
+                }
+                close(false);
+            }
+        }
+
+        /**
+         * Chạy máy trạng thái của SSLEngine cho tới khi cần thêm dữ liệu từ mạng
+         * hoặc bộ đệm gửi của socket bị đầy
+         */
+        private void pump() throws IOException {
+            boolean progress = true;
+            while (progress && !closed) {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK -> {
+                        runDelegatedTasks();
+                        progress = false;
+                    }
+                    case NEED_WRAP -> progress = wrap(EMPTY);
+                    case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> progress = unwrap();
+                    default -> {
+                        if (!handshakeDone && !onHandshakeFinished()) return;
+                        // Đã bắt tay xong: đọc dữ liệu client gửi và ghi hàng đợi broadcast
+                        boolean read = unwrap();
+                        boolean wrote = wrapOutbound();
+                        progress = read || wrote;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Chuyển các delegated task (kiểm tra chứng chỉ, trao đổi khóa...) sang HandshakeStage.
+         * Trong lúc chờ, kết nối không đọc/ghi; xong thì quay lại event-loop và bơm tiếp.
+         */
+        private void runDelegatedTasks() {
+            if (tasksRunning) return;
+            tasksRunning = true;
+            if (key.isValid()) key.interestOps(0); // Tránh Selector báo OP_READ liên tục khi chưa xử lý được
+            Runnable drain = () -> {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                loop.execute(() -> {
+                    tasksRunning = false;
+                    pumpSafely();
+                    if (!closed && key.isValid() && !tasksRunning) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                    }
+                });
+            };
+            try {
+                handshakes.execute(drain);
+            } catch (RejectedExecutionException e) {
+                drain.run(); // Nhóm worker đã đầy: chạy tại chỗ như trước
+            }
+        }
+
+        /**
+         * Bắt tay vừa xong: đưa kết nối vào danh sách broadcast.
+         * Trả về false nếu đã quá hạn (kết nối đang bị đóng).
+         */
+        private boolean onHandshakeFinished() {
+            if (!attempt.succeeded(engine.getSession())) {
+                close(false);
+                return false;
+            }
+            handshakeDone = true;
+            slot = connections.add(this);
+            subscriptions.join();
+            log.accept("Client đã kết nối: " + address());
+            return true;
+        }
+
+        private boolean unwrap() throws IOException {
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            switch (result.getStatus()) {
+                case BUFFER_UNDERFLOW -> {
+                    // Chưa đủ một bản ghi TLS; nới bộ đệm nếu gói tin lớn hơn dung lượng
+                    int needed = engine.getSession().getPacketBufferSize();
+                    if (netIn.capacity() < needed) {
+                        netIn = enlarge(netIn, needed, true);
+                    }
+                    return false;
+                }
+                case BUFFER_OVERFLOW -> {
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize(), false);
+                    return true;
+                }
+                case CLOSED -> {
+                    close(false);
+                    return false;
+                }
+                default -> {
+                    readLines();
+                    return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+                }
+            }
+        }
+
+        /**
+         * Tách appIn thành các dòng điều khiển của client (vd. yêu cầu giao thức nhị phân)
+         */
+        private void readLines() {
+            appIn.flip();
+            while (appIn.hasRemaining()) {
+                byte b = appIn.get();
+                if (b == '\n') {
+                    int len = lineLength;
+                    if (len > 0 && lineBuf[len - 1] == '\r') len--;
+                    onLine(new String(lineBuf, 0, len, StandardCharsets.UTF_8));
+                    lineLength = 0;
+                } else if (lineLength < MAX_LINE) {
+                    if (lineLength == lineBuf.length) {
+                        lineBuf = Arrays.copyOf(lineBuf, Math.min(MAX_LINE, lineBuf.length * 2));
+                    }
+                    lineBuf[lineLength++] = b;
+                }
+                // Dòng dài quá MAX_LINE: phần thừa bị bỏ
+            }
+            appIn.clear();
+        }
+
+        private void onLine(String line) {
+            if (FrameCodec.HELLO_BINARY.equals(line) && !binaryRequested) {
+                // Trả lời bằng dòng ACK; wrapOutbound sẽ chuyển định dạng ngay sau dòng đó
+                binaryRequested = true;
+                control(BroadcastPayload.upgrade(WireFormat.BINARY));
+                return;
+            }
+            // Client xin nén (sau HELLO_BINARY); bỏ qua nếu server tắt nén hoặc từ điển không khớp
+            long dictionaryId = FrameCodec.parseCommand(line, FrameCodec.COMPRESS);
+            if (dictionaryId >= 0) {
+                if (binaryRequested && !compressAccepted && compression != null
+                        && compression.accepts(dictionaryId)) {
+                    compressAccepted = true;
+                    control(BroadcastPayload.upgrade(WireFormat.DEFLATE));
+                }
+                return;
+            }
+            // Client xin heartbeat (sau HELLO_BINARY): PONG chỉ để báo còn sống, lastRead đã được cập nhật
+            if (FrameCodec.HEARTBEAT.equals(line)) {
+                if (binaryRequested && heartbeat == null && config.heartbeat()) {
+                    heartbeat = TimerWheel.timeout(this);
+                    lastPing = loop.now;
+                    loop.wheel.schedule(heartbeat, lastPing + TimeUnit.MILLISECONDS.toNanos(config.heartbeatIntervalMillis()));
+                }
+                return;
+            }
+            if (FrameCodec.PONG.equals(line)) return;
+            // Client chọn topic muốn nhận (SUB/UNSUB)
+            if (subscriptions.onLine(line)) return;
+            // Client kết nối lại xin các tin đã lỡ (hoặc xin lịch sử); wrapOutbound sẽ phát lại đúng thứ tự
+            BroadcastPayload request = history.replayRequest(line);
+            if (request != null) {
+                control(request);
+            }
+        }
+
+        /**
+         * Mã hóa phần tiếp theo của tin đầu hàng đợi (nếu bộ đệm mạng đã trống).
+         * Payload dùng chung không bị thay đổi: chỉ chép một đoạn vào bộ đệm tạm của loop.
+         * Khi gom nhóm, chép thêm các tin kế tiếp (tối đa batchMax tin, tới khi đầy bộ đệm) để cả nhóm
+         * thành một bản ghi TLS.
+         */
+        private boolean wrapOutbound() throws IOException {
+            if (inFlight.isEmpty()) {
+                BroadcastPayload next = cursor.next(outbound); // Tin phát lại (nếu có) trước, rồi tới hàng đợi live
+                if (next == null) return false;
+                inFlight.add(next);
+                currentOffset = 0;
+            }
+            if (!flushNet()) return false;
+
+            ByteBuffer staging = loop.staging;
+            staging.clear();
+            int offset = currentOffset;
+            for (BroadcastPayload payload : inFlight) {
+                if (!staging.hasRemaining()) break;
+                payload.copyTo(format, staging, offset);
+                offset = 0;
+            }
+            // Không gom qua tin nâng cấp: các tin sau nó dùng định dạng khác
+            int batchMax = batchMax();
+            while (inFlight.size() < batchMax && staging.hasRemaining() && inFlight.peekLast().upgradeTo() == null) {
+                BroadcastPayload next = cursor.next(outbound);
+                if (next == null) break;
+                inFlight.add(next);
+                next.copyTo(format, staging, 0);
+            }
+            staging.flip();
+            boolean progress = wrap(staging);
+            if (staging.position() > 0) writeStats.record();
+
+            // Bỏ khỏi inFlight các tin đã mã hóa hết; tin mã hóa dở giữ lại cùng số byte đã mã hóa
+            int consumed = staging.position();
+            while (consumed > 0) {
+                BroadcastPayload head = inFlight.peekFirst();
+                int left = head.length(format) - currentOffset;
+                if (consumed < left) {
+                    currentOffset += consumed;
+                    break;
+                }
+                consumed -= left;
+                inFlight.pollFirst();
+                currentOffset = 0;
+                writeStats.message(head.length(format), head.savedBytes(format));
+                if (head.upgradeTo() != null) {
+                    format = head.upgradeTo();
+                }
+            }
+            return progress;
+        }
+
+        private boolean wrap(ByteBuffer src) throws IOException {
+            // Chỉ mã hóa tiếp khi dữ liệu cũ đã được ghi hết ra socket
+            if (!flushNet()) return false;
+            SSLEngineResult result = engine.wrap(src, netOut);
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW -> {
+                    netOut = enlarge(netOut, engine.getSession().getPacketBufferSize(), true);
+                    return true;
+                }
+                case CLOSED -> {
+                    close(false);
+                    return false;
+                }
+                default -> {
+                    flushNet();
+                    return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+                }
+            }
+        }
+
+        /**
+         * Ghi netOut ra socket. Trả về true nếu đã ghi hết;
+         * nếu chưa thì đăng ký OP_WRITE để tiếp tục khi socket sẵn sàng.
+         */
+        private boolean flushNet() throws IOException {
+            if (netOut.position() > 0) {
+                netOut.flip();
+                channel.write(netOut);
+                netOut.compact();
+                writeStats.write();
+            }
+            boolean empty = netOut.position() == 0;
+            if (key.isValid()) {
+                int ops = empty ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+                if (key.interestOps() != ops) key.interestOps(ops);
+            }
+            return empty;
+        }
+
+        private ByteBuffer enlarge(ByteBuffer buffer, int minCapacity, boolean direct) {
+            int capacity = Math.max(minCapacity, buffer.capacity() * 2);
+            ByteBuffer bigger = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            buffer.flip();
+            bigger.put(buffer);
+            return bigger;
+        }
+
+        private String address() {
+            return address;
+        }
+
+        /**
+         * Đóng kết nối. Khi máy chủ chủ động dừng (graceful = true) thì gửi close_notify trước.
+         */
+        void close(boolean graceful) {
+            if (closed) return;
+            if (graceful) {
+                try {
+                    engine.closeOutbound();
+                    engine.wrap(EMPTY, netOut);
+                    flushNet();
+                } catch (IOException | IllegalStateException ignored) {
+                    // Bỏ qua lỗi
+                }
+            }
+            closed = true;
+            if (!handshakeDone && attempt != null) {
+                attempt.failed();
+            }
+            if (handshakeDone) {
+                connections.remove(slot);
+                metrics.disconnected(tooSlow);
+            }
+            subscriptions.leave();
+            if (heartbeat != null) loop.wheel.cancel(heartbeat);
+            outbound.close();
+            inFlight.clear();
+            if (isRunning) {
+                log.accept("Client " + address() + " đã ngắt kết nối." + outbound.dropSummary());
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.accept("Lỗi khi đóng tài nguyên của client: " + e.getMessage());
+            }
+        }
+    }
+}
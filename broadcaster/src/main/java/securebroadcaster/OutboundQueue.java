@@ -0,0 +1,391 @@
+package securebroadcaster;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * OutboundQueue.java
+ * Hàng đợi gửi có giới hạn cho MỘT client (vòng đệm cố định).
+ * Luồng broadcast chỉ offer() rồi trả về ngay; luồng ghi của client tự lấy ra và gửi đi,
+ * nên một client chậm không làm nghẽn các client khác.
+ * Dùng ReentrantLock thay cho synchronized/wait: luồng ghi là luồng ảo chờ trong take()
+ * sẽ nhả luồng mang (carrier) thay vì bị "ghim" (pinning) như khi chờ trên monitor.
+ *
+ * Gộp theo khóa (tùy chọn): phần tử có khóa gộp (conflationKey khác null) bỏ phần tử chưa gửi cùng khóa
+ * rồi xếp vào cuối, nên client chậm nhảy thẳng tới giá trị mới nhất, một khóa cập nhật dồn dập chỉ chiếm một
+ * chỗ, và hàng đợi vẫn đúng thứ tự xếp vào (thứ tự seq: client nối lại từ seq cuối không lỡ tin nào).
+ * Phần tử bị bỏ để lại một ô trống trong vòng đệm; khi hết ô, vòng đệm được dồn lại tại chỗ (lần đầu thì
+ * nới lên gấp đôi sức chứa, để mỗi lần dồn giải phóng ít nhất 'capacity' ô). Khóa -> ô được tra bằng một
+ * bảng băm địa chỉ mở (dò tuyến tính, tạo lần đầu gặp phần tử có khóa), nên gộp là O(1) khấu hao.
+ *
+ * Phần tử điều khiển (offerControl: ACK nâng cấp định dạng, mốc RESUME/HISTORY/SNAPSHOT) đi một làn riêng
+ * không tính vào sức chứa và không chịu chính sách tràn, nên không bao giờ bị bỏ hay bị loại khi hàng đợi
+ * dữ liệu đầy; luồng ghi lấy chúng trước dữ liệu, theo đúng thứ tự xếp vào.
+ */
+public class OutboundQueue<T> {
+
+    public enum Result { ACCEPTED, CONFLATED, DROPPED_NEWEST, DROPPED_OLDEST, OVERFLOW }
+
+    // Số phần tử điều khiển chờ tối đa: vượt nghĩa là client gửi dồn yêu cầu nhanh hơn server trả lời
+    private static final int MAX_CONTROL = 64;
+
+    private Object[] ring;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private int head = 0;
+    private int slots = 0; // Số ô đang dùng tính từ head, gồm cả ô trống của phần tử đã bị gộp
+    private int size = 0;  // Số phần tử thật
+    private boolean closed = false;
+    private ArrayDeque<T> control; // Làn điều khiển, tạo lần đầu dùng
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // Gộp theo khóa (null = không gộp). Bảng băm khóa -> ô của phần tử chưa gửi, kích thước >= 2 * sức chứa
+    private final Function<? super T, ?> conflationKey;
+    private Object[] indexKeys;
+    private int[] indexSlots;
+
+    // Bộ đếm theo từng client
+    private long dropped = 0;  // Tin mới bị bỏ (DROP_NEWEST)
+    private long evicted = 0;  // Tin cũ bị loại (DROP_OLDEST)
+    private long conflated = 0; // Tin chưa gửi bị thay bằng tin mới hơn cùng khóa
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, null);
+    }
+
+    /**
+     * 'conflationKey' trả về khóa gộp của một phần tử (null = phần tử không gộp); null = hàng đợi không gộp
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy, Function<? super T, ?> conflationKey) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity phải > 0");
+        this.ring = new Object[capacity];
+        this.capacity = capacity;
+        this.policy = policy;
+        this.conflationKey = conflationKey;
+    }
+
+    /**
+     * Thêm một phần tử. Không bao giờ chặn.
+     * Trả về CONFLATED khi phần tử thay một phần tử chưa gửi cùng khóa gộp (không chiếm thêm chỗ),
+     * OVERFLOW khi hàng đợi đầy và chính sách là DISCONNECT: người gọi phải ngắt client.
+     */
+    public Result offer(T item) {
+        Object key = conflationKey != null ? conflationKey.apply(item) : null;
+        lock.lock();
+        try {
+            if (closed) return Result.DROPPED_NEWEST;
+            if (key != null) {
+                int i = indexOf(key);
+                if (i >= 0) {
+                    // Bỏ bản cũ (để lại ô trống) rồi xếp bản mới vào cuối
+                    ring[indexSlots[i]] = null;
+                    size--;
+                    unindex(i);
+                    conflated++;
+                    append(item, key);
+                    return Result.CONFLATED;
+                }
+            }
+            Result result = Result.ACCEPTED;
+            if (size == capacity) {
+                switch (policy) {
+                    case DROP_NEWEST:
+                        dropped++;
+                        return Result.DROPPED_NEWEST;
+                    case DISCONNECT:
+                        return Result.OVERFLOW;
+                    default:
+                        // DROP_OLDEST: bỏ phần tử dữ liệu đầu để lấy chỗ
+                        pollData();
+                        evicted++;
+                        result = Result.DROPPED_OLDEST;
+                }
+            }
+            append(item, key);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Thêm một phần tử điều khiển vào làn riêng (không tính vào sức chứa, không chịu chính sách tràn).
+     * Không bao giờ chặn. Trả về OVERFLOW khi đã có MAX_CONTROL phần tử điều khiển đang chờ: người gọi
+     * phải ngắt client.
+     */
+    public Result offerControl(T item) {
+        lock.lock();
+        try {
+            if (closed) return Result.DROPPED_NEWEST;
+            if (control == null) control = new ArrayDeque<>(4);
+            if (control.size() >= MAX_CONTROL) return Result.OVERFLOW;
+            control.add(item);
+            if (size + control.size() == 1) notEmpty.signal();
+            return Result.ACCEPTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Xếp vào cuối (đã chắc còn chỗ theo sức chứa); dồn vòng đệm nếu hết ô
+     */
+    private void append(T item, Object key) {
+        if (slots == ring.length) compact();
+        int slot = (head + slots) % ring.length;
+        ring[slot] = item;
+        slots++;
+        size++;
+        if (key != null) index(key, slot);
+        if (size == 1) notEmpty.signal(); // Đánh thức luồng ghi đang chờ trong take()
+    }
+
+    /**
+     * Bỏ các ô trống, giữ nguyên thứ tự. Lần đầu thì chép sang vòng đệm gấp đôi sức chứa; sau đó dồn tại chỗ
+     * từ cuối về (mỗi phần tử chỉ dịch về phía cuối, vào ô đã đọc qua), rồi dựng lại bảng băm khóa -> ô.
+     */
+    private void compact() {
+        if (ring.length < 2 * capacity) {
+            Object[] grown = new Object[2 * capacity];
+            int n = 0;
+            for (int r = 0; r < slots; r++) {
+                Object item = ring[(head + r) % ring.length];
+                if (item != null) grown[n++] = item;
+            }
+            ring = grown;
+            head = 0;
+        } else {
+            int w = slots - 1;
+            for (int r = slots - 1; r >= 0; r--) {
+                int from = (head + r) % ring.length;
+                Object item = ring[from];
+                if (item == null) continue;
+                ring[from] = null;
+                ring[(head + w) % ring.length] = item;
+                w--;
+            }
+            head = (head + w + 1) % ring.length;
+        }
+        slots = size;
+        if (indexKeys != null) {
+            Arrays.fill(indexKeys, null);
+            for (int r = 0; r < slots; r++) {
+                int slot = (head + r) % ring.length;
+                @SuppressWarnings("unchecked")
+                Object key = conflationKey.apply((T) ring[slot]);
+                if (key != null) index(key, slot);
+            }
+        }
+    }
+
+    /**
+     * Lấy phần tử đầu, hoặc null nếu rỗng
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            return pollLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chờ tới khi có phần tử. Trả về null khi hàng đợi đã bị đóng.
+     */
+    public T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (isEmptyLocked() && !closed) {
+                notEmpty.await();
+            }
+            return pollLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chờ tối đa 'timeout' tới khi có phần tử. Trả về null khi hết thời gian hoặc hàng đợi đã bị đóng.
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (isEmptyLocked() && !closed) {
+                if (nanos <= 0) return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return pollLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isEmptyLocked() {
+        return size == 0 && (control == null || control.isEmpty());
+    }
+
+    /**
+     * Phần tử điều khiển trước, rồi tới dữ liệu
+     */
+    private T pollLocked() {
+        if (control != null && !control.isEmpty()) return control.poll();
+        return pollData();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T pollData() {
+        if (size == 0) return null;
+        T item;
+        do {
+            // Bỏ qua ô trống của các phần tử đã bị gộp
+            item = (T) ring[head];
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            slots--;
+        } while (item == null);
+        size--;
+        if (size == 0) {
+            // Chỉ còn ô trống: vòng đệm rỗng hẳn
+            head = 0;
+            slots = 0;
+        }
+        if (indexKeys != null) {
+            Object key = conflationKey.apply(item);
+            if (key != null) unindex(indexOf(key));
+        }
+        return item;
+    }
+
+    // --- Bảng băm khóa gộp -> ô (địa chỉ mở, dò tuyến tính); chỉ dùng khi đang giữ lock ---
+
+    private int indexOf(Object key) {
+        if (indexKeys == null) return -1;
+        int mask = indexKeys.length - 1;
+        for (int i = home(key, mask); indexKeys[i] != null; i = (i + 1) & mask) {
+            if (indexKeys[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private void index(Object key, int slot) {
+        if (indexKeys == null) {
+            // Tối đa 'capacity' khóa cùng lúc: hệ số tải không quá 1/2
+            int length = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+            indexKeys = new Object[length];
+            indexSlots = new int[length];
+        }
+        int mask = indexKeys.length - 1;
+        int i = home(key, mask);
+        while (indexKeys[i] != null) i = (i + 1) & mask;
+        indexKeys[i] = key;
+        indexSlots[i] = slot;
+    }
+
+    /**
+     * Xóa mục thứ 'i' rồi dời các mục phía sau về (xóa lùi), để chuỗi dò không bị đứt và không cần bia mộ
+     */
+    private void unindex(int i) {
+        if (i < 0) return;
+        int mask = indexKeys.length - 1;
+        indexKeys[i] = null;
+        for (int j = (i + 1) & mask; indexKeys[j] != null; j = (j + 1) & mask) {
+            int h = home(indexKeys[j], mask);
+            // Mục ở j được dời về i nếu vị trí gốc h của nó không nằm trong đoạn vòng (i, j]
+            if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+                indexKeys[i] = indexKeys[j];
+                indexSlots[i] = indexSlots[j];
+                indexKeys[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private static int home(Object key, int mask) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Đóng hàng đợi, bỏ các phần tử còn lại và đánh thức luồng ghi
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            while (size > 0) pollData();
+            if (control != null) control.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Số phần tử đang chờ, gồm cả phần tử điều khiển
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size + (control != null ? control.size() : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy policy() {
+        return policy;
+    }
+
+    public long droppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Số tin chưa gửi đã bị thay bằng tin mới hơn cùng khóa
+     */
+    public long conflatedCount() {
+        lock.lock();
+        try {
+            return conflated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long evictedCount() {
+        lock.lock();
+        try {
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mô tả ngắn số tin bị bỏ/loại/gộp để ghi log (rỗng nếu không có)
+     */
+    public String dropSummary() {
+        long d = droppedCount();
+        long e = evictedCount();
+        long c = conflatedCount();
+        if (d == 0 && e == 0 && c == 0) return "";
+        return " (bỏ " + d + " tin mới, loại " + e + " tin cũ, gộp " + c + " tin cùng khóa)";
+    }
+}
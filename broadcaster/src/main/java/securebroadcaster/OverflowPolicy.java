@@ -0,0 +1,18 @@
+package securebroadcaster;
+
+/**
+ * OverflowPolicy.java
+ * Cách xử lý khi hàng đợi gửi của một client đã đầy.
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST,  // Loại tin cũ nhất trong hàng đợi, nhận tin mới
+    DROP_NEWEST,  // Bỏ tin mới, giữ nguyên hàng đợi
+    DISCONNECT;   // Ngắt kết nối client chậm
+
+    /**
+     * Đọc từ cấu hình, chấp nhận cả "drop-oldest" lẫn "DROP_OLDEST"
+     */
+    public static OverflowPolicy parse(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
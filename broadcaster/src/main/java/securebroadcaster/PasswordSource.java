@@ -0,0 +1,59 @@
+package securebroadcaster;
+
+import java.io.Console;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * PasswordSource.java
+ * Nguồn mật khẩu KeyStore không cần tương tác GUI.
+ * Mỗi lần gọi trả về một mảng mới; người dùng phải tự xóa (Arrays.fill) sau khi dùng.
+ */
+@FunctionalInterface
+public interface PasswordSource {
+
+    char[] password() throws IOException;
+
+    /**
+     * Mật khẩu có sẵn (ví dụ lấy từ hộp thoại). Trả về bản sao để nguồn gốc có thể dùng lại.
+     */
+    static PasswordSource of(char[] password) {
+        char[] copy = password.clone();
+        return copy::clone;
+    }
+
+    /**
+     * Đọc từ cú pháp cấu hình:
+     *   env:TEN_BIEN    biến môi trường
+     *   file:/duong/dan dòng đầu tiên của file
+     *   console         hỏi trên terminal (không hiện ký tự)
+     */
+    static PasswordSource parse(String spec) {
+        if (spec.startsWith("env:")) {
+            String name = spec.substring(4);
+            return () -> {
+                String value = System.getenv(name);
+                if (value == null) throw new IOException("Chưa đặt biến môi trường " + name);
+                return value.toCharArray();
+            };
+        }
+        if (spec.startsWith("file:")) {
+            Path path = Path.of(spec.substring(5));
+            return () -> {
+                String content = Files.readString(path, StandardCharsets.UTF_8);
+                int eol = content.indexOf('\n');
+                return (eol >= 0 ? content.substring(0, eol) : content).strip().toCharArray();
+            };
+        }
+        if (spec.equals("console")) {
+            return () -> {
+                Console console = System.console();
+                if (console == null) throw new IOException("Không có terminal để hỏi mật khẩu");
+                return console.readPassword("Nhập Mật khẩu KeyStore Server: ");
+            };
+        }
+        throw new IllegalArgumentException("Nguồn mật khẩu không hợp lệ: " + spec);
+    }
+}
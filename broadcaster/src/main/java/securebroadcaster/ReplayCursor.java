@@ -0,0 +1,145 @@
+package securebroadcaster;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ReplayCursor.java
+ * Trạng thái phát lại của MỘT kết nối; chỉ luồng ghi của kết nối đó dùng nên không cần đồng bộ.
+ * Yêu cầu RESUME/HISTORY đi qua làn điều khiển của hàng đợi gửi như một mốc (BroadcastPayload.resume),
+ * được lấy trước các tin live đang chờ: tới mốc, luồng ghi lấy các tin đã lỡ thẳng từ ReplayRing (hoặc từ
+ * journal nếu đã quá cũ) tới tin mới nhất, rồi quay lại hàng đợi live và bỏ các tin trùng (đã gửi qua phát
+ * lại). Mọi tin live đang chờ đều đã nằm trong lịch sử, nên thứ tự seq client thấy vẫn đúng.
+ * Luồng broadcast không bao giờ phải chờ việc phát lại. Tin phát lại cũng được lọc theo các topic
+ * kết nối đã đăng ký, như tin live.
+ * Yêu cầu SNAPSHOT đi theo cùng cách: tới mốc, luồng ghi lấy ảnh chụp LastValueCache (các topic đã đăng ký)
+ * và gửi hết trước khi quay lại hàng đợi live, kết thúc bằng khung SNAPSHOT-END. Tin live có khóa xếp hàng
+ * trước lúc chụp nhưng không mới hơn giá trị đã gửi trong ảnh chụp bị bỏ, nên client không thấy giá trị lùi lại.
+ */
+final class ReplayCursor {
+
+    private final BroadcastHistory history;
+    private final Subscriptions<?> subscriptions;
+
+    private long next = 0;   // seq kế tiếp cần phát lại; 0 = không phát lại
+    private long floor = 0;  // tin live có seq < floor đã được gửi qua phát lại
+
+    // Ảnh chụp đang gửi (null = không có) và vị trí kế tiếp trong đó
+    private List<BroadcastPayload> snapshot;
+    private int snapshotIndex;
+    // seq đã gửi qua ảnh chụp của từng khóa, giữ tới khi tin live vượt seq lớn nhất trong ảnh chụp
+    private Map<LastValueCache.Key, Long> snapshotSeqs;
+    private long snapshotHorizon;
+
+    // Người đọc journal đang dùng (giữ lại để đọc tuần tự, không phải tra chỉ mục cho mỗi tin)
+    private BroadcastJournal.Reader journalReader;
+
+    ReplayCursor(BroadcastHistory history, Subscriptions<?> subscriptions) {
+        this.history = history;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Lọc một payload lấy từ hàng đợi live. Trả về null nếu không cần gửi
+     * (là mốc RESUME/SNAPSHOT, hoặc là tin đã gửi qua phát lại).
+     */
+    BroadcastPayload admit(BroadcastPayload payload) {
+        if (payload.isSnapshot()) {
+            String pattern = payload.snapshotPattern();
+            snapshot = history.lastValues().snapshot(topic -> subscriptions.matches(topic)
+                    && (pattern == null || TopicRegistry.matches(pattern, topic)));
+            snapshotIndex = 0;
+            snapshotSeqs = new HashMap<>();
+            snapshotHorizon = 0;
+            for (BroadcastPayload value : snapshot) {
+                snapshotSeqs.put(value.conflationKey(), value.seq());
+                snapshotHorizon = Math.max(snapshotHorizon, value.seq());
+            }
+            return null;
+        }
+        if (snapshotSeqs != null && payload.seq() > 0) {
+            if (payload.seq() > snapshotHorizon) {
+                snapshotSeqs = null; // Mọi tin từ đây đều mới hơn ảnh chụp
+            } else if (payload.conflationKey() != null) {
+                Long sent = snapshotSeqs.get(payload.conflationKey());
+                if (sent != null && sent >= payload.seq()) return null;
+            }
+        }
+        if (payload.isResume()) {
+            // Client đã thấy seq lớn hơn mọi tin hiện có: server đã khởi động lại và đánh số lại từ 1, nên mọi
+            // tin hiện có đều là tin client chưa thấy. Phát lại từ đầu; phần đã bị đè thành khung GAP.
+            boolean restarted = payload.seq() > history.latestSeq();
+            next = restarted ? 1 : payload.seq() + 1;
+            floor = 0;
+            journalReader = null;
+            return null;
+        }
+        if (payload.seq() > 0 && payload.seq() < floor) return null;
+        return payload;
+    }
+
+    /**
+     * Tin tiếp theo cần phát lại (hoặc khung GAP nếu phần đầu đã quá cũ), null khi đã đuổi kịp
+     */
+    BroadcastPayload nextReplay() {
+        if (snapshot != null) {
+            if (snapshotIndex < snapshot.size()) return snapshot.get(snapshotIndex++);
+            BroadcastPayload end = BroadcastPayload.snapshotEnd(snapshot.size());
+            snapshot = null;
+            return end;
+        }
+        while (next != 0) {
+            if (next > history.latestSeq()) break;
+            BroadcastPayload payload = history.ring().get(next);
+            if (payload == null) payload = fromJournal(next);
+            if (payload != null) {
+                next++;
+                if (!subscriptions.matches(payload.topic())) continue; // Topic kết nối không đăng ký
+                return payload;
+            }
+            long oldest = history.oldestSeq();
+            if (next < oldest) {
+                // Các tin [next, oldest - 1] đã bị đè: báo rõ cho client thay vì im lặng bỏ qua
+                BroadcastPayload gap = BroadcastPayload.gap(next, oldest - 1);
+                next = oldest;
+                return gap;
+            }
+            break; // Tin chưa được ghi xong: tin live sẽ tới sau
+        }
+        if (next != 0) {
+            floor = next;
+            next = 0;
+            journalReader = null;
+        }
+        return null;
+    }
+
+    private BroadcastPayload fromJournal(long seq) {
+        BroadcastJournal journal = history.journal();
+        if (journal == null || seq < journal.firstSeq() || seq > journal.lastSeq()) return null;
+        if (journalReader == null || journalReader.nextSeq() != seq) {
+            journalReader = journal.reader(seq);
+        }
+        BroadcastPayload payload = journalReader.next();
+        if (payload == null || payload.seq() != seq) {
+            journalReader = null;
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * Payload kế tiếp cần gửi (phát lại trước, sau đó tới hàng đợi live), null nếu không còn gì. Không chặn.
+     */
+    BroadcastPayload next(OutboundQueue<BroadcastPayload> queue) {
+        while (true) {
+            BroadcastPayload payload = nextReplay();
+            if (payload != null) return payload;
+            payload = queue.poll();
+            if (payload == null) return null;
+            payload = admit(payload);
+            if (payload != null) return payload;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package securebroadcaster;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ReplayRing.java
+ * Vòng đệm cấp phát sẵn giữ các broadcast gần nhất theo số thứ tự (seq), để client kết nối lại
+ * nhận đúng các tin đã lỡ. Chỉ lưu tham chiếu tới payload đã mã hóa sẵn (không chép byte).
+ * Ghi và đọc đều không khóa: luồng publish chỉ set một ô, luồng ghi của client chỉ đọc.
+ */
+public final class ReplayRing {
+
+    private final AtomicReferenceArray<BroadcastPayload> slots;
+    private final int mask;
+
+    // seq lớn nhất đã được ghi vào vòng (0 = chưa có tin nào)
+    private final AtomicLong latest = new AtomicLong();
+    // seq đầu tiên từng được ghi (khi khởi động lại từ journal, seq không bắt đầu từ 1)
+    private final AtomicLong first = new AtomicLong();
+
+    public ReplayRing(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity phải > 0");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1; // Làm tròn lên lũy thừa của 2 để tính ô bằng phép AND
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Ghi một tin (seq > 0) vào vòng, đè lên tin cũ nhất cùng ô
+     */
+    public void append(BroadcastPayload payload) {
+        long seq = payload.seq();
+        slots.set((int) (seq & mask), payload);
+        first.compareAndSet(0, seq);
+        latest.accumulateAndGet(seq, Math::max);
+    }
+
+    /**
+     * Tin có số thứ tự 'seq', hoặc null nếu đã bị đè (quá cũ) hoặc chưa được ghi
+     */
+    public BroadcastPayload get(long seq) {
+        BroadcastPayload payload = slots.get((int) (seq & mask));
+        return payload != null && payload.seq() == seq ? payload : null;
+    }
+
+    public long latestSeq() {
+        return latest.get();
+    }
+
+    /**
+     * seq nhỏ nhất còn có thể phát lại (latestSeq() + 1 nếu vòng còn rỗng)
+     */
+    public long oldestSeq() {
+        long l = latest.get();
+        long f = first.get();
+        return f == 0 ? l + 1 : Math.max(f, l - mask);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,466 @@
+package securebroadcaster;
+
+import javax.net.ssl.*;
+import javax.swing.*;
+import java.awt.*;
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+
+/**
+ * SecureClient.java
+ * Một máy khách GUI, kết nối SSL để nhận thông báo broadcast.
+ */
+public class SecureClient extends JFrame {
+
+    // 1. Thành phần GUI
+    private final JButton connectButton;
+    private final JButton disconnectButton;
+    private final JTextField ipField;
+    private final JTextField portField;
+    private final LogView messageArea;
+
+    // 2. Thành phần Mạng & Logic
+    private volatile boolean isConnected = false;
+    private volatile boolean wantConnected = false; // Người dùng muốn giữ kết nối: mất thì tự kết nối lại
+    private volatile SSLSocket sslSocket;
+    private FrameReader reader;
+
+    // Tạo một lần ở lần kết nối đầu rồi dùng lại: bộ đệm phiên của nó cho phép nối lại phiên TLS
+    // khi kết nối lại, thay vì đọc lại server.jks và bắt tay RSA đầy đủ
+    private volatile SSLContext sslContext;
+
+    // seq của tin cuối cùng đã nhận (giữ qua các lần kết nối lại để xin phát lại phần bị lỡ)
+    private volatile long lastSeq = 0;
+
+    // Lịch sử xin ở lần kết nối đầu: -Dclient.history=seq:<seq> hoặc time:<epoch millis> (mặc định không xin)
+    private final String historyRequest = historyRequest(System.getProperty("client.history", ""));
+
+    // Topic muốn nhận: -Dclient.topics=tin.the-thao.*,canh-bao.# (mặc định nhận mọi topic)
+    private final String[] topics = topics(System.getProperty("client.topics", ""));
+
+    // Xin ảnh chụp giá trị mới nhất của mọi khóa (tin có khóa) mỗi lần kết nối, chỉ với khung nhị phân;
+    // -Dclient.snapshot=false để tắt
+    private final boolean requestSnapshot = Boolean.parseBoolean(System.getProperty("client.snapshot", "true"));
+    // Đã xin ảnh chụp trên kết nối này và chưa nhận SNAPSHOT-END (chỉ luồng kết nối/lắng nghe dùng)
+    private volatile boolean awaitingSnapshot = false;
+
+    // Độ trễ tự kết nối lại: tăng gấp đôi sau mỗi lần thất bại
+    private static final long RECONNECT_MIN_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30_000;
+
+    // Xin server dùng khung nhị phân (mặc định); -Dclient.protocol=line để dùng giao thức dòng cũ
+    private final boolean requestBinary = !"line".equalsIgnoreCase(System.getProperty("client.protocol", "binary"));
+
+    // Xin server nén khung (chỉ với khung nhị phân); -Dclient.compress=false để tắt.
+    // -Dclient.compress.dictionary=<file> phải trùng từ điển của server, nếu không server gửi không nén
+    private final boolean requestCompress = requestBinary
+            && Boolean.parseBoolean(System.getProperty("client.compress", "true"));
+    private volatile DeflateCodec decompressor;
+
+    // Xin server heartbeat (chỉ với khung nhị phân): trả lời PING bằng PONG, và khi đã nhận PING đầu tiên
+    // thì coi kết nối là chết nếu không nhận được gì quá -Dclient.heartbeat.timeout ms (rồi tự kết nối lại).
+    // Hạn này phải dài hơn server.heartbeat.interval của server. -Dclient.heartbeat=false để tắt.
+    private final boolean requestHeartbeat = requestBinary
+            && Boolean.parseBoolean(System.getProperty("client.heartbeat", "true"));
+    private final int heartbeatTimeoutMillis = Integer.getInteger("client.heartbeat.timeout", 45_000);
+
+    // Luồng kết nối và luồng lắng nghe chạy trên luồng ảo (mặc định) hoặc luồng hệ điều hành
+    private final ExecutionMode threadMode = ExecutionMode.parse(System.getProperty("client.threads", "virtual"));
+
+    // Một luồng riêng chỉ để lắng nghe tin nhắn từ server
+    private volatile Thread listeningThread;
+
+    // --- Constructor: Thiết lập toàn bộ GUI ---
+    public SecureClient() {
+        setTitle("Secure Broadcast Client");
+        setSize(400, 300);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        // Panel điều khiển (chứa các nút và ô nhập liệu)
+        JPanel controlPanel = new JPanel();
+        ipField = new JTextField("localhost", 15); // Mặc định là localhost
+        portField = new JTextField("12345", 5);    // Mặc định cổng 12345
+        connectButton = new JButton("Kết nối");
+        disconnectButton = new JButton("Ngắt kết nối");
+
+        controlPanel.add(new JLabel("Server IP:"));
+        controlPanel.add(ipField);
+        controlPanel.add(new JLabel("Cổng:"));
+        controlPanel.add(portField);
+        controlPanel.add(connectButton);
+        controlPanel.add(disconnectButton);
+        add(controlPanel, BorderLayout.NORTH);
+
+        // Khu vực hiển thị tin nhắn: chỉ giữ -Dui.scrollback dòng gần nhất, vẽ theo lô
+        messageArea = new LogView(Integer.getInteger("ui.scrollback", LogView.DEFAULT_CAPACITY));
+        add(messageArea, BorderLayout.CENTER);
+
+        // --- Đăng ký sự kiện cho các nút ---
+        connectButton.addActionListener(e -> connectToServer());
+        disconnectButton.addActionListener(e -> disconnectFromServer());
+
+        // Cập nhật trạng thái nút ban đầu
+        updateButtonStates(false);
+        setVisible(true);
+    }
+
+    /**
+     * Kết nối đến máy chủ.
+     * Sẽ hỏi mật khẩu TrustStore TRƯỚC, sau đó mới kết nối
+     */
+    private void connectToServer() {
+        String host = ipField.getText();
+        int port;
+        try {
+            port = Integer.parseInt(portField.getText());
+        } catch (NumberFormatException e) {
+            log("Lỗi: Cổng phải là một con số.");
+            return;
+        }
+
+        // --- BƯỚC 1: LẤY MẬT KHẨU TỪ NGƯỜI DÙNG (TRÊN LUỒNG GUI) ---
+        // Chỉ hỏi ở lần đầu; các lần sau dùng lại SSLContext đã tạo
+        final char[] password;
+        if (sslContext == null) {
+            JPasswordField pf = new JPasswordField();
+            pf.setEchoChar('*');
+
+            int okCxl = JOptionPane.showConfirmDialog(
+                    this,
+                    pf,
+                    "Nhập Mật khẩu TrustStore (server.jks):",
+                    JOptionPane.OK_CANCEL_OPTION,
+                    JOptionPane.PLAIN_MESSAGE
+            );
+
+            if (okCxl != JOptionPane.OK_OPTION) {
+                log("Đã hủy kết nối.");
+                return;
+            }
+            password = pf.getPassword();
+        } else {
+            password = null;
+        }
+
+        // --- BƯỚC 2: KHỞI ĐỘNG KẾT NỐI TRÊN LUỒNG MỚI ---
+        wantConnected = true;
+        updateButtonStates(true);
+        threadMode.startThread("client-connect", () -> {
+            try {
+                // --- PHẦN QUAN TRỌNG: THIẾT LẬP SSL CLIENT ---
+
+                // 1-3. Tải TrustStore và tạo SSLContext (chỉ lần đầu)
+                if (sslContext == null) {
+                    sslContext = createSslContext(password); // Chỉ giữ lại khi mật khẩu đúng
+                }
+                openConnection(host, port);
+
+            } catch (Exception e) {
+                // Nếu lỗi (sai mật khẩu, server sập...)
+                log("Lỗi kết nối: " + e.getMessage());
+                e.printStackTrace();
+                wantConnected = false;
+                updateButtonStates(false); // Đặt lại trạng thái nút
+            } finally {
+                // [BẢO MẬT] Xóa mật khẩu khỏi bộ nhớ
+                if (password != null) java.util.Arrays.fill(password, ' ');
+            }
+        });
+    }
+
+    /**
+     * Mở một kết nối TLS, thỏa thuận giao thức, xin phát lại các tin đã lỡ (nếu có) rồi bắt đầu lắng nghe.
+     * Dùng cho cả lần kết nối đầu và các lần tự kết nối lại.
+     */
+    private void openConnection(String host, int port) throws IOException {
+        log("Đang kết nối tới " + host + ":" + port + "...");
+
+        // 4. Tạo SSLSocketFactory
+        SSLSocketFactory ssf = sslContext.getSocketFactory();
+
+        // 5. Tạo SSLSocket (thay vì Socket). Cùng host:port nên bộ đệm phiên tìm được phiên cũ
+        SSLSocket socket = (SSLSocket) ssf.createSocket(host, port);
+
+        // 6. [QUAN TRỌNG] Bắt đầu "Bắt tay" (Handshake)
+        long handshakeStart = System.currentTimeMillis();
+        socket.startHandshake();
+
+        // --- KẾT THÚC THIẾT LẬP SSL ---
+
+        if (!wantConnected) {
+            socket.close(); // Người dùng đã bấm ngắt trong lúc đang kết nối
+            return;
+        }
+        sslSocket = socket;
+        isConnected = true;
+        // Phiên được nối lại giữ thời điểm tạo của lần bắt tay đầy đủ trước đó
+        boolean resumed = socket.getSession().getCreationTime() < handshakeStart;
+        log("Đã kết nối bảo mật tới máy chủ" + (resumed ? " (nối lại phiên TLS)." : "."));
+
+        // Tạo "tai nghe" để nhận dữ liệu từ server
+        reader = new FrameReader(socket.getInputStream(), requestCompress ? decompressor() : null);
+
+        // Xin dùng khung nhị phân; server cũ sẽ bỏ qua và tiếp tục gửi từng dòng
+        StringBuilder hello = new StringBuilder();
+        if (requestBinary) hello.append(FrameCodec.HELLO_BINARY).append('\n');
+        if (requestCompress) hello.append(FrameCodec.compressLine(decompressor().dictionaryId())).append('\n');
+        if (requestHeartbeat) hello.append(FrameCodec.HEARTBEAT).append('\n');
+        // Đăng ký topic TRƯỚC khi xin phát lại, để phần phát lại cũng chỉ gồm các topic đã chọn
+        for (String topic : topics) {
+            hello.append(FrameCodec.SUBSCRIBE).append(' ').append(topic).append('\n');
+        }
+        if (requestBinary) {
+            // Đã nhận tin trước đó: xin server phát lại các tin bị lỡ trong lúc mất kết nối
+            long seq = lastSeq;
+            if (seq > 0) {
+                hello.append(FrameCodec.resumeLine(seq)).append('\n');
+            } else if (historyRequest != null) {
+                hello.append(historyRequest).append('\n'); // Vào muộn: xin lịch sử từ journal của server
+            }
+            // Giá trị hiện tại của mọi khóa thuộc các topic đã đăng ký (sau phần phát lại)
+            awaitingSnapshot = requestSnapshot;
+            if (requestSnapshot) hello.append(FrameCodec.SNAPSHOT).append('\n');
+        }
+        if (hello.length() > 0) {
+            OutputStream out = socket.getOutputStream();
+            out.write(hello.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        // Bắt đầu một luồng riêng chỉ để lắng nghe tin nhắn
+        startListening(host, port);
+    }
+
+    /**
+     * Bộ giải nén (tạo một lần, đọc từ điển nếu có)
+     */
+    private DeflateCodec decompressor() {
+        DeflateCodec codec = decompressor;
+        if (codec == null) {
+            byte[] dictionary = null;
+            String path = System.getProperty("client.compress.dictionary", "");
+            if (!path.isBlank()) {
+                try {
+                    dictionary = Files.readAllBytes(Path.of(path));
+                } catch (IOException e) {
+                    log("Không đọc được từ điển nén: " + e.getMessage());
+                }
+            }
+            decompressor = codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, dictionary, 0);
+        }
+        return codec;
+    }
+
+    private static String[] topics(String spec) {
+        return Arrays.stream(spec.split(","))
+                .map(String::trim)
+                .filter(topic -> !topic.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static String historyRequest(String spec) {
+        if (spec.startsWith("seq:")) return FrameCodec.HISTORY_SEQ + " " + spec.substring(4).trim();
+        if (spec.startsWith("time:")) return FrameCodec.HISTORY_TIME + " " + spec.substring(5).trim();
+        return null;
+    }
+
+    /**
+     * Tạo SSLContext phía client chỉ với TrustStore server.jks
+     */
+    private static SSLContext createSslContext(char[] password) throws Exception {
+        // 1. Tải TrustStore (Kho tin cậy)
+        KeyStore ts = KeyStore.getInstance("JKS");
+        try (FileInputStream fis = new FileInputStream("server.jks")) {
+            ts.load(fis, password);
+        }
+
+        // 2. Tạo TrustManagerFactory
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ts);
+
+        // 3. Tạo SSLContext
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, tmf.getTrustManagers(), null); // Chỉ cần TrustManager
+        return sslContext;
+    }
+
+    /**
+     * Bắt đầu luồng lắng nghe tin nhắn từ Server
+     */
+    private void startListening(String host, int port) {
+        SSLSocket socket = sslSocket;
+        listeningThread = threadMode.startThread("client-listener", () -> {
+            boolean heartbeat = false; // Server đã gửi PING: từ giờ im lặng quá lâu nghĩa là mất kết nối
+            // Chưa nhận tin nào có seq trên kết nối này: tin đầu tiên đặt lại mốc (server khởi động lại từ đầu
+            // thì seq nhỏ hơn mốc cũ), các tin sau chỉ đẩy mốc tiến lên, không bao giờ lùi
+            boolean firstSeq = true;
+            try {
+                // Giai đoạn dòng văn bản: cho tới khi server xác nhận khung nhị phân
+                boolean binary = false;
+                String serverMessage;
+                while (isConnected && (serverMessage = reader.readLine()) != null) {
+                    if (requestBinary && FrameCodec.ACK_BINARY.equals(serverMessage)) {
+                        binary = true;
+                        break;
+                    }
+                    log("Server: " + serverMessage);
+                }
+
+                // Giai đoạn khung nhị phân
+                while (binary && isConnected && reader.readFrame()) {
+                    if (reader.type() == FrameCodec.TYPE_MESSAGE) {
+                        String topic = reader.topic();
+                        String key = reader.key();
+                        // Tin có khóa trước SNAPSHOT-END có thể là giá trị trong ảnh chụp: seq của nó vượt lên
+                        // trước các tin chưa nhận, nên không dùng làm mốc RESUME (nhận lại trùng thì vô hại)
+                        if (key == null || !awaitingSnapshot) {
+                            lastSeq = firstSeq ? reader.seq() : Math.max(lastSeq, reader.seq());
+                            firstSeq = false;
+                        }
+                        log("Server" + (topic.isEmpty() ? "" : " [" + topic + "]") + ": "
+                                + (key == null ? "" : key + "=") + reader.payloadAsString());
+                    } else if (reader.type() == FrameCodec.TYPE_GAP) {
+                        lastSeq = firstSeq ? reader.seq() : Math.max(lastSeq, reader.seq());
+                        firstSeq = false;
+                        log("Cảnh báo: đã lỡ các tin #" + reader.payloadAsString()
+                                + " (quá cũ, máy chủ không còn để phát lại).");
+                    } else if (reader.type() == FrameCodec.TYPE_CONTROL) {
+                        String control = reader.payloadAsString();
+                        if (FrameCodec.PING.equals(control)) {
+                            if (!heartbeat) {
+                                heartbeat = true;
+                                socket.setSoTimeout(heartbeatTimeoutMillis);
+                            }
+                            OutputStream out = socket.getOutputStream();
+                            out.write((FrameCodec.PONG + "\n").getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                        } else if (FrameCodec.ACK_COMPRESS.equals(control)) {
+                            log("Máy chủ đã bật nén khung (deflate).");
+                        } else if (control.startsWith(FrameCodec.SNAPSHOT_END)) {
+                            awaitingSnapshot = false;
+                            log("Đã nhận ảnh chụp " + FrameCodec.parseArgument(control, FrameCodec.SNAPSHOT_END)
+                                    + " giá trị mới nhất.");
+                        }
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                if (isConnected) {
+                    log("Lỗi: Máy chủ im lặng quá " + heartbeatTimeoutMillis + " ms, coi như mất kết nối.");
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                        // Bỏ qua lỗi
+                    }
+                }
+            } catch (SocketException e) {
+                if (isConnected) {
+                    log("Lỗi: Mất kết nối tới máy chủ.");
+                }
+                // Nếu isConnected = false, đây là do ta chủ động ngắt kết nối
+            } catch (IOException e) {
+                if (isConnected) {
+                    log("Lỗi I/O: " + e.getMessage());
+                }
+            } finally {
+                // Dù kết thúc thế nào, hãy đảm bảo trạng thái GUI được cập nhật
+                if (isConnected) {
+                    // Bị ngắt kết nối ngoài ý muốn: tự kết nối lại (luồng này vốn sắp kết thúc)
+                    isConnected = false;
+                    log("Đã ngắt kết nối.");
+                    reconnect(host, port);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tự kết nối lại với độ trễ tăng dần (0.5s, 1s, 2s... tối đa 30s), có nhiễu ngẫu nhiên
+     * để hàng nghìn client không cùng ập tới một lúc khi server vừa khởi động lại.
+     * Dừng khi kết nối được hoặc khi người dùng bấm ngắt kết nối.
+     */
+    private void reconnect(String host, int port) {
+        long delay = RECONNECT_MIN_DELAY_MS;
+        while (wantConnected) {
+            long wait = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            log("Tự kết nối lại sau " + wait + " ms...");
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                return; // Người dùng đã ngắt kết nối
+            }
+            if (!wantConnected) return;
+            try {
+                openConnection(host, port);
+                return;
+            } catch (IOException e) {
+                log("Kết nối lại thất bại: " + e.getMessage());
+            }
+            delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MS);
+        }
+    }
+
+    /**
+     * Ngắt kết nối khỏi máy chủ
+     */
+    private void disconnectFromServer() {
+        if (!wantConnected) return;
+
+        try {
+            log("Đang ngắt kết nối...");
+            wantConnected = false; // Dừng cả việc tự kết nối lại
+            isConnected = false;
+
+            // Đóng socket sẽ khiến reader.readLine() trong luồng listeningThread
+            // ném ra một SocketException, làm cho luồng đó kết thúc
+            if (sslSocket != null && !sslSocket.isClosed()) {
+                sslSocket.close(); // Đóng socket
+            }
+
+            // Chờ luồng lắng nghe kết thúc (đánh thức nếu nó đang chờ để kết nối lại)
+            if (listeningThread != null) {
+                listeningThread.interrupt();
+                listeningThread.join(1000); // Chờ tối đa 1 giây
+            }
+
+        } catch (IOException e) {
+            log("Lỗi khi đóng socket: " + e.getMessage());
+        } catch (InterruptedException e) {
+            log("Lỗi khi chờ luồng: " + e.getMessage());
+        } finally {
+            log("Đã ngắt kết nối.");
+            updateButtonStates(false);
+        }
+    }
+
+    /**
+     * Ghi nhật ký ra LogView (an toàn từ mọi luồng; EDT vẽ theo lô)
+     */
+    private void log(String message) {
+        messageArea.append(message);
+    }
+
+    /**
+     * Cập nhật trạng thái Bật/Tắt của các nút
+     */
+    private void updateButtonStates(boolean clientIsActive) {
+        connectButton.setEnabled(!clientIsActive);
+        disconnectButton.setEnabled(clientIsActive);
+        ipField.setEnabled(!clientIsActive);
+        portField.setEnabled(!clientIsActive);
+    }
+
+    // --- Hàm main để khởi chạy Client ---
+    public static void main(String[] args) {
+        // Đảm bảo GUI được tạo trên Event Dispatch Thread
+        SwingUtilities.invokeLater(SecureClient::new);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+package securebroadcaster;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * SecureServer.java
+ * Giao diện Swing cho máy chủ broadcast bảo mật SSL.
+ * Phần mạng nằm trong BroadcastEngine; frame này chỉ hỏi mật khẩu, gọi start/stop/publish và hiển thị log.
+ */
+public class SecureServer extends JFrame {
+
+    // 1. Thành phần GUI
+    private final JButton startButton;
+    private final JButton stopButton;
+    private final JButton broadcastButton;
+    private final JTextField topicField;
+    private final JTextField keyField;
+    private final JTextField messageField;
+    private final LogView logArea;
+
+    // 2. Thành phần Mạng & Logic: toàn bộ nằm trong BroadcastEngine, frame này chỉ điều khiển
+    private volatile BroadcastEngine engine;
+
+    // --- Constructor: Thiết lập toàn bộ GUI ---
+    public SecureServer() {
+        setTitle("Secure Broadcast Server");
+        setSize(600, 400);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        // Panel điều khiển (chứa các nút và ô nhập liệu)
+        JPanel controlPanel = new JPanel();
+        startButton = new JButton("Start");
+        stopButton = new JButton("Stop");
+        topicField = new JTextField(6);
+        topicField.setToolTipText("Topic (bỏ trống = topic mặc định, gửi tới client chưa chọn topic)");
+        keyField = new JTextField(5);
+        keyField.setToolTipText("Khóa (bỏ trống = tin thường; có khóa = giá trị mới nhất, client vào muộn nhận được)");
+        messageField = new JTextField(20);
+        broadcastButton = new JButton("Gửi Broadcast");
+
+        controlPanel.add(startButton);
+        controlPanel.add(stopButton);
+        controlPanel.add(topicField);
+        controlPanel.add(keyField);
+        controlPanel.add(messageField);
+        controlPanel.add(broadcastButton);
+        add(controlPanel, BorderLayout.NORTH);
+
+        // Khu vực Log (hiển thị nhật ký): chỉ giữ -Dui.scrollback dòng gần nhất, vẽ theo lô
+        logArea = new LogView(Integer.getInteger("ui.scrollback", LogView.DEFAULT_CAPACITY));
+        add(logArea, BorderLayout.CENTER);
+
+        // --- Đăng ký sự kiện cho các nút ---
+
+        // Nút Start
+        startButton.addActionListener(e -> startServer());
+
+        // Nút Stop
+        stopButton.addActionListener(e -> stopServer());
+
+        // Nút Gửi Broadcast
+        broadcastButton.addActionListener(e -> broadcastMessage());
+
+        // Cập nhật trạng thái nút ban đầu
+        updateButtonStates(false);
+        setVisible(true);
+    }
+
+    /**
+     * Bắt đầu máy chủ.
+     * Hàm này sẽ hỏi mật khẩu TRƯỚC, sau đó mới khởi động luồng
+     */
+    private void startServer() {
+        // Đã khởi động trước đó: dùng lại engine (và SSLContext cùng bộ đệm phiên TLS của nó),
+        // client kết nối lại sau khi restart được nối lại phiên thay vì bắt tay đầy đủ
+        BroadcastEngine existing = engine;
+        if (existing != null) {
+            existing.config().threadMode().startThread("server-start", () -> {
+                try {
+                    updateButtonStates(true);
+                    existing.start();
+                } catch (Exception e) {
+                    log("Lỗi nghiêm trọng khi khởi động máy chủ: " + e.getMessage());
+                    updateButtonStates(false);
+                }
+            });
+            return;
+        }
+
+        // --- BƯỚC 1: LẤY MẬT KHẨU TỪ NGƯỜI DÙNG (TRÊN LUỒNG GUI) ---
+        JPasswordField pf = new JPasswordField();
+        pf.setEchoChar('*'); // Ẩn mật khẩu
+
+        // 'this' là cửa sổ JFrame, hộp thoại sẽ hiện ra giữa cửa sổ
+        int okCxl = JOptionPane.showConfirmDialog(
+                this,
+                pf,
+                "Nhập Mật khẩu KeyStore Server:",
+                JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE
+        );
+
+        // Nếu người dùng nhấn "Cancel" hoặc đóng hộp thoại
+        if (okCxl != JOptionPane.OK_OPTION) {
+            log("Đã hủy khởi động. Người dùng không nhập mật khẩu.");
+            return; // Dừng, không làm gì cả
+        }
+
+        // Lấy mật khẩu và đánh dấu 'final' để dùng trong luồng mới
+        final char[] password = pf.getPassword();
+
+        // --- BƯỚC 2: KHỞI ĐỘNG ENGINE TRONG LUỒNG MỚI (VỚI MẬT KHẨU ĐÃ LẤY) ---
+        // Các thiết lập khác (cổng, keystore, chế độ NIO, hàng đợi...) lấy từ System property
+        BroadcastConfig config = BroadcastConfig.fromSystemProperties()
+                .passwordSource(PasswordSource.of(password));
+        // [BẢO MẬT] PasswordSource giữ bản sao riêng; xóa mảng gốc ngay
+        java.util.Arrays.fill(password, ' ');
+
+        config.threadMode().startThread("server-start", () -> {
+            try {
+                updateButtonStates(true); // Cập nhật GUI
+                BroadcastEngine e = new BroadcastEngine(config, this::log);
+                e.start();
+                engine = e; // Chỉ giữ engine khi mật khẩu đúng
+            } catch (Exception e) {
+                // Nếu có lỗi (ví dụ sai mật khẩu), báo lỗi và reset nút
+                log("Lỗi nghiêm trọng khi khởi động máy chủ: " + e.getMessage());
+                e.printStackTrace();
+                updateButtonStates(false); // Đặt lại trạng thái nút
+            }
+        });
+    }
+
+    /**
+     * Dừng máy chủ một cách an toàn. stop() chờ các luồng selector/shard/heartbeat kết thúc,
+     * nên chạy trên luồng riêng như khi khởi động, không chặn EDT
+     */
+    private void stopServer() {
+        BroadcastEngine e = engine;
+        if (e == null) return;
+        stopButton.setEnabled(false); // Tránh bấm Stop hai lần trong lúc đang dừng
+        e.config().threadMode().startThread("server-stop", () -> {
+            e.stop(); // Giữ engine để lần Start sau dùng lại SSLContext
+            SwingUtilities.invokeLater(() -> updateButtonStates(false));
+        });
+    }
+
+    /**
+     * Gửi một tin nhắn đến các client đăng ký topic đã nhập (hoặc topic mặc định).
+     * Chỉ xếp tin vào hàng đợi của từng client rồi trả về ngay (không ghi socket trên EDT).
+     */
+    private void broadcastMessage() {
+        String topic = topicField.getText().trim();
+        String key = keyField.getText().trim();
+        String message = messageField.getText();
+        BroadcastEngine e = engine;
+        if (message.isEmpty() || e == null) {
+            return;
+        }
+
+        BroadcastEngine.PublishResult result;
+        try {
+            result = key.isEmpty() ? e.publish(topic, message) : e.publishKeyed(topic, key, message);
+        } catch (IllegalArgumentException ex) {
+            log("Lỗi: " + ex.getMessage());
+            return;
+        }
+        if (result == null) return;
+
+        log("BROADCAST" + (topic.isEmpty() ? "" : " [" + topic + "]") + ": " + (key.isEmpty() ? "" : key + "=") + message + " (" + result.bytes() + " byte -> " + result.fanOut()
+                + " client)");
+        messageField.setText(""); // Xóa ô nhập liệu
+    }
+
+    /**
+     * Ghi nhật ký ra LogView (an toàn từ mọi luồng; chỉ EDT cập nhật Swing, theo lô mỗi khung hình)
+     */
+    private void log(String message) {
+        logArea.append(message);
+    }
+
+    /**
+     * Cập nhật trạng thái Bật/Tắt của các nút
+     */
+    private void updateButtonStates(boolean serverIsActive) {
+        startButton.setEnabled(!serverIsActive);
+        stopButton.setEnabled(serverIsActive);
+        broadcastButton.setEnabled(serverIsActive);
+        topicField.setEnabled(serverIsActive);
+        keyField.setEnabled(serverIsActive);
+        messageField.setEnabled(serverIsActive);
+    }
+
+    // --- Hàm main để khởi chạy Server ---
+    public static void main(String[] args) {
+        // Đảm bảo GUI được tạo trên Event Dispatch Thread
+        SwingUtilities.invokeLater(SecureServer::new);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+package securebroadcaster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * SlotRegistry.java
+ * Tập các kết nối (hoặc người đăng ký) cho fan-out, tối ưu cho việc vào/ra liên tục:
+ *  - add/remove O(1) và không khóa: mỗi phần tử chiếm một ô (slot) trong mảng phân đoạn;
+ *    ô trống được đưa vào một ngăn xếp tự do (Treiber stack có đánh phiên bản chống ABA) để dùng lại.
+ *  - Duyệt (mỗi broadcast) không khóa và không cấp phát: quét các ô tới mức cao nhất từng dùng.
+ *    Ô được đặt/xóa trong lúc duyệt có thể thấy hoặc không (nhất quán yếu, giống ConcurrentHashMap).
+ * add() trả về một handle (chỉ số ô + thế hệ); remove(handle) chỉ có tác dụng một lần, nên handle cũ
+ * của một ô đã được dùng lại không thể xóa nhầm phần tử mới.
+ * Chỉ việc nới bảng phân đoạn (hiếm, nhân đôi) là cần khóa.
+ */
+public final class SlotRegistry<T> {
+
+    private static final int SEGMENT_SHIFT = 6;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int NO_SLOT = 0; // Giá trị liên kết "hết" trong ngăn xếp tự do (lưu index + 1)
+
+    private volatile Segment<T>[] segments;
+    private final ReentrantLock growLock = new ReentrantLock();
+
+    private final AtomicInteger highWater = new AtomicInteger();  // Số ô từng được cấp (chỉ tăng)
+    private final AtomicInteger size = new AtomicInteger();
+    // Đỉnh ngăn xếp ô tự do: 32 bit cao = phiên bản, 32 bit thấp = index + 1 (0 = rỗng)
+    private final AtomicLong freeHead = new AtomicLong();
+
+    public SlotRegistry() {
+        this.segments = newTable(0);
+    }
+
+    /**
+     * Thêm phần tử, trả về handle để xóa sau này
+     */
+    public long add(T item) {
+        int index = popFree();
+        if (index < 0) index = claimFresh();
+        Segment<T> segment = segments[index >>> SEGMENT_SHIFT];
+        int offset = index & SEGMENT_MASK;
+        int generation = segment.generations.get(offset);
+        segment.items.set(offset, item);
+        size.incrementAndGet();
+        return ((long) generation << 32) | index;
+    }
+
+    /**
+     * Xóa phần tử theo handle. Trả về false nếu handle đã được xóa trước đó.
+     */
+    public boolean remove(long handle) {
+        int index = (int) handle;
+        int generation = (int) (handle >>> 32);
+        Segment<T> segment = segments[index >>> SEGMENT_SHIFT];
+        int offset = index & SEGMENT_MASK;
+        // Tăng thế hệ: chỉ một lần xóa thắng, các handle cũ của ô này hết hiệu lực
+        if (!segment.generations.compareAndSet(offset, generation, generation + 1)) return false;
+        segment.items.set(offset, null);
+        size.decrementAndGet();
+        pushFree(index);
+        return true;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Gọi 'action' cho mọi phần tử đang có. Không khóa, không cấp phát. Trả về số phần tử đã gọi.
+     */
+    public int forEach(Consumer<? super T> action) {
+        Segment<T>[] table = segments;
+        int limit = Math.min(highWater.get(), table.length << SEGMENT_SHIFT);
+        int count = 0;
+        for (int base = 0; base < limit; base += SEGMENT_SIZE) {
+            AtomicReferenceArray<T> items = table[base >>> SEGMENT_SHIFT].items;
+            int end = Math.min(SEGMENT_SIZE, limit - base);
+            for (int i = 0; i < end; i++) {
+                T item = items.get(i);
+                if (item != null) {
+                    action.accept(item);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Cấp một ô chưa từng dùng; nới bảng phân đoạn nếu cần
+     */
+    private int claimFresh() {
+        int index = highWater.getAndIncrement();
+        int segment = index >>> SEGMENT_SHIFT;
+        if (segment >= segments.length) grow(segment);
+        return index;
+    }
+
+    private void grow(int segment) {
+        growLock.lock();
+        try {
+            Segment<T>[] table = segments;
+            if (segment < table.length) return;
+            Segment<T>[] bigger = newTable(Math.max(segment + 1, table.length * 2));
+            System.arraycopy(table, 0, bigger, 0, table.length);
+            for (int i = table.length; i < bigger.length; i++) {
+                bigger[i] = new Segment<>();
+            }
+            segments = bigger;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private void pushFree(int index) {
+        Segment<T> segment = segments[index >>> SEGMENT_SHIFT];
+        int offset = index & SEGMENT_MASK;
+        while (true) {
+            long head = freeHead.get();
+            segment.nextFree.set(offset, (int) head);
+            long version = (head >>> 32) + 1;
+            if (freeHead.compareAndSet(head, (version << 32) | (index + 1L))) return;
+        }
+    }
+
+    private int popFree() {
+        while (true) {
+            long head = freeHead.get();
+            int top = (int) head;
+            if (top == NO_SLOT) return -1;
+            int index = top - 1;
+            int next = segments[index >>> SEGMENT_SHIFT].nextFree.get(index & SEGMENT_MASK);
+            long version = (head >>> 32) + 1;
+            if (freeHead.compareAndSet(head, (version << 32) | (next & 0xFFFFFFFFL))) return index;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Segment<T>[] newTable(int length) {
+        return (Segment<T>[]) new Segment<?>[length];
+    }
+
+    // --- Một đoạn cố định SEGMENT_SIZE ô: không bao giờ bị chép lại khi bảng lớn lên ---
+    private static final class Segment<T> {
+        final AtomicReferenceArray<T> items = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        final AtomicIntegerArray generations = new AtomicIntegerArray(SEGMENT_SIZE);
+        final AtomicIntegerArray nextFree = new AtomicIntegerArray(SEGMENT_SIZE);
+    }
+}
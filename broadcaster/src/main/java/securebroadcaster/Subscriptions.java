@@ -0,0 +1,102 @@
+package securebroadcaster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscriptions.java
+ * Các mẫu topic mà MỘT kết nối đã đăng ký, luôn đồng bộ với TopicRegistry chung của transport.
+ * Kết nối chưa gửi SUB lần nào được đăng ký ngầm mẫu "#" (nhận mọi topic như client cũ);
+ * SUB đầu tiên thay mẫu ngầm đó bằng mẫu client chọn.
+ * Lệnh SUB/UNSUB chỉ đến từ luồng đọc của kết nối; matches() được luồng ghi gọi khi lọc tin phát lại.
+ */
+final class Subscriptions<S> {
+
+    // Giới hạn số mẫu mỗi kết nối, để một client không thể làm phình chỉ mục
+    static final int MAX_PATTERNS = 256;
+
+    private final TopicRegistry<S> registry;
+    private final S owner;
+    private final Map<String, Long> patterns = new ConcurrentHashMap<>(); // mẫu -> handle trong chỉ mục
+    private volatile boolean explicit = false; // false: vẫn dùng mẫu "#" ngầm định
+    private boolean joined = false;
+    private long implicitHandle;
+
+    Subscriptions(TopicRegistry<S> registry, S owner) {
+        this.registry = registry;
+        this.owner = owner;
+    }
+
+    /**
+     * Kết nối vừa bắt tay xong: bắt đầu nhận broadcast (mọi topic cho tới khi có SUB)
+     */
+    void join() {
+        joined = true;
+        implicitHandle = registry.subscribe(TopicRegistry.MATCH_REST, owner);
+    }
+
+    /**
+     * Xử lý dòng SUB/UNSUB của client. Trả về false nếu dòng không phải lệnh đăng ký
+     * (mẫu sai cú pháp hoặc vượt giới hạn vẫn tính là lệnh, chỉ bị bỏ qua).
+     */
+    boolean onLine(String line) {
+        String pattern = FrameCodec.parseArgument(line, FrameCodec.SUBSCRIBE);
+        if (pattern != null) {
+            subscribe(pattern);
+            return true;
+        }
+        pattern = FrameCodec.parseArgument(line, FrameCodec.UNSUBSCRIBE);
+        if (pattern != null) {
+            unsubscribe(pattern);
+            return true;
+        }
+        return false;
+    }
+
+    private void subscribe(String pattern) {
+        if (!joined || patterns.size() >= MAX_PATTERNS || patterns.containsKey(pattern)) return;
+        if (!explicit && TopicRegistry.MATCH_REST.equals(pattern)) {
+            // Đúng mẫu ngầm định: giữ nguyên đăng ký hiện có (không để kết nối nằm hai lần trong một tập)
+            patterns.put(pattern, implicitHandle);
+            explicit = true;
+            return;
+        }
+        try {
+            patterns.put(pattern, registry.subscribe(pattern, owner));
+        } catch (IllegalArgumentException e) {
+            return; // Mẫu sai cú pháp: bỏ qua như mọi dòng không hiểu được
+        }
+        if (!explicit) {
+            // Đăng ký mẫu mới TRƯỚC khi gỡ mẫu ngầm định, để không lỡ tin nào ở giữa
+            explicit = true;
+            registry.unsubscribe(TopicRegistry.MATCH_REST, implicitHandle);
+        }
+    }
+
+    private void unsubscribe(String pattern) {
+        Long handle = joined ? patterns.remove(pattern) : null;
+        if (handle != null) registry.unsubscribe(pattern, handle);
+    }
+
+    /**
+     * Tin thuộc 'topic' có dành cho kết nối này không
+     */
+    boolean matches(String topic) {
+        if (!explicit) return true;
+        for (String pattern : patterns.keySet()) {
+            if (TopicRegistry.matches(pattern, topic)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Kết nối đóng: gỡ khỏi chỉ mục mọi mẫu đã đăng ký
+     */
+    void leave() {
+        if (!joined) return;
+        joined = false;
+        if (!explicit) registry.unsubscribe(TopicRegistry.MATCH_REST, implicitHandle);
+        patterns.forEach(registry::unsubscribe);
+        patterns.clear();
+    }
+}
@@ -0,0 +1,148 @@
+package securebroadcaster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * TimerWheel.java
+ * Bánh xe hẹn giờ băm (hashed timing wheel) cho các hạn chót của kết nối (heartbeat, im lặng quá lâu).
+ * Thời gian chia thành các tick; mỗi hạn chót nằm trong ô (tick & mask) của một mảng vòng các danh sách
+ * liên kết đôi. Đặt, đặt lại và hủy một hạn chót là O(1) và không cấp phát (nút Timeout gắn liền
+ * với kết nối và được dùng lại); mỗi tick chỉ duyệt một ô. Hạn chót xa hơn một vòng vẫn nằm trong ô
+ * của nó và bị bỏ qua cho tới đúng vòng.
+ * Không an toàn cho nhiều luồng: chỉ một luồng (event-loop, hoặc luồng heartbeat) dùng một bánh xe.
+ * Độ chính xác là một tick: hạn chót hết hạn trễ nhất một tick sau thời điểm đã đặt.
+ */
+public final class TimerWheel<T> {
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout<T>[] slots;
+    private final int mask;
+    private long tick = 0; // Tick kế tiếp chưa xử lý
+    private int size = 0;
+
+    // Các nút hết hạn trong một lần advance (dùng lại giữa các lần)
+    private final List<Timeout<T>> expired = new ArrayList<>();
+
+    /**
+     * 'span' là khoảng thời gian (nano giây) một vòng bánh xe nên phủ, thường bằng hạn chót dài nhất
+     */
+    public TimerWheel(long tickNanos, long span, long now) {
+        this.tickNanos = Math.max(1, tickNanos);
+        this.startNanos = now;
+        int count = Integer.highestOneBit((int) Math.min(1 << 16, Math.max(16, span / this.tickNanos + 1)) * 2 - 1);
+        @SuppressWarnings("unchecked")
+        Timeout<T>[] created = (Timeout<T>[]) new Timeout<?>[count];
+        this.slots = created;
+        this.mask = count - 1;
+    }
+
+    /**
+     * Tạo nút hẹn giờ cho 'owner' (chưa đặt hạn chót)
+     */
+    public static <T> Timeout<T> timeout(T owner) {
+        return new Timeout<>(owner);
+    }
+
+    /**
+     * Đặt (hoặc đặt lại) hạn chót của 'timeout' vào thời điểm 'deadline' (System.nanoTime)
+     */
+    public void schedule(Timeout<T> timeout, long deadline) {
+        cancel(timeout);
+        long due = Math.max(tick, ceilDiv(deadline - startNanos, tickNanos));
+        int slot = (int) (due & mask);
+        timeout.due = due;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (timeout.next != null) timeout.next.prev = timeout;
+        slots[slot] = timeout;
+        size++;
+    }
+
+    /**
+     * Gỡ hạn chót (không làm gì nếu nó chưa được đặt hoặc đã hết hạn)
+     */
+    public void cancel(Timeout<T> timeout) {
+        if (timeout.slot < 0) return;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+
+    /**
+     * Xử lý các tick đã qua tới 'now' và gọi 'action' với chủ của từng hạn chót đã hết hạn.
+     * 'action' được phép đặt lại hạn chót (kể cả của chính nút vừa hết hạn). Trả về số hạn chót đã hết hạn.
+     */
+    public int advance(long now, Consumer<? super T> action) {
+        long target = Math.floorDiv(now - startNanos, tickNanos);
+        if (target < tick) return 0;
+        // Bị trễ nhiều vòng (vd. máy vừa ngủ dậy): mỗi ô chỉ cần xét một lần
+        long last = Math.min(target, tick + mask);
+        for (long t = tick; t <= last; t++) {
+            Timeout<T> timeout = slots[(int) (t & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.due <= target) {
+                    cancel(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        tick = target + 1;
+        int count = expired.size();
+        try {
+            for (int i = 0; i < count; i++) {
+                action.accept(expired.get(i).owner);
+            }
+        } finally {
+            expired.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Số nano giây tới tick kế tiếp (để event-loop biết nên chờ bao lâu), -1 nếu bánh xe trống
+     */
+    public long nanosToNextTick(long now) {
+        if (size == 0) return -1;
+        return Math.max(0, startNanos + tick * tickNanos - now);
+    }
+
+    /**
+     * Số hạn chót đang đặt
+     */
+    public int size() {
+        return size;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    // --- Một hạn chót: nút của danh sách liên kết đôi trong một ô, gắn với một chủ (kết nối) ---
+    public static final class Timeout<T> {
+        private final T owner;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private long due;      // Tick hết hạn
+        private int slot = -1; // Ô đang nằm, -1 = chưa đặt
+
+        private Timeout(T owner) {
+            this.owner = owner;
+        }
+
+        public boolean isScheduled() {
+            return slot >= 0;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package securebroadcaster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * TopicRegistry.java
+ * Chỉ mục topic -> người đăng ký, dạng cây (trie) theo từng đoạn của topic ("tin.the-thao.bong-da").
+ * Mẫu đăng ký có thể chứa ký tự đại diện:
+ *   '*'  khớp đúng một đoạn       ("tin.*"   khớp "tin.the-thao", không khớp "tin.the-thao.bong-da")
+ *   '#'  khớp mọi đoạn còn lại, kể cả không đoạn nào; chỉ được đứng cuối ("tin.#" khớp "tin" và "tin.a.b")
+ * Topic rỗng ("") là topic mặc định, chỉ khớp mẫu "#".
+ *
+ * Mỗi publish chỉ đi theo các nhánh khớp của cây (số bước ~ số đoạn của topic), không duyệt mọi kết nối.
+ * Người đăng ký của mỗi nút nằm trong một SlotRegistry: thêm/gỡ O(1), duyệt không khóa.
+ * Việc sửa cấu trúc cây (thêm/gỡ nút) tuần tự hóa bằng một khóa; tra cứu (mỗi publish) không khóa.
+ */
+public final class TopicRegistry<S> {
+
+    public static final String MATCH_ONE = "*";
+    public static final String MATCH_REST = "#";
+
+    private final Node<S> root = new Node<>(null, null);
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Đăng ký 'subscriber' với một mẫu, trả về handle dùng cho unsubscribe.
+     * Ném IllegalArgumentException nếu mẫu không hợp lệ.
+     */
+    public long subscribe(String pattern, S subscriber) {
+        String[] segments = checked(pattern, true);
+        writeLock.lock();
+        try {
+            Node<S> node = root;
+            int n = segments.length;
+            boolean rest = n > 0 && MATCH_REST.equals(segments[n - 1]);
+            for (int i = 0; i < (rest ? n - 1 : n); i++) {
+                Node<S> parent = node;
+                node = parent.children.computeIfAbsent(segments[i], s -> new Node<>(parent, s));
+            }
+            return (rest ? node.rest : node.exact).add(subscriber);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gỡ một đăng ký (theo mẫu và handle mà subscribe đã trả về)
+     */
+    public void unsubscribe(String pattern, long handle) {
+        String[] segments = checked(pattern, true);
+        writeLock.lock();
+        try {
+            Node<S> node = root;
+            int n = segments.length;
+            boolean rest = n > 0 && MATCH_REST.equals(segments[n - 1]);
+            for (int i = 0; i < (rest ? n - 1 : n) && node != null; i++) {
+                node = node.children.get(segments[i]);
+            }
+            if (node == null) return;
+            (rest ? node.rest : node.exact).remove(handle);
+            prune(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gọi 'action' đúng một lần cho mỗi người đăng ký khớp với topic. Trả về số người đã gọi.
+     */
+    public int forEachMatch(String topic, Consumer<? super S> action) {
+        return match(topic).forEach(action);
+    }
+
+    /**
+     * Các tập người đăng ký khớp với topic (tra trên cây ngay bây giờ, duyệt sau bằng Match.forEach).
+     * Cho phép luồng publish tra chỉ mục rồi giao việc duyệt cho luồng khác (xem FanOutShards).
+     */
+    public Match<S> match(String topic) {
+        List<SlotRegistry<S>> matched = new ArrayList<>(4);
+        collect(root, split(topic), 0, matched);
+        return new Match<>(matched);
+    }
+
+    /**
+     * Mẫu 'pattern' có khớp với 'topic' không (dùng khi lọc tin phát lại của một kết nối)
+     */
+    public static boolean matches(String pattern, String topic) {
+        return matches(split(pattern), 0, split(topic), 0);
+    }
+
+    /**
+     * Kiểm tra cú pháp mẫu đăng ký; ném IllegalArgumentException nếu sai
+     */
+    public static void validatePattern(String pattern) {
+        checked(pattern, true);
+    }
+
+    /**
+     * Kiểm tra topic khi publish (không chứa ký tự đại diện); ném IllegalArgumentException nếu sai
+     */
+    public static void validateTopic(String topic) {
+        checked(topic, false);
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] topic, int t) {
+        while (p < pattern.length) {
+            if (MATCH_REST.equals(pattern[p])) return true;
+            if (t == topic.length) return false;
+            if (!MATCH_ONE.equals(pattern[p]) && !pattern[p].equals(topic[t])) return false;
+            p++;
+            t++;
+        }
+        return t == topic.length;
+    }
+
+    private static <S> void collect(Node<S> node, String[] topic, int depth, List<SlotRegistry<S>> out) {
+        if (!node.rest.isEmpty()) out.add(node.rest);
+        if (depth == topic.length) {
+            if (!node.exact.isEmpty()) out.add(node.exact);
+            return;
+        }
+        Node<S> child = node.children.get(topic[depth]);
+        if (child != null) collect(child, topic, depth + 1, out);
+        Node<S> any = node.children.get(MATCH_ONE);
+        if (any != null) collect(any, topic, depth + 1, out);
+    }
+
+    /**
+     * Gỡ các nút không còn người đăng ký và không còn nhánh con (giữ cây gọn khi topic thay đổi liên tục)
+     */
+    private void prune(Node<S> node) {
+        while (node.parent != null && node.exact.isEmpty() && node.rest.isEmpty() && node.children.isEmpty()) {
+            node.parent.children.remove(node.segment, node);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Tách topic/mẫu theo dấu '.'; "" là topic mặc định (không đoạn nào)
+     */
+    private static String[] split(String topic) {
+        return topic.isEmpty() ? new String[0] : topic.split("\\.", -1);
+    }
+
+    private static String[] checked(String topic, boolean pattern) {
+        if (pattern && topic.isEmpty()) throw new IllegalArgumentException("Mẫu topic rỗng");
+        if (topic.length() > FrameCodec.MAX_TOPIC_LENGTH) {
+            throw new IllegalArgumentException("Topic dài quá " + FrameCodec.MAX_TOPIC_LENGTH + " ký tự");
+        }
+        String[] segments = split(topic);
+        for (int i = 0; i < segments.length; i++) {
+            String s = segments[i];
+            if (s.isEmpty() || s.indexOf(' ') >= 0 || s.indexOf('\t') >= 0) {
+                throw new IllegalArgumentException("Topic không hợp lệ: " + topic);
+            }
+            boolean wildcard = MATCH_ONE.equals(s) || MATCH_REST.equals(s);
+            if (!pattern && wildcard) {
+                throw new IllegalArgumentException("Topic khi publish không được chứa ký tự đại diện: " + topic);
+            }
+            if (pattern && MATCH_REST.equals(s) && i != segments.length - 1) {
+                throw new IllegalArgumentException("'#' chỉ được đứng cuối mẫu: " + topic);
+            }
+        }
+        return segments;
+    }
+
+    // --- Kết quả tra cứu: các tập người đăng ký khớp với một topic ---
+    public static final class Match<S> {
+        private final List<SlotRegistry<S>> sets;
+
+        private Match(List<SlotRegistry<S>> sets) {
+            this.sets = sets;
+        }
+
+        public boolean isEmpty() {
+            return sets.isEmpty();
+        }
+
+        /**
+         * Số người nhận (chính xác nếu chỉ một mẫu khớp; cận trên nếu các mẫu chồng nhau)
+         */
+        public int size() {
+            int size = 0;
+            for (SlotRegistry<S> subscribers : sets) {
+                size += subscribers.size();
+            }
+            return size;
+        }
+
+        /**
+         * Gọi 'action' đúng một lần cho mỗi người đăng ký. Trả về số người đã gọi.
+         */
+        public int forEach(Consumer<? super S> action) {
+            if (sets.size() == 1) {
+                // Thường gặp: chỉ một tập khớp, không thể trùng nên không cần khử trùng
+                return sets.get(0).forEach(action);
+            }
+            // Nhiều mẫu cùng khớp (vd. "tin.*" và "tin.#"): một kết nối chỉ được nhận tin một lần
+            Set<S> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (SlotRegistry<S> subscribers : sets) {
+                subscribers.forEach(subscriber -> {
+                    if (seen.add(subscriber)) action.accept(subscriber);
+                });
+            }
+            return seen.size();
+        }
+    }
+
+    // --- Một nút của cây: một đoạn topic ---
+    private static final class Node<S> {
+        final Node<S> parent;
+        final String segment;
+        final ConcurrentHashMap<String, Node<S>> children = new ConcurrentHashMap<>();
+        final SlotRegistry<S> exact = new SlotRegistry<>(); // Mẫu kết thúc đúng tại nút này
+        final SlotRegistry<S> rest = new SlotRegistry<>();  // Mẫu "<đường tới nút>.#"
+
+        Node(Node<S> parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package securebroadcaster;
+
+/**
+ * WireFormat.java
+ * Định dạng dữ liệu server -> client của một kết nối.
+ */
+public enum WireFormat {
+    LINE,    // Giao thức cũ: mỗi tin là một dòng văn bản (readLine)
+    BINARY,  // Khung nhị phân có độ dài (xem FrameCodec), thỏa thuận khi kết nối
+    DEFLATE  // Khung nhị phân, payload nén deflate khi đủ lớn (FLAG_DEFLATE); thỏa thuận sau BINARY
+}
@@ -0,0 +1,70 @@
+package securebroadcaster;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WriteStats.java
+ * Bộ đếm phía ghi của một transport: số tin đã gửi, số byte (trước TLS), số byte nén tiết kiệm được,
+ * số bản ghi TLS đã tạo và số lần ghi xuống socket (mỗi lần ghi là một syscall write). Khi bật gom nhóm (server.batch) nhiều tin đi chung một bản ghi
+ * và một lần ghi, nên "lần ghi / tin" giảm xuống dưới 1.
+ * Các luồng ghi cộng dồn song song qua LongAdder, không tranh chấp.
+ */
+public final class WriteStats {
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    /**
+     * Đã gửi xong một tin dài 'length' byte; 'saved' là số byte nén bớt so với khung không nén
+     */
+    public void message(int length, int saved) {
+        messages.increment();
+        bytes.add(length);
+        if (saved != 0) savedBytes.add(saved);
+    }
+
+    public void record() {
+        records.increment();
+    }
+
+    public void write() {
+        writes.increment();
+    }
+
+    public long messages() {
+        return messages.sum();
+    }
+
+    public long bytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Số byte băng thông tiết kiệm được nhờ nén (cộng dồn qua mọi kết nối nhận bản nén)
+     */
+    public long savedBytes() {
+        return savedBytes.sum();
+    }
+
+    public long records() {
+        return records.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * Mô tả ngắn để ghi log, ví dụ
+     * "1200 tin, 96000 byte (nén bớt 0 byte) / 40 bản ghi TLS / 40 lần ghi socket (0.03 lần ghi/tin)"
+     */
+    public String summary() {
+        long m = messages();
+        long w = writes();
+        return String.format("%d tin, %d byte (nén bớt %d byte) / %d bản ghi TLS / %d lần ghi socket (%.2f lần ghi/tin)",
+                m, bytes(), savedBytes(), records(), w, m == 0 ? 0.0 : (double) w / m);
+    }
+}
@@ -0,0 +1,301 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BroadcastJournalTest.java
+ * Kiểm tra journal trên thư mục tạm: ghi rồi đọc lại (kể cả qua ranh giới segment), giữ/xóa segment cũ,
+ * tra seq theo thời điểm, và khôi phục sau khi tiến trình dừng đột ngột (khung ghi dở, chỉ mục mới hơn log,
+ * segment cuối rỗng).
+ */
+class BroadcastJournalTest {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private BroadcastJournal open() throws IOException {
+        return open(100);
+    }
+
+    private BroadcastJournal open(int retainSegments) throws IOException {
+        return BroadcastJournal.open(dir, SEGMENT_SIZE, retainSegments, FsyncPolicy.NONE, 0);
+    }
+
+    /**
+     * Tin có timestamp chọn trước (tin tạo bằng BroadcastPayload.message lấy giờ hệ thống)
+     */
+    private static BroadcastPayload message(long seq, long timestamp) {
+        byte[] text = ("tin " + seq + " " + "x".repeat(100)).getBytes(StandardCharsets.UTF_8);
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, seq, timestamp, text);
+        return BroadcastPayload.framed(ByteBuffer.wrap(frame), seq, timestamp);
+    }
+
+    private static void appendRange(BroadcastJournal journal, long from, long to) throws IOException {
+        for (long seq = from; seq <= to; seq++) journal.append(message(seq, 1000 + seq));
+    }
+
+    private static void assertReads(BroadcastJournal journal, long from, long to) {
+        BroadcastJournal.Reader reader = journal.reader(from);
+        for (long seq = from; seq <= to; seq++) {
+            BroadcastPayload payload = reader.next();
+            assertNotNull(payload, "thiếu tin " + seq);
+            assertEquals(seq, payload.seq());
+            assertEquals(1000 + seq, payload.timestamp());
+            assertTrue(payload.message().startsWith("tin " + seq + " "));
+        }
+        assertNull(reader.next());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    // --- Ghi và đọc lại ---
+
+    @Test
+    void emptyJournal() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            assertEquals(0, journal.lastSeq());
+            assertEquals(1, journal.firstSeq());
+            assertNull(journal.reader(1).next());
+            assertEquals(1, journal.seqAt(0));
+        }
+    }
+
+    @Test
+    void roundTripAcrossSegmentsAndReopen() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 1, 1000);
+            assertTrue(segments().size() > 3, "cần nhiều segment để đọc qua ranh giới");
+            assertEquals(1, journal.firstSeq());
+            assertEquals(1000, journal.lastSeq());
+            assertReads(journal, 1, 1000);
+            assertReads(journal, 517, 1000); // Bắt đầu giữa một segment
+        }
+        try (BroadcastJournal journal = open()) {
+            assertEquals(1000, journal.lastSeq());
+            assertReads(journal, 1, 1000);
+            appendRange(journal, 1001, 1100);
+            assertReads(journal, 990, 1100);
+        }
+    }
+
+    @Test
+    void readerStopsAtLastSeqAndContinuesAfterAppend() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 1, 10);
+            BroadcastJournal.Reader reader = journal.reader(9);
+            assertEquals(9, reader.next().seq());
+            assertEquals(10, reader.next().seq());
+            assertNull(reader.next());
+            appendRange(journal, 11, 11);
+            assertEquals(11, reader.next().seq());
+        }
+    }
+
+    @Test
+    void journalMayStartAfterSeqOne() throws IOException {
+        // Khởi động lại với ReplayRing rỗng nhưng seq tiếp nối journal cũ
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 500, 520);
+            assertEquals(500, journal.firstSeq());
+            BroadcastJournal.Reader reader = journal.reader(1);
+            assertEquals(500, reader.nextSeq());
+            assertEquals(500, reader.next().seq());
+        }
+    }
+
+    // --- Giữ và xóa segment cũ ---
+
+    @Test
+    void rollDeletesSegmentsBeyondRetention() throws IOException {
+        try (BroadcastJournal journal = open(3)) {
+            appendRange(journal, 1, 2000);
+            assertEquals(3, segments().size());
+            long first = journal.firstSeq();
+            assertTrue(first > 1);
+            assertEquals(2000, journal.lastSeq());
+            assertReads(journal, first, 2000);
+
+            // Người đọc xin seq đã bị xóa bắt đầu từ tin cũ nhất còn giữ
+            BroadcastJournal.Reader reader = journal.reader(1);
+            assertEquals(first, reader.next().seq());
+        }
+        try (BroadcastJournal journal = open(3)) {
+            assertEquals(2000, journal.lastSeq());
+            assertReads(journal, journal.firstSeq(), 2000);
+        }
+    }
+
+    @Test
+    void readerKeepsReadingASegmentDeletedUnderneathIt() throws IOException {
+        try (BroadcastJournal journal = open(2)) {
+            appendRange(journal, 1, 100);
+            BroadcastJournal.Reader reader = journal.reader(1);
+            assertEquals(1, reader.next().seq());
+            appendRange(journal, 101, 2000); // Segment đầu bị xóa khỏi đĩa
+            assertTrue(journal.firstSeq() > 100);
+            assertEquals(2, reader.next().seq());
+        }
+    }
+
+    // --- Tra seq theo thời điểm ---
+
+    @Test
+    void seqAtFindsTheFirstMessageAtOrAfterATimestamp() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 1, 1000); // timestamp = 1000 + seq
+            assertEquals(1, journal.seqAt(0));
+            assertEquals(1, journal.seqAt(1001));
+            assertEquals(500, journal.seqAt(1500));
+            assertEquals(1000, journal.seqAt(2000));
+            assertEquals(1001, journal.seqAt(2001));
+        }
+    }
+
+    @Test
+    void seqAtWithEqualTimestampsReturnsTheFirstOfThem() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            long seq = 1;
+            for (; seq <= 10; seq++) journal.append(message(seq, 100));
+            // Nhiều tin cùng một mốc, vượt qua vài mục chỉ mục (mỗi INDEX_INTERVAL byte một mục)
+            for (; seq <= 110; seq++) journal.append(message(seq, 200));
+            for (; seq <= 120; seq++) journal.append(message(seq, 300));
+            assertEquals(11, journal.seqAt(200));
+            assertEquals(11, journal.seqAt(101));
+            assertEquals(111, journal.seqAt(201));
+            assertEquals(121, journal.seqAt(301));
+        }
+    }
+
+    @Test
+    void seqAtWithEqualTimestampsAcrossSegments() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            long seq = 1;
+            for (; seq <= 10; seq++) journal.append(message(seq, 100));
+            for (; seq <= 400; seq++) journal.append(message(seq, 200)); // Trải qua vài segment
+            assertTrue(segments().size() > 2);
+            assertEquals(11, journal.seqAt(200));
+            assertEquals(11, journal.seqAt(150));
+            assertEquals(401, journal.seqAt(201));
+        }
+    }
+
+    // --- Khôi phục sau khi dừng đột ngột ---
+
+    @Test
+    void tornFrameAtTheTailIsDiscarded() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 1, 50);
+        }
+        Path log = segments().get(0);
+        int tail = frameOffset(log, 50);
+        // Khung 50 ghi dở: trường length đã có nhưng thân (seq) là rác
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, 999_999), tail + 6);
+        }
+        try (BroadcastJournal journal = open()) {
+            assertEquals(49, journal.lastSeq());
+            assertReads(journal, 1, 49);
+            // Ghi tiếp đè lên khung hỏng
+            appendRange(journal, 50, 60);
+            assertReads(journal, 40, 60);
+        }
+        try (BroadcastJournal journal = open()) {
+            assertEquals(60, journal.lastSeq());
+        }
+    }
+
+    @Test
+    void indexEntryNewerThanTheLogIsDropped() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 1, 100); // ~13 KB: một segment, vài mục chỉ mục
+        }
+        Path log = segments().get(0);
+        Path index = Path.of(log.toString().replace(".log", ".idx"));
+        long[] lastEntry = lastIndexEntry(index);
+        assertTrue(lastEntry[0] > 1, "cần ít nhất hai mục chỉ mục");
+        // Chỉ mục đã xuống đĩa nhưng phần log từ khung của mục cuối thì chưa
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate((int) (channel.size() - lastEntry[2])), lastEntry[2]);
+        }
+        try (BroadcastJournal journal = open()) {
+            long last = lastEntry[0] - 1;
+            assertEquals(last, journal.lastSeq());
+            assertReads(journal, 1, last);
+            appendRange(journal, last + 1, 100);
+            assertReads(journal, 1, 100);
+        }
+    }
+
+    @Test
+    void emptyTrailingSegmentIsIgnored() throws IOException {
+        try (BroadcastJournal journal = open()) {
+            appendRange(journal, 1, 20);
+        }
+        // Segment mới vừa tạo (đã cấp chỗ) thì tiến trình dừng, chưa có khung nào
+        Path empty = dir.resolve(String.format("%020d.log", 21));
+        Files.write(empty, new byte[SEGMENT_SIZE]);
+        try (BroadcastJournal journal = open()) {
+            assertEquals(20, journal.lastSeq());
+            assertReads(journal, 1, 20);
+            appendRange(journal, 21, 30);
+            assertReads(journal, 1, 30);
+        }
+        try (BroadcastJournal journal = open()) {
+            assertEquals(30, journal.lastSeq());
+            assertReads(journal, 1, 30);
+        }
+    }
+
+    @Test
+    void unrelatedFilesAreIgnored() throws IOException {
+        Files.writeString(dir.resolve("ghi-chu.log"), "không phải segment");
+        try (BroadcastJournal journal = open()) {
+            assertEquals(0, journal.lastSeq());
+            appendRange(journal, 1, 3);
+            assertReads(journal, 1, 3);
+        }
+    }
+
+    /**
+     * Vị trí khung có 'seq' trong file log (quét từ đầu theo trường length)
+     */
+    private static int frameOffset(Path log, long seq) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(log));
+        int pos = 0;
+        while (data.getInt(pos) > 0) {
+            if (data.getLong(pos + 6) == seq) return pos;
+            pos += FrameCodec.LENGTH_SIZE + data.getInt(pos);
+        }
+        throw new AssertionError("không thấy khung " + seq);
+    }
+
+    /**
+     * Mục chỉ mục cuối (seq, timestamp, vị trí)
+     */
+    private static long[] lastIndexEntry(Path index) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(index));
+        int at = 0;
+        while (at + 24 <= data.capacity() && data.getLong(at) != 0) at += 24;
+        assertTrue(at > 0);
+        return new long[]{data.getLong(at - 24), data.getLong(at - 16), data.getLong(at - 8)};
+    }
+}
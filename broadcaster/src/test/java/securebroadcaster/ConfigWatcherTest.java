@@ -0,0 +1,184 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConfigWatcherTest.java
+ * Kiểm tra nạp lại khi đang chạy: luồng theo dõi chỉ báo các file của máy chủ và gom các lần ghi dồn dập
+ * thành một lần nạp; khóa đổi được phân loại thành áp dụng ngay, chỉ cho kết nối mới, hoặc chờ khởi động lại.
+ */
+class ConfigWatcherTest {
+
+    @TempDir
+    Path dir;
+
+    private ConfigWatcher watcher;
+
+    @AfterEach
+    void stopWatcher() {
+        if (watcher != null) watcher.stop();
+    }
+
+    // Engine không mở cổng: chỉ ghi lại các lần reload mà watcher gọi
+    private static final class RecordingEngine extends BroadcastEngine {
+        final Set<Path> files;
+        final BlockingQueue<Set<Path>> reloads = new LinkedBlockingQueue<>();
+
+        RecordingEngine(Path... files) {
+            super(BroadcastConfig.fromProperties(new Properties()), line -> { });
+            this.files = Set.of(files);
+        }
+
+        @Override
+        Set<Path> watchedFiles() {
+            return files;
+        }
+
+        @Override
+        public synchronized void reload(Set<Path> changed) {
+            reloads.add(new HashSet<>(changed));
+        }
+    }
+
+    private Path file(String name) throws IOException {
+        Path file = dir.resolve(name).toAbsolutePath().normalize();
+        Files.writeString(file, "ban đầu");
+        return file;
+    }
+
+    // --- Luồng theo dõi ---
+
+    @Test
+    void changeToAWatchedFileTriggersReload() throws Exception {
+        Path properties = file("server.properties");
+        Path keystore = file("server.jks");
+        RecordingEngine engine = new RecordingEngine(properties, keystore);
+        watcher = ConfigWatcher.start(engine, line -> { });
+
+        Files.writeString(properties, "server.port=2000");
+        assertEquals(Set.of(properties), engine.reloads.poll(10, TimeUnit.SECONDS));
+        assertNull(engine.reloads.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void unrelatedFilesInTheSameDirectoryAreIgnored() throws Exception {
+        Path properties = file("server.properties");
+        RecordingEngine engine = new RecordingEngine(properties);
+        watcher = ConfigWatcher.start(engine, line -> { });
+
+        Files.writeString(dir.resolve("ghi-chu.txt"), "không liên quan");
+        assertNull(engine.reloads.poll(2, TimeUnit.SECONDS));
+
+        Files.writeString(properties, "server.port=2000");
+        assertEquals(Set.of(properties), engine.reloads.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void burstOfWritesIsDebouncedIntoOneReload() throws Exception {
+        Path properties = file("server.properties");
+        Path keystore = file("server.jks");
+        RecordingEngine engine = new RecordingEngine(properties, keystore);
+        watcher = ConfigWatcher.start(engine, line -> { });
+
+        // Ghi từng phần, cách nhau ít hơn khoảng yên lặng
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(keystore, "phần " + i);
+            Thread.sleep(50);
+        }
+        Files.writeString(properties, "server.port=2000");
+        assertEquals(Set.of(properties, keystore), engine.reloads.poll(10, TimeUnit.SECONDS));
+        assertNull(engine.reloads.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stoppedWatcherNoLongerReloads() throws Exception {
+        Path properties = file("server.properties");
+        RecordingEngine engine = new RecordingEngine(properties);
+        watcher = ConfigWatcher.start(engine, line -> { });
+        watcher.stop();
+
+        Files.writeString(properties, "server.port=2000");
+        assertNull(engine.reloads.poll(2, TimeUnit.SECONDS));
+    }
+
+    // --- Phân loại khóa đổi ---
+
+    private static BroadcastConfig config(String... entries) {
+        Properties props = new Properties();
+        for (int i = 0; i < entries.length; i += 2) props.setProperty(entries[i], entries[i + 1]);
+        return BroadcastConfig.fromProperties(props);
+    }
+
+    @Test
+    void changedKeysReportsOnlyDifferences() {
+        BroadcastConfig current = config("server.port", "1000", "server.batch.max", "32");
+        assertEquals(List.of(), current.changedKeys(config("server.port", "1000", "server.batch.max", "32")));
+        assertEquals(List.of("server.port", "server.replay.capacity"),
+                current.changedKeys(config("server.port", "1001", "server.batch.max", "32",
+                        "server.replay.capacity", "10")));
+    }
+
+    @Test
+    void reloadableKeysAreCopiedAndTheRestWaitForRestart() {
+        BroadcastConfig current = config("server.port", "1000");
+        BroadcastConfig fresh = config(
+                // Áp dụng ngay
+                "server.port", "2000", "server.keystore", "khac.jks", "server.handshake.timeout", "1234",
+                "server.session.cache", "10", "server.session.timeout", "60", "server.batch", "true",
+                "server.batch.linger", "7", "server.batch.max", "8", "server.heartbeat.interval", "900",
+                "server.heartbeat.timeout", "2700",
+                // Chỉ cho kết nối mới
+                "server.queue.capacity", "77", "server.queue.overflow", "drop-newest",
+                // Cần khởi động lại
+                "server.mode", "blocking", "server.replay.capacity", "10", "server.compress", "true");
+
+        List<String> keys = current.changedKeys(fresh);
+        List<String> restart = keys.stream().filter(key -> !BroadcastConfig.RELOADABLE.contains(key)).toList();
+        List<String> forNew = keys.stream().filter(BroadcastConfig.NEW_CONNECTIONS_ONLY::contains).toList();
+        assertEquals(List.of("server.mode", "server.replay.capacity", "server.compress"), restart);
+        assertEquals(List.of("server.queue.capacity", "server.queue.overflow"), forNew);
+        assertTrue(BroadcastConfig.RELOADABLE.containsAll(BroadcastConfig.NEW_CONNECTIONS_ONLY));
+
+        current.copyReloadable(fresh);
+        // Sau khi chép, chỉ còn khác đúng các khóa cần khởi động lại
+        assertEquals(restart, current.changedKeys(fresh));
+        assertEquals(2000, current.port());
+        assertEquals(Path.of("khac.jks"), current.keystorePath());
+        assertEquals(77, current.queueCapacity());
+        assertEquals(OverflowPolicy.DROP_NEWEST, current.overflowPolicy());
+        assertTrue(current.nioMode());
+    }
+
+    @Test
+    void everyComparableReloadableKeyIsCopied() {
+        // Mỗi khóa RELOADABLE mà changedKeys so được phải được copyReloadable chép sang
+        BroadcastConfig current = config();
+        BroadcastConfig fresh = config("server.port", "2000", "server.keystore", "khac.jks",
+                "server.handshake.timeout", "1", "server.session.cache", "1", "server.session.timeout", "1",
+                "server.queue.capacity", "1", "server.queue.overflow", "disconnect", "server.batch", "true",
+                "server.batch.linger", "1", "server.batch.max", "1", "server.heartbeat.interval", "1",
+                "server.heartbeat.timeout", "1");
+        Set<String> changed = new HashSet<>(current.changedKeys(fresh));
+        Set<String> comparable = new HashSet<>(BroadcastConfig.RELOADABLE);
+        comparable.remove("server.password"); // changedKeys không so mật khẩu
+        assertEquals(comparable, changed);
+
+        current.copyReloadable(fresh);
+        assertEquals(List.of(), current.changedKeys(fresh));
+    }
+}
@@ -0,0 +1,150 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeflateCodecTest.java
+ * Kiểm tra nén/giải nén payload: có và không có từ điển, từ điển không khớp (DICTID), payload nhỏ hoặc
+ * nén không lợi thì gửi nguyên, bộ đệm đích thiếu chỗ và luồng bị cắt cụt.
+ */
+class DeflateCodecTest {
+
+    private static final byte[] DICTIONARY =
+            "{\"topic\":\"gia.vang\",\"mua\":,\"ban\":,\"don-vi\":\"VND/luong\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] text(int copies) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < copies; i++) {
+            sb.append("{\"topic\":\"gia.vang\",\"mua\":").append(7_000_000 + i)
+                    .append(",\"ban\":").append(7_100_000 + i).append(",\"don-vi\":\"VND/luong\"}");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] roundTrip(DeflateCodec codec, byte[] compressed, int originalLength) throws IOException {
+        byte[] dst = new byte[originalLength];
+        int n = codec.inflate(compressed, 0, compressed.length, dst);
+        assertEquals(originalLength, n);
+        return dst;
+    }
+
+    @Test
+    void roundTripWithoutDictionary() throws IOException {
+        DeflateCodec codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 0);
+        assertEquals(0, codec.dictionaryId());
+        byte[] original = text(20);
+        byte[] compressed = codec.deflate(original, 0, original.length);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < original.length);
+        assertArrayEquals(original, roundTrip(codec, compressed, original.length));
+        assertEquals(1, codec.compressedCount());
+        assertEquals(original.length, codec.bytesIn());
+        assertEquals(compressed.length, codec.bytesOut());
+        assertEquals(1, codec.inflatedCount());
+    }
+
+    @Test
+    void compressesASliceOfTheSource() throws IOException {
+        DeflateCodec codec = new DeflateCodec(Deflater.BEST_SPEED, null, 0);
+        byte[] original = text(20);
+        byte[] padded = new byte[original.length + 10];
+        System.arraycopy(original, 0, padded, 7, original.length);
+        byte[] compressed = codec.deflate(padded, 7, original.length);
+        assertArrayEquals(original, roundTrip(codec, compressed, original.length));
+    }
+
+    @Test
+    void dictionaryShrinksShortMessagesAndRoundTrips() throws IOException {
+        DeflateCodec plain = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 0);
+        DeflateCodec withDictionary = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, DICTIONARY, 0);
+        assertEquals(DeflateCodec.dictionaryId(DICTIONARY), withDictionary.dictionaryId());
+        assertNotEquals(0, withDictionary.dictionaryId());
+
+        byte[] original = text(1);
+        byte[] compressed = withDictionary.deflate(original, 0, original.length);
+        assertNotNull(compressed);
+        byte[] withoutDictionary = plain.deflate(original, 0, original.length);
+        assertTrue(withoutDictionary == null || compressed.length < withoutDictionary.length);
+        assertArrayEquals(original, roundTrip(withDictionary, compressed, original.length));
+        // Một client có cùng từ điển (bộ giải nén riêng) cũng giải được
+        DeflateCodec client = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, DICTIONARY.clone(), 0);
+        assertArrayEquals(original, roundTrip(client, compressed, original.length));
+    }
+
+    @Test
+    void acceptsOnlyClientsWithTheSameDictionary() {
+        DeflateCodec plain = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 0);
+        DeflateCodec withDictionary = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, DICTIONARY, 0);
+        long id = DeflateCodec.dictionaryId(DICTIONARY);
+        assertTrue(plain.accepts(0));
+        assertTrue(plain.accepts(id));
+        assertTrue(withDictionary.accepts(id));
+        assertFalse(withDictionary.accepts(0));
+        assertFalse(withDictionary.accepts(id + 1));
+    }
+
+    @Test
+    void dictionaryMismatchIsReported() {
+        DeflateCodec sender = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, DICTIONARY, 0);
+        byte[] original = text(3);
+        byte[] compressed = sender.deflate(original, 0, original.length);
+        assertNotNull(compressed);
+
+        byte[] other = "tu-dien-khac".repeat(8).getBytes(StandardCharsets.UTF_8);
+        DeflateCodec wrongDictionary = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, other, 0);
+        IOException e = assertThrows(IOException.class,
+                () -> wrongDictionary.inflate(compressed, 0, compressed.length, new byte[original.length]));
+        assertTrue(e.getMessage().contains("DICTID " + sender.dictionaryId()), e.getMessage());
+
+        DeflateCodec noDictionary = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 0);
+        assertThrows(IOException.class,
+                () -> noDictionary.inflate(compressed, 0, compressed.length, new byte[original.length]));
+    }
+
+    @Test
+    void smallOrIncompressiblePayloadsAreSentAsIs() {
+        DeflateCodec codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 256);
+        byte[] small = text(1);
+        assertTrue(small.length < 256);
+        assertNull(codec.deflate(small, 0, small.length));
+
+        byte[] random = new byte[4096];
+        new java.util.Random(1).nextBytes(random);
+        assertNull(codec.deflate(random, 0, random.length));
+        assertEquals(2, codec.skippedCount());
+        assertEquals(0, codec.compressedCount());
+    }
+
+    @Test
+    void tooSmallDestinationAsksForMoreRoom() throws IOException {
+        DeflateCodec codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 0);
+        byte[] original = text(20);
+        byte[] compressed = codec.deflate(original, 0, original.length);
+        assertEquals(-1, codec.inflate(compressed, 0, compressed.length, new byte[original.length / 2]));
+        // Bộ giải nén được trả về nhóm ở trạng thái sạch: lần gọi sau vẫn đúng
+        assertArrayEquals(original, roundTrip(codec, compressed, original.length));
+    }
+
+    @Test
+    void truncatedOrCorruptStreamsFail() {
+        DeflateCodec codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION, null, 0);
+        byte[] original = text(20);
+        byte[] compressed = codec.deflate(original, 0, original.length);
+        byte[] dst = new byte[original.length];
+
+        IOException truncated = assertThrows(IOException.class,
+                () -> codec.inflate(compressed, 0, compressed.length / 2, dst));
+        assertTrue(truncated.getMessage().contains("cắt cụt"), truncated.getMessage());
+
+        byte[] corrupt = Arrays.copyOf(compressed, compressed.length);
+        corrupt[0] = 0x00; // Sai đầu luồng zlib
+        assertThrows(IOException.class, () -> codec.inflate(corrupt, 0, corrupt.length, dst));
+    }
+}
@@ -0,0 +1,123 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FanOutShardsTest.java
+ * Kiểm tra chia fan-out theo shard: mỗi kết nối nhận đúng các tin khớp topic, theo đúng thứ tự publish,
+ * dù việc giao chạy song song trên nhiều luồng shard.
+ */
+class FanOutShardsTest {
+
+    private static final int SHARDS = 4;
+
+    private final ExecutorService[] executors = new ExecutorService[SHARDS];
+
+    {
+        for (int i = 0; i < SHARDS; i++) executors[i] = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private void drain() throws InterruptedException {
+        for (ExecutorService executor : executors) executor.shutdown();
+        for (ExecutorService executor : executors) assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    // Kết nối giả: chỉ luồng của shard sở hữu ghi vào 'received'
+    private record Connection(String pattern, FanOutShards.Shard<Connection> shard, List<Long> received) {
+    }
+
+    private static Connection connect(FanOutShards<Connection> shards, String pattern) {
+        Connection connection = new Connection(pattern, shards.assign(), new ArrayList<>());
+        connection.shard().subscribers().subscribe(pattern, connection);
+        return connection;
+    }
+
+    @Test
+    void assignIsRoundRobin() {
+        FanOutShards<Connection> shards = new FanOutShards<>(executors);
+        assertEquals(SHARDS, shards.count());
+        for (int i = 0; i < 2 * SHARDS; i++) assertEquals(i % SHARDS, shards.assign().index());
+        assertSame(shards.shard(2), shards.shard(2));
+    }
+
+    @Test
+    void eachConnectionReceivesItsMessagesInPublishOrder() throws InterruptedException {
+        FanOutShards<Connection> shards = new FanOutShards<>(executors);
+        String[] patterns = {"gia.*", "gia.vang", "tin.#", "#"};
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 100; i++) connections.add(connect(shards, patterns[i % patterns.length]));
+
+        String[] topics = {"gia.vang", "gia.usd", "tin.the-thao", "khac"};
+        List<String> published = new ArrayList<>();
+        Random random = new Random(3);
+        for (long seq = 0; seq < 5_000; seq++) {
+            String topic = topics[random.nextInt(topics.length)];
+            published.add(topic);
+            long value = seq;
+            int expected = 0;
+            for (Connection c : connections) if (TopicRegistry.matches(c.pattern(), topic)) expected++;
+            assertEquals(expected, shards.broadcast(topic, c -> c.received().add(value)));
+        }
+        drain();
+
+        for (Connection connection : connections) {
+            List<Long> expected = new ArrayList<>();
+            for (int seq = 0; seq < published.size(); seq++) {
+                if (TopicRegistry.matches(connection.pattern(), published.get(seq))) expected.add((long) seq);
+            }
+            assertEquals(expected, connection.received(), connection.pattern());
+        }
+    }
+
+    @Test
+    void shardTasksRunAfterEarlierBroadcasts() throws InterruptedException {
+        FanOutShards<Connection> shards = new FanOutShards<>(executors);
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) connections.add(connect(shards, "#"));
+
+        shards.broadcast("gia", c -> c.received().add(1L));
+        // Tác vụ của shard (ví dụ đóng kết nối) thấy mọi tin đã giao trước nó
+        for (Connection connection : connections) {
+            connection.shard().execute(() -> connection.received().add(-1L));
+        }
+        shards.broadcast("gia", c -> c.received().add(2L));
+        drain();
+
+        for (Connection connection : connections) assertEquals(List.of(1L, -1L, 2L), connection.received());
+    }
+
+    @Test
+    void broadcastSkipsShardsWithoutSubscribers() throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        FanOutShards<Connection> shards = new FanOutShards<>(executors, latency);
+        connect(shards, "gia"); // Chỉ shard 0 có người đăng ký
+        Set<String> threads = new HashSet<>();
+
+        assertEquals(0, shards.broadcast("tin", c -> fail("không ai đăng ký 'tin'")));
+        assertEquals(1, shards.broadcast("gia", c -> threads.add(Thread.currentThread().getName())));
+        drain();
+
+        assertEquals(1, threads.size());
+        assertEquals(1, latency.count()); // Một mẫu cho shard có việc, không mẫu nào cho shard bỏ qua
+    }
+}
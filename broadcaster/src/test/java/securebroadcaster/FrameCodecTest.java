@@ -0,0 +1,203 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FrameCodecTest.java
+ * Kiểm tra khung nhị phân: mã hóa bằng FrameCodec rồi đọc lại bằng FrameReader (kể cả phần topic/khóa,
+ * khung nén, xen dòng văn bản, luồng tới từng byte) và các lỗi khung.
+ */
+class FrameCodecTest {
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static FrameReader reader(byte[]... chunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) out.write(chunk);
+        return new FrameReader(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    // --- Khứ hồi ---
+
+    @Test
+    void plainMessageRoundTrip() throws IOException {
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 42, 1_700_000_000_000L, utf8("xin chào"));
+        assertEquals(FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE + utf8("xin chào").length, frame.length);
+
+        FrameReader reader = reader(frame);
+        assertTrue(reader.readFrame());
+        assertEquals(FrameCodec.TYPE_MESSAGE, reader.type());
+        assertEquals(0, reader.flags());
+        assertEquals(42, reader.seq());
+        assertEquals(1_700_000_000_000L, reader.timestamp());
+        assertEquals("xin chào", reader.payloadAsString());
+        assertEquals("", reader.topic());
+        assertNull(reader.key());
+        assertFalse(reader.readFrame());
+    }
+
+    @Test
+    void topicAndKeySectionsRoundTrip() throws IOException {
+        byte[] body = FrameCodec.withTopic("giá.vn", FrameCodec.withKey("MÃ1", utf8("12345.6")));
+        byte flags = FrameCodec.FLAG_TOPIC | FrameCodec.FLAG_KEY;
+        FrameReader reader = reader(FrameCodec.encode(FrameCodec.TYPE_MESSAGE, flags, 7, 0, body));
+
+        assertTrue(reader.readFrame());
+        assertEquals("giá.vn", reader.topic());
+        assertEquals("MÃ1", reader.key());
+        assertEquals("12345.6", reader.payloadAsString());
+        assertArrayEquals(utf8("12345.6"), Arrays.copyOfRange(reader.buffer(),
+                reader.payloadOffset(), reader.payloadOffset() + reader.payloadLength()));
+    }
+
+    @Test
+    void keyWithoutTopicAndEmptyText() throws IOException {
+        byte[] body = FrameCodec.withKey("k", new byte[0]);
+        FrameReader reader = reader(FrameCodec.encode(FrameCodec.TYPE_MESSAGE, FrameCodec.FLAG_KEY, 1, 0, body));
+        assertTrue(reader.readFrame());
+        assertEquals("", reader.topic());
+        assertEquals("k", reader.key());
+        assertEquals(0, reader.payloadLength());
+    }
+
+    @Test
+    void compressedFrameRoundTrip() throws IOException {
+        DeflateCodec codec = new DeflateCodec(6, null, 0);
+        byte[] body = FrameCodec.withTopic("gia.vang", utf8("mua 7000000 ban 7100000 ".repeat(20)));
+        byte[] compressed = codec.deflate(body, 0, body.length);
+        assertNotNull(compressed);
+        byte flags = FrameCodec.FLAG_TOPIC | FrameCodec.FLAG_DEFLATE;
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_MESSAGE, flags, 3, 0, compressed);
+
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(frame), codec);
+        assertTrue(reader.readFrame());
+        assertEquals("gia.vang", reader.topic());
+        assertEquals("mua 7000000 ban 7100000 ".repeat(20), reader.payloadAsString());
+    }
+
+    @Test
+    void gapAndControlFrames() throws IOException {
+        FrameReader reader = reader(
+                FrameCodec.encode(FrameCodec.TYPE_GAP, (byte) 0, 20, 0, utf8(FrameCodec.gapText(5, 20))),
+                FrameCodec.encode(FrameCodec.TYPE_CONTROL, (byte) 0, 0, 0, utf8(FrameCodec.PING)));
+        assertTrue(reader.readFrame());
+        assertEquals(FrameCodec.TYPE_GAP, reader.type());
+        assertEquals(20, reader.seq());
+        assertEquals("5-20", reader.payloadAsString());
+        assertTrue(reader.readFrame());
+        assertEquals(FrameCodec.TYPE_CONTROL, reader.type());
+        assertEquals(FrameCodec.PING, reader.payloadAsString());
+        assertFalse(reader.readFrame());
+    }
+
+    @Test
+    void linesThenFramesOnTheSameStream() throws IOException {
+        FrameReader reader = reader(
+                utf8(FrameCodec.ACK_BINARY + "\r\n"),
+                FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 1, 0, utf8("một")),
+                FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 2, 0, utf8("hai")));
+        assertEquals(FrameCodec.ACK_BINARY, reader.readLine());
+        assertTrue(reader.readFrame());
+        assertEquals("một", reader.payloadAsString());
+        assertTrue(reader.readFrame());
+        assertEquals(2, reader.seq());
+        assertEquals("hai", reader.payloadAsString());
+    }
+
+    @Test
+    void framesArrivingOneByteAtATime() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] big = new byte[40_000]; // Lớn hơn bộ đệm ban đầu của FrameReader
+        Arrays.fill(big, (byte) 'x');
+        for (long seq = 1; seq <= 50; seq++) {
+            out.write(FrameCodec.encode(FrameCodec.TYPE_MESSAGE, FrameCodec.FLAG_TOPIC, seq, seq,
+                    FrameCodec.withTopic("t" + seq, utf8("tin " + seq))));
+        }
+        out.write(FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 51, 0, big));
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(out.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        FrameReader reader = new FrameReader(trickle);
+        for (long seq = 1; seq <= 50; seq++) {
+            assertTrue(reader.readFrame());
+            assertEquals(seq, reader.seq());
+            assertEquals("t" + seq, reader.topic());
+            assertEquals("tin " + seq, reader.payloadAsString());
+        }
+        assertTrue(reader.readFrame());
+        assertEquals(big.length, reader.payloadLength());
+        assertFalse(reader.readFrame());
+    }
+
+    // --- Khung hỏng ---
+
+    @Test
+    void truncatedFrameIsAnError() {
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_MESSAGE, (byte) 0, 1, 0, utf8("bị cắt"));
+        assertThrows(EOFException.class, () -> reader(Arrays.copyOf(frame, frame.length - 2)).readFrame());
+    }
+
+    @Test
+    void invalidLengthIsAnError() {
+        byte[] tooShort = new byte[FrameCodec.LENGTH_SIZE];
+        FrameCodec.INT.set(tooShort, 0, FrameCodec.HEADER_SIZE - 1);
+        assertThrows(IOException.class, () -> reader(tooShort).readFrame());
+
+        byte[] tooLong = new byte[FrameCodec.LENGTH_SIZE];
+        FrameCodec.INT.set(tooLong, 0, FrameCodec.MAX_FRAME_LENGTH + 1);
+        assertThrows(IOException.class, () -> reader(tooLong).readFrame());
+    }
+
+    @Test
+    void topicLongerThanPayloadIsAnError() {
+        byte[] body = {0, 10, 'a'};
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_MESSAGE, FrameCodec.FLAG_TOPIC, 1, 0, body);
+        assertThrows(IOException.class, () -> reader(frame).readFrame());
+    }
+
+    @Test
+    void compressedFrameWithoutCodecIsAnError() {
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_MESSAGE, FrameCodec.FLAG_DEFLATE, 1, 0, utf8("zz"));
+        assertThrows(IOException.class, () -> reader(frame).readFrame());
+    }
+
+    // --- Dòng lệnh ---
+
+    @Test
+    void parsesCommandLines() {
+        assertEquals(17, FrameCodec.parseResume(FrameCodec.resumeLine(17)));
+        assertEquals(-1, FrameCodec.parseResume("RESUME -3"));
+        assertEquals(-1, FrameCodec.parseResume("RESUME abc"));
+        assertEquals(-1, FrameCodec.parseResume("RESUMEX 3"));
+        assertEquals(12, FrameCodec.parseCommand("HISTORY SEQ 12", FrameCodec.HISTORY_SEQ));
+        assertEquals(99, FrameCodec.parseCommand(FrameCodec.compressLine(99), FrameCodec.COMPRESS));
+        assertEquals("giá.*", FrameCodec.parseArgument("SUB  giá.* ", FrameCodec.SUBSCRIBE));
+        assertNull(FrameCodec.parseArgument("SUB ", FrameCodec.SUBSCRIBE));
+        assertNull(FrameCodec.parseArgument("UNSUB a", FrameCodec.SUBSCRIBE));
+    }
+
+    @Test
+    void readLineReturnsTheTailAndThenNull() throws IOException {
+        FrameReader reader = reader(utf8("a\nb"));
+        assertEquals("a", reader.readLine());
+        assertEquals("b", reader.readLine());
+        assertNull(reader.readLine());
+    }
+}
@@ -0,0 +1,87 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LastValueCacheTest.java
+ * Kiểm tra bộ nhớ giá trị mới nhất: mỗi khóa (topic, khóa) giữ một giá trị, loại khóa cập nhật lâu nhất
+ * khi vượt giới hạn số khóa hoặc số byte, và lọc ảnh chụp theo topic.
+ */
+class LastValueCacheTest {
+
+    private static BroadcastPayload keyed(String topic, String key, String value, long seq) {
+        return BroadcastPayload.message(topic, key, value, seq, false, null);
+    }
+
+    private static List<Long> seqs(List<BroadcastPayload> payloads) {
+        return payloads.stream().map(BroadcastPayload::seq).toList();
+    }
+
+    @Test
+    void keepsOnlyTheLatestValuePerKeyInUpdateOrder() {
+        LastValueCache cache = new LastValueCache(10, 1 << 20);
+        cache.put(keyed("gia", "A", "1", 1));
+        cache.put(keyed("gia", "B", "1", 2));
+        cache.put(keyed("gia", "A", "2", 3));
+        cache.put(keyed("ty-gia", "A", "9", 4)); // Cùng khóa, khác topic: giá trị riêng
+        cache.put(BroadcastPayload.message("gia", "không khóa", 5, false));
+
+        assertEquals(3, cache.size());
+        assertEquals(List.of(2L, 3L, 4L), seqs(cache.snapshot(topic -> true)));
+        assertEquals(List.of(2L, 3L), seqs(cache.snapshot("gia"::equals)));
+        assertEquals(2, cache.snapshotCount());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUpdatedKeyBeyondTheEntryLimit() {
+        LastValueCache cache = new LastValueCache(2, 1 << 20);
+        cache.put(keyed("gia", "A", "1", 1));
+        cache.put(keyed("gia", "B", "1", 2));
+        cache.put(keyed("gia", "A", "2", 3)); // A mới cập nhật: B thành cũ nhất
+        cache.put(keyed("gia", "C", "1", 4));
+
+        assertEquals(List.of(3L, 4L), seqs(cache.snapshot(topic -> true)));
+        assertEquals(1, cache.evictedCount());
+    }
+
+    @Test
+    void staysWithinTheByteLimit() {
+        LastValueCache cache = new LastValueCache(1000, 2000);
+        for (int i = 0; i < 100; i++) {
+            cache.put(keyed("gia", "K" + i, "x".repeat(100), i + 1));
+            assertTrue(cache.bytes() <= 2000);
+        }
+        assertTrue(cache.size() > 0);
+        assertEquals(100, cache.size() + cache.evictedCount());
+    }
+
+    @Test
+    void valueLargerThanTheByteLimitIsNotCachedAndEvictsNothing() {
+        LastValueCache cache = new LastValueCache(1000, 2000);
+        for (int i = 0; i < 5; i++) cache.put(keyed("gia", "K" + i, "x".repeat(100), i + 1));
+        long bytes = cache.bytes();
+
+        cache.put(keyed("gia", "LON", "x".repeat(5000), 6));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), seqs(cache.snapshot(topic -> true)));
+        assertEquals(bytes, cache.bytes());
+        assertEquals(0, cache.evictedCount());
+
+        // Giá trị mới quá lớn cho một khóa đã có: giá trị cũ đã lỗi thời bị bỏ, các khóa khác giữ nguyên
+        cache.put(keyed("gia", "K2", "x".repeat(5000), 7));
+        assertEquals(List.of(1L, 2L, 4L, 5L), seqs(cache.snapshot(topic -> true)));
+        assertEquals(1, cache.evictedCount());
+    }
+
+    @Test
+    void disabledCacheKeepsNothing() {
+        LastValueCache cache = new LastValueCache(0, 1 << 20);
+        assertFalse(cache.enabled());
+        cache.put(keyed("gia", "A", "1", 1));
+        assertEquals(0, cache.size());
+        assertEquals(List.of(), cache.snapshot(topic -> true));
+    }
+}
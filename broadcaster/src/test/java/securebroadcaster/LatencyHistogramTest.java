@@ -0,0 +1,81 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LatencyHistogramTest.java
+ * Kiểm tra ánh xạ giá trị <-> ô (indexOf/valueAt), sai số tương đối và phân vị.
+ */
+class LatencyHistogramTest {
+
+    private static final int BUCKETS = (64 - 6) * 64;
+
+    @Test
+    void smallValuesAreExact() {
+        for (long v = 0; v < 128; v++) {
+            assertEquals(v, LatencyHistogram.indexOf(v));
+            assertEquals(v, LatencyHistogram.valueAt((int) v));
+        }
+    }
+
+    @Test
+    void valueAtMapsBackToItsOwnBucket() {
+        for (int i = 0; i < BUCKETS; i++) {
+            assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.valueAt(i)), "ô " + i);
+        }
+    }
+
+    @Test
+    void indexOfIsMonotonicAcrossBucketEdges() {
+        long previousValue = -1;
+        int previous = -1;
+        for (int shift = 0; shift < 63; shift++) {
+            for (long v : new long[]{(1L << shift) - 1, 1L << shift, (1L << shift) + 1}) {
+                if (v <= previousValue) continue;
+                int index = LatencyHistogram.indexOf(v);
+                assertTrue(index >= previous, "giá trị " + v);
+                previousValue = v;
+                previous = index;
+            }
+        }
+        assertEquals(BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void relativeErrorStaysWithinOneSubBucket() {
+        long v = 128;
+        while (v > 0 && v < Long.MAX_VALUE / 3) {
+            for (long x : new long[]{v, v * 3 / 2, v * 2 - 1}) {
+                long represented = LatencyHistogram.valueAt(LatencyHistogram.indexOf(x));
+                double error = Math.abs(represented - x) / (double) x;
+                assertTrue(error <= 1.0 / 64, "giá trị " + x + " -> " + represented);
+            }
+            v *= 2;
+        }
+    }
+
+    @Test
+    void percentilesOfUniformSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        for (long v = 1; v <= 10_000; v++) histogram.record(v * 1000);
+        assertEquals(10_000, histogram.count());
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 / 64.0);
+        assertEquals(9_990_000, histogram.percentile(99.9), 9_990_000 / 64.0);
+        assertEquals(10_000_000, histogram.max(), 10_000_000 / 64.0);
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.max());
+    }
+}
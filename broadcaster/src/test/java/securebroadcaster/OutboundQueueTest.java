@@ -0,0 +1,241 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OutboundQueueTest.java
+ * Kiểm tra hàng đợi gửi: các chính sách tràn, làn điều khiển, gộp theo khóa và đóng hàng đợi.
+ */
+class OutboundQueueTest {
+
+    // Phần tử dạng "khóa:seq" có khóa gộp; phần tử không có ':' không gộp
+    private static final Function<String, String> KEY = item -> {
+        int colon = item.indexOf(':');
+        return colon < 0 ? null : item.substring(0, colon);
+    };
+
+    private static List<String> drain(OutboundQueue<String> queue) {
+        List<String> items = new ArrayList<>();
+        for (String item; (item = queue.poll()) != null; ) items.add(item);
+        return items;
+    }
+
+    // --- Chính sách tràn ---
+
+    @Test
+    void dropOldestEvictsTheHeadAndKeepsOrder() {
+        OutboundQueue<String> queue = new OutboundQueue<>(3, OverflowPolicy.DROP_OLDEST);
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offer("1"));
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offer("2"));
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offer("3"));
+        assertEquals(OutboundQueue.Result.DROPPED_OLDEST, queue.offer("4"));
+        assertEquals(OutboundQueue.Result.DROPPED_OLDEST, queue.offer("5"));
+        assertEquals(List.of("3", "4", "5"), drain(queue));
+        assertEquals(2, queue.evictedCount());
+        assertEquals(0, queue.droppedCount());
+    }
+
+    @Test
+    void dropNewestKeepsTheQueueUnchanged() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_NEWEST);
+        queue.offer("1");
+        queue.offer("2");
+        assertEquals(OutboundQueue.Result.DROPPED_NEWEST, queue.offer("3"));
+        assertEquals(List.of("1", "2"), drain(queue));
+        assertEquals(1, queue.droppedCount());
+        assertEquals(0, queue.evictedCount());
+    }
+
+    @Test
+    void disconnectReportsOverflowWithoutTouchingTheQueue() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DISCONNECT);
+        queue.offer("1");
+        queue.offer("2");
+        assertEquals(OutboundQueue.Result.OVERFLOW, queue.offer("3"));
+        assertEquals(List.of("1", "2"), drain(queue));
+    }
+
+    @Test
+    void wrapsAroundTheRing() {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DISCONNECT);
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(OutboundQueue.Result.ACCEPTED, queue.offer(String.valueOf(i)));
+            if (i % 3 == 2) received.addAll(drain(queue));
+        }
+        received.addAll(drain(queue));
+        for (int i = 0; i < 100; i++) assertEquals(String.valueOf(i), received.get(i));
+    }
+
+    // --- Làn điều khiển ---
+
+    @Test
+    void controlItemsBypassCapacityAndJumpAheadOfData() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_OLDEST);
+        queue.offer("d1");
+        queue.offer("d2");
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offerControl("c1"));
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offerControl("c2"));
+        assertEquals(4, queue.size());
+
+        // Dữ liệu tràn chỉ loại dữ liệu, không bao giờ loại phần tử điều khiển
+        assertEquals(OutboundQueue.Result.DROPPED_OLDEST, queue.offer("d3"));
+        assertEquals(List.of("c1", "c2", "d2", "d3"), drain(queue));
+    }
+
+    @Test
+    void controlItemsAreNotDroppedUnderDropNewest() {
+        OutboundQueue<String> queue = new OutboundQueue<>(1, OverflowPolicy.DROP_NEWEST);
+        queue.offer("d1");
+        assertEquals(OutboundQueue.Result.DROPPED_NEWEST, queue.offer("d2"));
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offerControl("c1"));
+        assertEquals(List.of("c1", "d1"), drain(queue));
+    }
+
+    @Test
+    void tooManyPendingControlItemsOverflow() {
+        OutboundQueue<String> queue = new OutboundQueue<>(1, OverflowPolicy.DROP_OLDEST);
+        int accepted = 0;
+        while (queue.offerControl("c" + accepted) == OutboundQueue.Result.ACCEPTED) {
+            accepted++;
+            assertTrue(accepted < 10_000);
+        }
+        assertTrue(accepted > 0);
+        queue.poll();
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offerControl("again"));
+    }
+
+    @Test
+    void takeWakesUpForControlItems() throws InterruptedException {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DROP_OLDEST);
+        List<String> taken = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                taken.add(queue.take());
+            } catch (InterruptedException ignored) {
+            }
+        });
+        writer.start();
+        queue.offerControl("c1");
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertEquals(List.of("c1"), taken);
+    }
+
+    // --- Gộp theo khóa ---
+
+    @Test
+    void conflationReplacesThePendingItemAndMovesItToTheTail() {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DISCONNECT, KEY);
+        queue.offer("a:1");
+        queue.offer("b:2");
+        queue.offer("3");
+        assertEquals(OutboundQueue.Result.CONFLATED, queue.offer("a:4"));
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.conflatedCount());
+        // Thứ tự seq giữ nguyên: a:4 không được nhảy lên trước b:2 và 3
+        assertEquals(List.of("b:2", "3", "a:4"), drain(queue));
+    }
+
+    @Test
+    void conflationNeedsNoRoomWhenFull() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DISCONNECT, KEY);
+        queue.offer("a:1");
+        queue.offer("b:2");
+        assertEquals(OutboundQueue.Result.OVERFLOW, queue.offer("c:3"));
+        assertEquals(OutboundQueue.Result.CONFLATED, queue.offer("a:4"));
+        assertEquals(OutboundQueue.Result.CONFLATED, queue.offer("b:5"));
+        assertEquals(List.of("a:4", "b:5"), drain(queue));
+    }
+
+    @Test
+    void sentItemsNoLongerConflate() {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DISCONNECT, KEY);
+        queue.offer("a:1");
+        assertEquals("a:1", queue.poll());
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offer("a:2"));
+        assertEquals(0, queue.conflatedCount());
+    }
+
+    @Test
+    void queueWithoutKeyFunctionNeverConflates() {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DISCONNECT);
+        queue.offer("a:1");
+        assertEquals(OutboundQueue.Result.ACCEPTED, queue.offer("a:2"));
+        assertEquals(List.of("a:1", "a:2"), drain(queue));
+    }
+
+    @Test
+    void conflationMatchesAReferenceModelAndKeepsSeqOrder() {
+        // Nhiều lần gộp liên tiếp buộc vòng đệm dồn lại (lần đầu nới, sau đó dồn tại chỗ)
+        for (int keys : new int[]{1, 3, 8, 40}) {
+            Random random = new Random(keys);
+            OutboundQueue<String> queue = new OutboundQueue<>(8, OverflowPolicy.DROP_OLDEST, KEY);
+            List<String> model = new ArrayList<>();
+            long lastPolled = 0;
+            for (int seq = 1; seq <= 20_000; seq++) {
+                String item = random.nextInt(5) == 0 ? String.valueOf(seq) : "k" + random.nextInt(keys) + ":" + seq;
+                queue.offer(item);
+                String key = KEY.apply(item);
+                if (key == null || !model.removeIf(pending -> key.equals(KEY.apply(pending)))) {
+                    if (model.size() == 8) model.remove(0);
+                }
+                model.add(item);
+                assertEquals(model.size(), queue.size());
+
+                if (random.nextInt(3) == 0) {
+                    String polled = queue.poll();
+                    assertEquals(model.remove(0), polled);
+                    long polledSeq = Long.parseLong(polled.substring(polled.indexOf(':') + 1));
+                    assertTrue(polledSeq > lastPolled, "seq lùi: " + polled);
+                    lastPolled = polledSeq;
+                }
+            }
+            assertEquals(model, drain(queue));
+        }
+    }
+
+    // --- Đóng hàng đợi ---
+
+    @Test
+    void closeDiscardsEverythingAndRejectsNewItems() throws InterruptedException {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DROP_OLDEST);
+        queue.offer("d1");
+        queue.offerControl("c1");
+        queue.close();
+        assertEquals(0, queue.size());
+        assertEquals(OutboundQueue.Result.DROPPED_NEWEST, queue.offer("d2"));
+        assertEquals(OutboundQueue.Result.DROPPED_NEWEST, queue.offerControl("c2"));
+        assertNull(queue.take());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void closeWakesUpAWaitingWriter() throws InterruptedException {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, OverflowPolicy.DROP_OLDEST);
+        Thread writer = new Thread(() -> {
+            try {
+                assertNull(queue.take());
+            } catch (InterruptedException ignored) {
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+        queue.close();
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new OutboundQueue<String>(0, OverflowPolicy.DROP_OLDEST));
+    }
+}
@@ -0,0 +1,199 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReplayCursorTest.java
+ * Kiểm tra phát lại của một kết nối: RESUME lấy tin đã lỡ từ ReplayRing (hoặc journal khi vòng đã bị đè),
+ * báo GAP cho phần đã quá cũ, bỏ tin live trùng với tin đã phát lại và lọc theo topic đã đăng ký; SNAPSHOT gửi
+ * giá trị mới nhất của mỗi khóa rồi bỏ các tin live có khóa không mới hơn giá trị đã gửi.
+ */
+class ReplayCursorTest {
+
+    private final TopicRegistry<String> registry = new TopicRegistry<>();
+    private final Subscriptions<String> subscriptions = new Subscriptions<>(registry, "client");
+    private final OutboundQueue<BroadcastPayload> queue = new OutboundQueue<>(64, OverflowPolicy.DISCONNECT);
+
+    private static BroadcastHistory history(int ringCapacity, long count) throws IOException {
+        return history(ringCapacity, count, null);
+    }
+
+    private static BroadcastHistory history(int ringCapacity, long count, BroadcastJournal journal)
+            throws IOException {
+        BroadcastHistory history = new BroadcastHistory(new ReplayRing(ringCapacity));
+        if (journal != null) history.attach(journal);
+        for (long seq = 1; seq <= count; seq++) history.append(BroadcastPayload.message("tin " + seq, seq, false));
+        return history;
+    }
+
+    /**
+     * Lấy mọi thứ cursor gửi đi, mô tả mỗi payload ngắn gọn ("5", "GAP 3-6", "SNAPSHOT-END 2")
+     */
+    private List<String> sent(ReplayCursor cursor) {
+        List<String> out = new ArrayList<>();
+        for (BroadcastPayload p; (p = cursor.next(queue)) != null; ) {
+            if (p.type() == FrameCodec.TYPE_GAP) {
+                out.add("GAP " + p.message());
+            } else if (p.type() == FrameCodec.TYPE_CONTROL) {
+                out.add(p.message());
+            } else {
+                out.add(String.valueOf(p.seq()));
+            }
+        }
+        return out;
+    }
+
+    private static BroadcastPayload keyed(BroadcastHistory history, String topic, String key, long seq)
+            throws IOException {
+        BroadcastPayload payload = BroadcastPayload.message(topic, key, key + "=" + seq, seq, false, null);
+        history.append(payload);
+        return payload;
+    }
+
+    @Test
+    void resumeReplaysMissedMessagesAndDropsQueuedDuplicates() throws IOException {
+        BroadcastHistory history = history(16, 10);
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        // Tin live 9, 10 đã xếp hàng trước khi luồng ghi tới mốc RESUME (mốc đi làn điều khiển, tới trước)
+        queue.offer(history.ring().get(9));
+        queue.offer(history.ring().get(10));
+        queue.offerControl(BroadcastPayload.resume(5));
+
+        assertEquals(List.of("6", "7", "8", "9", "10"), sent(cursor));
+    }
+
+    @Test
+    void liveMessagesAfterCatchingUpPassThrough() throws IOException {
+        BroadcastHistory history = history(16, 3);
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.resume(1));
+        assertEquals(List.of("2", "3"), sent(cursor));
+
+        BroadcastPayload live = BroadcastPayload.message("tin 4", 4, false);
+        history.append(live);
+        queue.offer(live);
+        assertEquals(List.of("4"), sent(cursor));
+    }
+
+    @Test
+    void messagesOverwrittenInTheRingBecomeAGap() throws IOException {
+        BroadcastHistory history = history(4, 10); // Vòng chỉ còn giữ 7..10
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.resume(2));
+
+        assertEquals(List.of("GAP 3-6", "7", "8", "9", "10"), sent(cursor));
+    }
+
+    @Test
+    void messagesOverwrittenInTheRingAreReplayedFromTheJournal(@TempDir Path dir) throws IOException {
+        try (BroadcastJournal journal = BroadcastJournal.open(dir, 16 * 1024, 100, FsyncPolicy.NONE, 0)) {
+            ReplayCursor cursor = new ReplayCursor(history(4, 10, journal), subscriptions);
+            queue.offerControl(BroadcastPayload.resume(2));
+
+            assertEquals(List.of("3", "4", "5", "6", "7", "8", "9", "10"), sent(cursor));
+        }
+    }
+
+    @Test
+    void resumeBeyondLatestMeansTheServerRestarted() throws IOException {
+        BroadcastHistory history = history(16, 3);
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.resume(500));
+        queue.offer(history.ring().get(3));
+
+        // Seq đã đánh lại từ 1: phát lại mọi tin của lần chạy mới, tin live trùng bị bỏ
+        assertEquals(List.of("1", "2", "3"), sent(cursor));
+
+        BroadcastPayload live = BroadcastPayload.message("tin 4", 4, false);
+        history.append(live);
+        queue.offer(live);
+        assertEquals(List.of("4"), sent(cursor));
+    }
+
+    @Test
+    void resumeAfterARestartReportsMessagesAlreadyOverwritten() throws IOException {
+        BroadcastHistory history = history(4, 10); // Lần chạy mới đã publish 10 tin, vòng chỉ còn 7..10
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.resume(500));
+
+        assertEquals(List.of("GAP 1-6", "7", "8", "9", "10"), sent(cursor));
+    }
+
+    @Test
+    void resumeAtLatestReplaysNothing() throws IOException {
+        BroadcastHistory history = history(16, 5);
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.resume(5));
+        assertEquals(List.of(), sent(cursor));
+    }
+
+    @Test
+    void replayOnlySendsSubscribedTopics() throws IOException {
+        BroadcastHistory history = new BroadcastHistory(new ReplayRing(16));
+        history.append(BroadcastPayload.message("gia.vang", "a", 1, false));
+        history.append(BroadcastPayload.message("tin.the-thao", "b", 2, false));
+        history.append(BroadcastPayload.message("gia.usd", "c", 3, false));
+        subscriptions.join();
+        assertTrue(subscriptions.onLine("SUB gia.*"));
+
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.resume(0));
+        assertEquals(List.of("1", "3"), sent(cursor));
+        subscriptions.leave();
+    }
+
+    // --- Ảnh chụp ---
+
+    @Test
+    void snapshotSendsLatestValuesThenDropsStaleQueuedUpdates() throws IOException {
+        BroadcastHistory history = new BroadcastHistory(new ReplayRing(16), new LastValueCache(100, 1 << 20));
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offer(keyed(history, "gia", "A", 1));
+        queue.offer(keyed(history, "gia", "B", 2));
+        BroadcastPayload plain = BroadcastPayload.message("gia", "không khóa", 3, false);
+        history.append(plain);
+        queue.offer(plain);
+        queue.offer(keyed(history, "gia", "A", 4));
+        queue.offerControl(BroadcastPayload.snapshot(null));
+
+        // Ảnh chụp (B=2, A=4) tới trước; tin live có khóa đã nằm trong ảnh chụp bị bỏ, tin không khóa vẫn gửi
+        assertEquals(List.of("2", "4", FrameCodec.SNAPSHOT_END + " 2", "3"), sent(cursor));
+
+        queue.offer(keyed(history, "gia", "B", 5));
+        queue.offer(keyed(history, "gia", "A", 6));
+        assertEquals(List.of("5", "6"), sent(cursor));
+    }
+
+    @Test
+    void snapshotHonoursThePatternAndSubscriptions() throws IOException {
+        BroadcastHistory history = new BroadcastHistory(new ReplayRing(16), new LastValueCache(100, 1 << 20));
+        keyed(history, "gia.vang", "SJC", 1);
+        keyed(history, "gia.usd", "VCB", 2);
+        keyed(history, "tin.nong", "X", 3);
+        subscriptions.join();
+        assertTrue(subscriptions.onLine("SUB gia.#"));
+
+        ReplayCursor cursor = new ReplayCursor(history, subscriptions);
+        queue.offerControl(BroadcastPayload.snapshot(null));
+        assertEquals(List.of("1", "2", FrameCodec.SNAPSHOT_END + " 2"), sent(cursor));
+
+        queue.offerControl(BroadcastPayload.snapshot("gia.usd"));
+        assertEquals(List.of("2", FrameCodec.SNAPSHOT_END + " 1"), sent(cursor));
+        subscriptions.leave();
+    }
+
+    @Test
+    void emptySnapshotStillEnds() throws IOException {
+        ReplayCursor cursor = new ReplayCursor(history(16, 3), subscriptions);
+        queue.offerControl(BroadcastPayload.snapshot(null));
+        assertEquals(List.of(FrameCodec.SNAPSHOT_END + " 0"), sent(cursor));
+    }
+}
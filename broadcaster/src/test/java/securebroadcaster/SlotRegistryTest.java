@@ -0,0 +1,136 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SlotRegistryTest.java
+ * Kiểm tra tập kết nối cho fan-out: thêm/xóa liên tục dùng lại ô trống, handle cũ không xóa nhầm phần tử mới,
+ * và nhiều luồng thêm/xóa cùng lúc với một luồng duyệt.
+ */
+class SlotRegistryTest {
+
+    private static Set<String> items(SlotRegistry<String> registry) {
+        Set<String> items = new HashSet<>();
+        int count = registry.forEach(item -> assertTrue(items.add(item), "gặp lại " + item));
+        assertEquals(items.size(), count);
+        return items;
+    }
+
+    @Test
+    void addAndRemove() {
+        SlotRegistry<String> registry = new SlotRegistry<>();
+        assertTrue(registry.isEmpty());
+        long a = registry.add("a");
+        long b = registry.add("b");
+        assertEquals(2, registry.size());
+        assertEquals(Set.of("a", "b"), items(registry));
+
+        assertTrue(registry.remove(a));
+        assertFalse(registry.remove(a));
+        assertEquals(Set.of("b"), items(registry));
+        assertTrue(registry.remove(b));
+        assertTrue(registry.isEmpty());
+        assertEquals(0, registry.forEach(item -> fail("còn " + item)));
+    }
+
+    @Test
+    void staleHandleDoesNotRemoveTheSlotsNewOwner() {
+        SlotRegistry<String> registry = new SlotRegistry<>();
+        long old = registry.add("cu");
+        assertTrue(registry.remove(old));
+        long fresh = registry.add("moi"); // Dùng lại đúng ô vừa trả
+        assertEquals((int) old, (int) fresh);
+        assertNotEquals(old, fresh);
+
+        assertFalse(registry.remove(old));
+        assertEquals(Set.of("moi"), items(registry));
+        assertTrue(registry.remove(fresh));
+    }
+
+    @Test
+    void churnReusesSlotsAndMatchesAReferenceSet() {
+        SlotRegistry<String> registry = new SlotRegistry<>();
+        Random random = new Random(7);
+        List<Long> handles = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Set<String> model = new HashSet<>();
+        int maxSlot = 0;
+        for (int i = 0; i < 50_000; i++) {
+            if (handles.isEmpty() || (handles.size() < 500 && random.nextBoolean())) {
+                String name = "k" + i;
+                long handle = registry.add(name);
+                maxSlot = Math.max(maxSlot, (int) handle);
+                handles.add(handle);
+                names.add(name);
+                model.add(name);
+            } else {
+                int victim = random.nextInt(handles.size());
+                assertTrue(registry.remove(handles.get(victim)));
+                model.remove(names.get(victim));
+                int last = handles.size() - 1;
+                handles.set(victim, handles.get(last));
+                names.set(victim, names.get(last));
+                handles.remove(last);
+                names.remove(last);
+            }
+            assertEquals(model.size(), registry.size());
+            if (i % 1000 == 0) assertEquals(model, items(registry));
+        }
+        assertEquals(model, items(registry));
+        // Ô trống được dùng lại: số ô từng cấp không vượt số phần tử cùng lúc nhiều nhất
+        assertTrue(maxSlot < 500, "cấp tới ô " + maxSlot);
+    }
+
+    @Test
+    void concurrentChurnWhileIterating() throws InterruptedException {
+        SlotRegistry<String> registry = new SlotRegistry<>();
+        Set<String> stable = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            registry.add("co-dinh-" + i);
+            stable.add("co-dinh-" + i);
+        }
+
+        int threads = 4;
+        CountDownLatch done = new CountDownLatch(threads);
+        Set<Throwable> errors = ConcurrentHashMap.newKeySet();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            new Thread(() -> {
+                try {
+                    long[] own = new long[16];
+                    for (int round = 0; round < 5_000; round++) {
+                        for (int i = 0; i < own.length; i++) own[i] = registry.add(id + "-" + round + "-" + i);
+                        for (long handle : own) {
+                            if (!registry.remove(handle)) throw new AssertionError("không xóa được " + handle);
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // Phần tử có mặt suốt thời gian duyệt luôn được thấy, không phần tử nào bị gặp hai lần
+        do {
+            Set<String> seen = new HashSet<>();
+            registry.forEach(item -> assertTrue(seen.add(item), "gặp lại " + item));
+            assertTrue(seen.containsAll(stable));
+        } while (done.getCount() > 0);
+        done.await();
+        assertEquals(Set.of(), errors);
+        assertEquals(stable, items(registry));
+        assertEquals(stable.size(), registry.size());
+    }
+}
@@ -0,0 +1,127 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TimerWheelTest.java
+ * Kiểm tra hết hạn của bánh xe hẹn giờ với thời gian giả lập: không sớm, trễ tối đa một tick,
+ * hủy/đặt lại, hạn chót xa hơn một vòng và advance bị trễ nhiều vòng.
+ */
+class TimerWheelTest {
+
+    private static final long TICK = 10;
+    private static final long START = 1_000_000;
+
+    // 16 ô x 10 ns = một vòng 160 ns
+    private final TimerWheel<String> wheel = new TimerWheel<>(TICK, 150, START);
+    private final List<String> fired = new ArrayList<>();
+
+    private int advance(long offset) {
+        return wheel.advance(START + offset, fired::add);
+    }
+
+    @Test
+    void expiresNoEarlierThanTheDeadlineAndAtMostOneTickLate() {
+        TimerWheel.Timeout<String> a = TimerWheel.timeout("a");
+        wheel.schedule(a, START + 35);
+        assertTrue(a.isScheduled());
+        assertEquals(1, wheel.size());
+
+        assertEquals(0, advance(34));
+        assertEquals(List.of(), fired);
+        assertEquals(1, advance(35 + TICK));
+        assertEquals(List.of("a"), fired);
+        assertFalse(a.isScheduled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTimeoutsNeverFire() {
+        TimerWheel.Timeout<String> a = TimerWheel.timeout("a");
+        TimerWheel.Timeout<String> b = TimerWheel.timeout("b");
+        TimerWheel.Timeout<String> c = TimerWheel.timeout("c");
+        wheel.schedule(a, START + 20);
+        wheel.schedule(b, START + 20); // Cùng ô: a, b, c nằm chung một danh sách
+        wheel.schedule(c, START + 20);
+        wheel.cancel(b);
+        wheel.cancel(b); // Hủy lần hai không làm gì
+        assertEquals(2, wheel.size());
+
+        advance(100);
+        assertEquals(List.of("a", "c"), fired.stream().sorted().toList());
+    }
+
+    @Test
+    void rescheduleMovesTheDeadline() {
+        TimerWheel.Timeout<String> a = TimerWheel.timeout("a");
+        wheel.schedule(a, START + 20);
+        wheel.schedule(a, START + 90);
+        assertEquals(1, wheel.size());
+
+        advance(50);
+        assertEquals(List.of(), fired);
+        advance(100);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void deadlinesBeyondOneRevolutionWaitForTheirRound() {
+        TimerWheel.Timeout<String> far = TimerWheel.timeout("far");
+        wheel.schedule(far, START + 5 * 160 + 30); // Cùng ô với tick 3 của các vòng trước
+        for (long t = 0; t < 5 * 160 + 30; t += TICK) {
+            advance(t);
+            assertEquals(List.of(), fired, "hết hạn sớm tại " + t);
+        }
+        advance(5 * 160 + 30);
+        assertEquals(List.of("far"), fired);
+    }
+
+    @Test
+    void lateAdvanceFiresEverythingOnce() {
+        for (int i = 0; i < 40; i++) {
+            wheel.schedule(TimerWheel.timeout("t" + i), START + i * 25L);
+        }
+        assertEquals(40, advance(10 * 160)); // Trễ nhiều vòng: mỗi ô chỉ xét một lần
+        assertEquals(40, fired.stream().distinct().count());
+        assertEquals(0, wheel.size());
+        assertEquals(0, advance(20 * 160));
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextTick() {
+        advance(100);
+        wheel.schedule(TimerWheel.timeout("late"), START + 10);
+        assertEquals(0, advance(105)); // Tick 10 đã xử lý xong
+        assertEquals(1, advance(110));
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void actionMayRescheduleItsOwnTimeout() {
+        TimerWheel.Timeout<String> beat = TimerWheel.timeout("beat");
+        wheel.schedule(beat, START + 50);
+        for (long t = 0; t <= 500; t += TICK) {
+            long now = t;
+            wheel.advance(START + now, owner -> {
+                fired.add(owner);
+                wheel.schedule(beat, START + now + 50);
+            });
+        }
+        assertTrue(beat.isScheduled());
+        assertEquals(10, fired.size()); // 50, 100, ..., 500
+    }
+
+    @Test
+    void nanosToNextTick() {
+        assertEquals(-1, wheel.nanosToNextTick(START));
+        wheel.schedule(TimerWheel.timeout("a"), START + 100);
+        assertEquals(0, wheel.nanosToNextTick(START));
+        advance(3);
+        assertEquals(7, wheel.nanosToNextTick(START + 3));
+    }
+}
@@ -0,0 +1,105 @@
+package securebroadcaster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TopicRegistryTest.java
+ * Kiểm tra khớp mẫu topic ('*' một đoạn, '#' mọi đoạn còn lại), chỉ mục dạng cây khớp đúng như
+ * TopicRegistry.matches, mỗi người đăng ký chỉ nhận một lần và kiểm tra cú pháp.
+ */
+class TopicRegistryTest {
+
+    private static final List<String> PATTERNS = List.of("#", "tin", "tin.*", "tin.#", "tin.*.bong-da",
+            "*", "*.*", "*.the-thao.#", "gia.vang", "gia.*.#");
+    private static final List<String> TOPICS = List.of("", "tin", "tin.the-thao", "tin.the-thao.bong-da",
+            "tin.kinh-te.bong-da", "gia", "gia.vang", "gia.usd.ban", "the-thao");
+
+    private static Set<String> matched(TopicRegistry<String> registry, String topic) {
+        Set<String> out = new TreeSet<>();
+        registry.forEachMatch(topic, subscriber -> assertTrue(out.add(subscriber), "nhận hai lần: " + subscriber));
+        return out;
+    }
+
+    @Test
+    void wildcardSemantics() {
+        assertTrue(TopicRegistry.matches("tin.*", "tin.the-thao"));
+        assertFalse(TopicRegistry.matches("tin.*", "tin.the-thao.bong-da"));
+        assertFalse(TopicRegistry.matches("tin.*", "tin"));
+        assertTrue(TopicRegistry.matches("tin.#", "tin"));
+        assertTrue(TopicRegistry.matches("tin.#", "tin.a.b"));
+        assertFalse(TopicRegistry.matches("tin.#", "tinx"));
+        assertTrue(TopicRegistry.matches("*.the-thao.#", "tin.the-thao"));
+        assertTrue(TopicRegistry.matches("gia.vang", "gia.vang"));
+        assertFalse(TopicRegistry.matches("gia.vang", "gia.vang.mua"));
+
+        // Topic mặc định chỉ khớp "#"
+        assertTrue(TopicRegistry.matches("#", ""));
+        assertFalse(TopicRegistry.matches("*", ""));
+        assertFalse(TopicRegistry.matches("tin.#", ""));
+    }
+
+    @Test
+    void indexAgreesWithPatternMatching() {
+        TopicRegistry<String> registry = new TopicRegistry<>();
+        for (String pattern : PATTERNS) registry.subscribe(pattern, pattern);
+        for (String topic : TOPICS) {
+            Set<String> expected = new TreeSet<>();
+            for (String pattern : PATTERNS) {
+                if (TopicRegistry.matches(pattern, topic)) expected.add(pattern);
+            }
+            assertEquals(expected, matched(registry, topic), "topic '" + topic + "'");
+        }
+    }
+
+    @Test
+    void overlappingPatternsDeliverOnce() {
+        TopicRegistry<String> registry = new TopicRegistry<>();
+        registry.subscribe("tin.*", "a");
+        registry.subscribe("tin.#", "a");
+        registry.subscribe("#", "a");
+        registry.subscribe("tin.the-thao", "b");
+
+        List<String> calls = new ArrayList<>();
+        assertEquals(2, registry.forEachMatch("tin.the-thao", calls::add));
+        assertEquals(List.of("a", "b"), calls.stream().sorted().toList());
+    }
+
+    @Test
+    void unsubscribeRemovesOnlyThatSubscription() {
+        TopicRegistry<String> registry = new TopicRegistry<>();
+        long a = registry.subscribe("tin.*", "a");
+        registry.subscribe("tin.*", "b");
+        long c = registry.subscribe("tin.the-thao.#", "c");
+
+        registry.unsubscribe("tin.*", a);
+        assertEquals(Set.of("b", "c"), matched(registry, "tin.the-thao"));
+        registry.unsubscribe("tin.the-thao.#", c);
+        assertEquals(Set.of("b"), matched(registry, "tin.the-thao"));
+        assertTrue(registry.match("tin.the-thao.bong-da").isEmpty());
+
+        // Gỡ mẫu chưa từng đăng ký không làm hỏng chỉ mục
+        registry.unsubscribe("khong.co", 1);
+        assertEquals(Set.of("b"), matched(registry, "tin.x"));
+    }
+
+    @Test
+    void rejectsInvalidPatternsAndTopics() {
+        for (String pattern : List.of("", "tin..a", ".tin", "tin.", "tin.#.a", "co khoang")) {
+            assertThrows(IllegalArgumentException.class, () -> TopicRegistry.validatePattern(pattern), pattern);
+        }
+        for (String topic : List.of("tin.*", "#", "a..b")) {
+            assertThrows(IllegalArgumentException.class, () -> TopicRegistry.validateTopic(topic), topic);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> TopicRegistry.validateTopic("a".repeat(FrameCodec.MAX_TOPIC_LENGTH + 1)));
+        TopicRegistry.validateTopic("");
+        TopicRegistry.validatePattern("tin.*.#");
+    }
+}